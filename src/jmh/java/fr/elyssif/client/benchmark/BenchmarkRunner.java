@@ -0,0 +1,245 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.benchmark;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+/**
+ * Runs the benchmarks with the GC profiler, prints their throughput in MB/s
+ * and their allocation rate, then compares them to the stored baseline.<br>
+ * Configured with system properties, see the <code>benchmark</code> Maven profile:
+ * <ul>
+ * <li><code>benchmark.include</code>: regular expression selecting the benchmarks</li>
+ * <li><code>benchmark.sizes</code>, <code>benchmark.threads</code>, <code>benchmark.chunkSizes</code>,
+ * <code>benchmark.blockSizes</code>: comma-separated parameter values, empty to use all the declared ones</li>
+ * <li><code>benchmark.results</code>: the JSON file the full JMH results are written to.
+ * A compact baseline (benchmark, parameters, score and unit) is written next to it</li>
+ * <li><code>benchmark.baseline</code>: the compact baseline of a previous run to compare to</li>
+ * <li><code>benchmark.machine</code>: description of the machine stored in the baseline, defaults to the OS, processors and JVM</li>
+ * <li><code>benchmark.threshold</code>: the throughput loss, in percents, considered a regression</li>
+ * <li><code>benchmark.failOnRegression</code>: true to exit with an error status if a regression is found</li>
+ * </ul>
+ * @author Jérémy LAMBERT
+ *
+ */
+public final class BenchmarkRunner {
+
+	private static final String ALLOCATION_RATE = "·gc.alloc.rate";
+	private static final String ALLOCATION_NORM = "·gc.alloc.rate.norm";
+	private static final String BASELINE_FILE_NAME = "baseline.json";
+
+	private BenchmarkRunner() {}
+
+	public static void main(String[] args) throws RunnerException, IOException {
+		var results = new File(System.getProperty("benchmark.results", "target/benchmarks/results.json"));
+		results.getParentFile().mkdirs();
+
+		ChainedOptionsBuilder options = new OptionsBuilder()
+				.include(System.getProperty("benchmark.include", BenchmarkRunner.class.getPackageName() + ".*"))
+				.addProfiler(GCProfiler.class)
+				.resultFormat(ResultFormatType.JSON)
+				.result(results.getPath());
+		param(options, "size", "benchmark.sizes");
+		param(options, "parallelism", "benchmark.threads");
+		param(options, "chunkSize", "benchmark.chunkSizes");
+		param(options, "blockSize", "benchmark.blockSizes");
+
+		Collection<RunResult> runResults = new Runner(options.build()).run();
+
+		var baseline = loadBaseline(new File(System.getProperty("benchmark.baseline", "benchmarks/baseline.json")));
+		double threshold = Double.parseDouble(System.getProperty("benchmark.threshold", "10"));
+		int regressions = report(runResults, baseline, threshold);
+
+		var newBaseline = new File(results.getParentFile(), BASELINE_FILE_NAME);
+		writeBaseline(runResults, newBaseline);
+
+		System.out.println();
+		System.out.println("Results written to " + results.getPath() + ".");
+		System.out.println("Baseline written to " + newBaseline.getPath() + ", copy it to the baseline file to update it.");
+		if(regressions > 0) {
+			System.out.println(regressions + " regression(s) beyond " + threshold + "%.");
+			if(Boolean.getBoolean("benchmark.failOnRegression")) {
+				System.exit(1);
+			}
+		}
+	}
+
+	private static void param(ChainedOptionsBuilder options, String name, String property) {
+		String values = System.getProperty(property, "").trim();
+		if(!values.isEmpty()) {
+			options.param(name, values.split("\\s*,\\s*"));
+		}
+	}
+
+	private static int report(Collection<RunResult> runResults, Map<String, Double> baseline, double threshold) {
+		int regressions = 0;
+
+		System.out.println();
+		System.out.println(String.format("%-70s %12s %12s %12s %14s %10s", "Benchmark", "ops/s", "MB/s", "Alloc MB/s", "Alloc B/op", "Baseline"));
+		for(var runResult : runResults) {
+			var params = runResult.getParams();
+			Result<?> primary = runResult.getPrimaryResult();
+			double size = Double.parseDouble(params.getParam("size"));
+			double throughput = primary.getScore() * size / 1_000_000;
+
+			String comparison = "-";
+			Double reference = baseline.get(key(params));
+			if(reference != null && reference > 0) {
+				double delta = (primary.getScore() - reference) / reference * 100;
+				comparison = String.format("%+.1f%%", delta);
+				if(delta < -threshold) {
+					comparison += " REGRESSION";
+					regressions++;
+				}
+			}
+
+			System.out.println(String.format("%-70s %12.1f %12.2f %12.1f %14.0f %10s",
+					label(params), primary.getScore(), throughput,
+					secondaryScore(runResult, ALLOCATION_RATE),
+					secondaryScore(runResult, ALLOCATION_NORM),
+					comparison));
+		}
+		return regressions;
+	}
+
+	private static double secondaryScore(RunResult runResult, String name) {
+		var result = runResult.getSecondaryResults().get(name);
+		return result == null ? Double.NaN : result.getScore();
+	}
+
+	private static String label(BenchmarkParams params) {
+		String benchmark = params.getBenchmark();
+		var builder = new StringBuilder(benchmark.substring(benchmark.lastIndexOf('.', benchmark.lastIndexOf('.') - 1) + 1));
+		for(var entry : sortedParams(params).entrySet()) {
+			builder.append(' ').append(entry.getKey()).append('=').append(entry.getValue());
+		}
+		return builder.toString();
+	}
+
+	private static String key(BenchmarkParams params) {
+		return params.getBenchmark() + sortedParams(params);
+	}
+
+	private static TreeMap<String, String> sortedParams(BenchmarkParams params) {
+		var sorted = new TreeMap<String, String>();
+		for(String name : params.getParamsKeys()) {
+			sorted.put(name, params.getParam(name));
+		}
+		return sorted;
+	}
+
+	/**
+	 * Describe the machine running the benchmarks, so baselines of different machines aren't compared.
+	 */
+	private static String machine() {
+		String machine = System.getProperty("benchmark.machine", "").trim();
+		if(!machine.isEmpty()) {
+			return machine;
+		}
+		return System.getProperty("os.name") + " " + System.getProperty("os.arch")
+				+ ", " + Runtime.getRuntime().availableProcessors() + " processor(s), "
+				+ System.getProperty("java.vm.name") + " " + System.getProperty("java.vm.version");
+	}
+
+	/**
+	 * Write the compact baseline of the given results: the machine description
+	 * and, for each benchmark, its parameters, score and unit.
+	 * @param runResults the results
+	 * @param file the baseline file
+	 * @throws IOException
+	 */
+	private static void writeBaseline(Collection<RunResult> runResults, File file) throws IOException {
+		var entries = new JsonArray();
+		for(var runResult : runResults) {
+			var params = runResult.getParams();
+			var entry = new JsonObject();
+			entry.addProperty("benchmark", params.getBenchmark());
+			var sorted = new JsonObject();
+			for(var param : sortedParams(params).entrySet()) {
+				sorted.addProperty(param.getKey(), param.getValue());
+			}
+			entry.add("params", sorted);
+			entry.addProperty("score", Math.round(runResult.getPrimaryResult().getScore() * 1000) / 1000.0);
+			entry.addProperty("unit", runResult.getPrimaryResult().getScoreUnit());
+			entries.add(entry);
+		}
+
+		var baseline = new JsonObject();
+		baseline.addProperty("machine", machine());
+		baseline.add("results", entries);
+		try(var writer = new FileWriter(file)) {
+			new GsonBuilder().setPrettyPrinting().create().toJson(baseline, writer);
+		}
+	}
+
+	/**
+	 * Load the scores of a compact baseline file, keyed like {@link #key(BenchmarkParams)}.
+	 * @param file the baseline file
+	 * @return the scores, empty if the file doesn't exist
+	 * @throws IOException
+	 */
+	private static Map<String, Double> loadBaseline(File file) throws IOException {
+		var baseline = new HashMap<String, Double>();
+		if(!file.exists()) {
+			System.out.println("No baseline found at " + file.getPath());
+			return baseline;
+		}
+
+		try(var reader = new FileReader(file)) {
+			var root = new JsonParser().parse(reader).getAsJsonObject();
+			String machine = root.get("machine").getAsString();
+			if(!machine.equals(machine())) {
+				System.out.println("Baseline recorded on another machine (" + machine + "), comparisons are indicative only.");
+			}
+
+			for(JsonElement element : root.getAsJsonArray("results")) {
+				var object = element.getAsJsonObject();
+				var sorted = new TreeMap<String, String>();
+				for(var entry : object.getAsJsonObject("params").entrySet()) {
+					sorted.put(entry.getKey(), entry.getValue().getAsString());
+				}
+				baseline.put(object.get("benchmark").getAsString() + sorted, object.get("score").getAsDouble());
+			}
+		}
+		return baseline;
+	}
+
+}
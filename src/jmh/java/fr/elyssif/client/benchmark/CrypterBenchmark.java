@@ -0,0 +1,90 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.benchmark;
+
+import java.io.File;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import fr.elyssif.client.security.Crypter;
+
+/**
+ * Throughput of {@link Crypter#encrypt(String, File, fr.elyssif.client.callback.ProgressCallback, Runnable, fr.elyssif.client.callback.ErrorCallback)}
+ * and {@link Crypter#decrypt(String, File, fr.elyssif.client.callback.ProgressCallback, Runnable, fr.elyssif.client.callback.ErrorCallback)}
+ * according to the chunk size and the amount of worker threads.
+ * @author Jérémy LAMBERT
+ *
+ */
+public class CrypterBenchmark extends FileBenchmark {
+
+	private static final String PUBLIC_KEY = "0484f064445a8161501803290970d5c8b65f639d606fe603ef1d67ba290606a13c0057be062ca25dfd7d919f57ae1e95848fa228e6976b6cb8daab79eba25751af";
+	private static final String PRIVATE_KEY = "61a224feb41188062da2e205498f4a97a3ddd71f591956518e808fe3657fb0ce";
+
+	/**
+	 * Plaintext length of a chunk in bytes.
+	 */
+	@Param({ "65536", "1048576" })
+	public int chunkSize;
+
+	/**
+	 * Amount of worker threads, zero for all available processors.
+	 */
+	@Param({ "1", "0" })
+	public int parallelism;
+
+	private File encrypted;
+	private File destination;
+
+	@Override
+	protected void prepare() throws Exception {
+		Crypter.setChunkSize(chunkSize);
+		Crypter.setParallelism(parallelism);
+
+		encrypted = createTempFile();
+		destination = createTempFile();
+		encrypt(encrypted);
+	}
+
+	@Override
+	protected void cleanup() {
+		encrypted.delete();
+		destination.delete();
+	}
+
+	@Benchmark
+	public File encrypt() throws Exception {
+		return encrypt(destination);
+	}
+
+	@Benchmark
+	public File decrypt() throws Exception {
+		var completion = new Completion();
+		new Crypter(encrypted).decrypt(PRIVATE_KEY, destination, progress -> {}, completion::done, completion::fail);
+		completion.await();
+		return destination;
+	}
+
+	private File encrypt(File output) throws Exception {
+		var completion = new Completion();
+		new Crypter(source).encrypt(PUBLIC_KEY, output, progress -> {}, completion::done, completion::fail);
+		completion.await();
+		return output;
+	}
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Base state of the benchmarks reading a whole file.<br>
+ * A source file of random content is created once per trial, for each
+ * size parameter, before {@link #prepare()} is called. Throughput is
+ * measured in operations per second, the {@link BenchmarkRunner} converts it to MB/s.
+ * @author Jérémy LAMBERT
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public abstract class FileBenchmark {
+
+	private static final int WRITE_BLOCK_SIZE = 1024 * 1024;
+
+	/**
+	 * Size of the source file in bytes, from 1 KiB to 4 GiB.
+	 */
+	@Param({ "1024", "1048576", "67108864", "1073741824", "4294967296" })
+	public long size;
+
+	protected File source;
+
+	@Setup(Level.Trial)
+	public final void setupTrial() throws Exception {
+		createSource();
+		prepare();
+	}
+
+	@TearDown(Level.Trial)
+	public final void tearDownTrial() {
+		cleanup();
+		source.delete();
+	}
+
+	/**
+	 * Prepare the trial once the source file has been created.
+	 * @throws Exception
+	 */
+	protected void prepare() throws Exception {}
+
+	/**
+	 * Clean up the trial before the source file is deleted.
+	 */
+	protected void cleanup() {}
+
+	private void createSource() throws IOException {
+		source = createTempFile();
+
+		var random = new Random(size);
+		var block = new byte[WRITE_BLOCK_SIZE];
+		try(var channel = FileChannel.open(source.toPath(), StandardOpenOption.WRITE)) {
+			long remaining = size;
+			while(remaining > 0) {
+				random.nextBytes(block);
+				var buffer = ByteBuffer.wrap(block, 0, (int) Math.min(block.length, remaining));
+				while(buffer.hasRemaining()) {
+					remaining -= channel.write(buffer);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Create an empty temporary file deleted when the JVM exits.
+	 * @return the file
+	 * @throws IOException
+	 */
+	protected static File createTempFile() throws IOException {
+		var file = File.createTempFile("elyssif-benchmark", ".bin");
+		file.deleteOnExit();
+		return file;
+	}
+
+	/**
+	 * Waits for the completion of an asynchronous job, rethrowing its error.
+	 */
+	protected static final class Completion {
+
+		private final CountDownLatch latch = new CountDownLatch(1);
+		private volatile Exception exception;
+
+		void done() {
+			latch.countDown();
+		}
+
+		void fail(Exception exception) {
+			this.exception = exception;
+			latch.countDown();
+		}
+
+		void await() throws Exception {
+			latch.await();
+			if(exception != null) {
+				throw exception;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.benchmark;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+
+import fr.elyssif.client.security.BlockReader;
+import fr.elyssif.client.security.DigestCache;
+import fr.elyssif.client.security.Hash;
+
+/**
+ * Throughput of {@link Hash#sha256(java.io.File, fr.elyssif.client.callback.HashCallback, fr.elyssif.client.callback.ErrorCallback)}
+ * according to the block size and to whether the file is memory-mapped.
+ * The digest cache is disabled so the file is always read.
+ * @author Jérémy LAMBERT
+ *
+ */
+public class HashBenchmark extends FileBenchmark {
+
+	/**
+	 * Length of the blocks read in bytes.
+	 */
+	@Param({ "65536", "1048576", "8388608" })
+	public int blockSize;
+
+	/**
+	 * True to memory-map the file instead of reading it into direct buffers.
+	 */
+	@Param({ "false", "true" })
+	public boolean mapped;
+
+	@Override
+	protected void prepare() {
+		DigestCache.disable();
+		BlockReader.setBlockSize(blockSize);
+		BlockReader.setMappedThreshold(mapped ? 1 : 0);
+	}
+
+	@Benchmark
+	public byte[] sha256() throws Exception {
+		var completion = new Completion();
+		var result = new AtomicReference<byte[]>();
+		Hash.sha256(source, digest -> {
+			result.set(digest);
+			completion.done();
+		}, completion::fail);
+		completion.await();
+		return result.get();
+	}
+
+}
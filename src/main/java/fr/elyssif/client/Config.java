@@ -144,6 +144,22 @@ public final class Config {
 		// Set default config here
 		// Required values that can be omitted in the config file
 		setDefault("Verbose", "false");
+		setDefault("CryptoThreads", "0"); // 0 uses all available processors
+		setDefault("ChunkSize", "0"); // 0 uses the default size
+		setDefault("Compression", "false"); // Compress content before encryption unless already compressed. Compressed files cannot be resumed nor previewed
+		setDefault("BlockSize", "0"); // 0 uses the default size
+		setDefault("MappedThreshold", "0"); // 0 never maps files
+		setDefault("DeviceConcurrency", "1"); // Jobs reading the same device at once
+		setDefault("DigestCacheSize", "1000"); // 0 disables the digest cache
+		setDefault("ReprobeProviders", "false"); // Benchmark the security providers at every start instead of once per Java runtime
+		setDefault("CheckpointLifetime", "72"); // Hours an interrupted encryption can be resumed, its key is deleted afterwards
+		setDefault("ConcurrentTransfers", "2"); // Transfers running at once
+		setDefault("HttpTransport", "pooled"); // "pooled" (HTTP/1.1 keep-alive) or "http2"
+		setDefault("HttpConnections", "0"); // Connections per host of the pooled transport, 0 uses the default amount
+		setDefault("HttpTimeout", "30"); // Seconds, 0 disables timeouts
+		setDefault("RequestCompression", "0"); // Gzip request bodies larger than this many bytes, 0 disables it
+		setDefault("HttpCacheSize", "8388608"); // Bytes of responses cached in memory, 0 disables the cache
+		setDefault("HttpDiskCacheSize", "0"); // Bytes of responses cached on disk, 0 disables the disk cache
 		
 		setVerbose(get("Verbose").equals("true"));
 		values.remove("Verbose");
@@ -190,7 +206,7 @@ public final class Config {
 	 * @param key
 	 * @return the value associated with the given key, null if not found
 	 */
-	public final String get(String key) {
+	public final synchronized String get(String key) {
 		return values.get(key);
 	}
 
@@ -200,7 +216,7 @@ public final class Config {
 	 * @param value
 	 * @see {@link #save() save}
 	 */
-	public final void set(String key, String value) {
+	public final synchronized void set(String key, String value) {
 		if(value == null) values.remove(key);
 		else values.put(key, value);
 	}
@@ -209,7 +225,7 @@ public final class Config {
 	 * Save the current config into the config file.
 	 * @return true on success
 	 */
-	public final boolean save() {
+	public final synchronized boolean save() {
 
 		if(isExport()) {
 			if(!checkDirectory() || !checkPermissions()) return false;
@@ -249,6 +265,15 @@ public final class Config {
 		return true;
 	}
 
+	/**
+	 * Get the program's directory, where the config and the caches are stored.
+	 * The directory is created if needed.
+	 * @return the program's directory, null if it couldn't be created
+	 */
+	public final File getProgramDirectory() {
+		return checkDirectory() ? new File(PROGRAM_DIRECTORY_PATH) : null;
+	}
+
 	/**
 	 * Check if the config file exists.
 	 * @return true if the config file exists in the program's directory
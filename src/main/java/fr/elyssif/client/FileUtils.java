@@ -0,0 +1,79 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+
+/**
+ * Various utilities for files.
+ * 
+ * @author Jérémy LAMBERT
+ *
+ */
+public abstract class FileUtils {
+
+	/**
+	 * Make the given file or directory accessible by its owner only.
+	 * @param path the file or directory
+	 * @param directory true if the path is a directory
+	 * @throws IOException
+	 */
+	public static void restrict(Path path, boolean directory) throws IOException {
+		if(Files.getFileStore(path).supportsFileAttributeView(PosixFileAttributeView.class)) {
+			Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(directory ? "rwx------" : "rw-------"));
+		} else {
+			var file = path.toFile();
+			file.setReadable(false, false);
+			file.setReadable(true, true);
+			file.setWritable(false, false);
+			file.setWritable(true, true);
+			if(directory) {
+				file.setExecutable(false, false);
+				file.setExecutable(true, true);
+			}
+		}
+	}
+
+	/**
+	 * Create the given directory and its parents if needed, accessible by its owner only.
+	 * An existing directory is restricted too.
+	 * @param path the directory
+	 * @throws IOException
+	 */
+	public static void createRestrictedDirectory(Path path) throws IOException {
+		Files.createDirectories(path);
+		restrict(path, true);
+	}
+
+	/**
+	 * Create a new empty file accessible by its owner only, replacing the existing one if any.
+	 * The file is restricted before anything is written to it.
+	 * @param path the file
+	 * @throws IOException
+	 */
+	public static void createRestrictedFile(Path path) throws IOException {
+		Files.deleteIfExists(path);
+		Files.createFile(path);
+		restrict(path, false);
+	}
+
+}
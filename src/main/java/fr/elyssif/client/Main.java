@@ -17,13 +17,24 @@
  */
  package fr.elyssif.client;
 
+import java.io.File;
 import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 import java.util.logging.StreamHandler;
 
 import fr.elyssif.client.gui.ElyssifClient;
+import fr.elyssif.client.gui.transfer.TransferQueue;
+import fr.elyssif.client.http.ResponseCache;
+import fr.elyssif.client.http.RestRequest;
+import fr.elyssif.client.http.Transports;
+import fr.elyssif.client.security.BlockReader;
+import fr.elyssif.client.security.Crypter;
+import fr.elyssif.client.security.DigestCache;
+import fr.elyssif.client.security.IOScheduler;
+import fr.elyssif.client.security.Providers;
 
 /**
  * Main class. Sets up error handling and loads config
@@ -33,6 +44,9 @@ import fr.elyssif.client.gui.ElyssifClient;
  */
 public final class Main {
 
+	private static final String DIGEST_CACHE_FILE_NAME = "digests.bin";
+	private static final String RESPONSE_CACHE_DIRECTORY_NAME = "http-cache";
+
 	private static void setup() {
 		setupLogging();
 		setupErrorHandling();
@@ -41,12 +55,64 @@ public final class Main {
 			Logger.getGlobal().info("Application exit");
 			System.exit(1);
 		}
+		setupSecurity();
+		setupHttp();
 	}
 
 	private static boolean loadConfig() {
 		return Config.getInstance().load();
 	}
 
+	private static void setupSecurity() {
+		Crypter.setParallelism((int) getNumberConfig("CryptoThreads"));
+		Crypter.setChunkSize((int) getNumberConfig("ChunkSize"));
+		Crypter.setCompressionEnabled("true".equals(Config.getInstance().get("Compression")));
+		BlockReader.setBlockSize((int) getNumberConfig("BlockSize"));
+		BlockReader.setMappedThreshold(getNumberConfig("MappedThreshold"));
+		IOScheduler.setDeviceConcurrency((int) getNumberConfig("DeviceConcurrency"));
+		TransferQueue.setConcurrency((int) getNumberConfig("ConcurrentTransfers"));
+		Providers.select();
+		Crypter.purgeCheckpoints(TimeUnit.HOURS.toMillis(getNumberConfig("CheckpointLifetime")));
+
+		File directory = Config.getInstance().getProgramDirectory();
+		if(directory != null) {
+			DigestCache.enable(new File(directory, DIGEST_CACHE_FILE_NAME), (int) getNumberConfig("DigestCacheSize"));
+		}
+
+		Logger.getGlobal().info("Crypto threads: " + Crypter.getParallelism());
+		Logger.getGlobal().info("Chunk size: " + Crypter.getChunkSize());
+		Logger.getGlobal().info("Compression: " + Crypter.isCompressionEnabled());
+		Logger.getGlobal().info("Block size: " + BlockReader.getBlockSize());
+		Logger.getGlobal().info("Digest provider: " + Providers.getDigestProvider());
+		Logger.getGlobal().info("Cipher provider: " + Providers.getCipherProvider());
+	}
+
+	private static void setupHttp() {
+		Transports.setType(Config.getInstance().get("HttpTransport"));
+		Transports.setMaxConnections((int) getNumberConfig("HttpConnections"));
+		Transports.setTimeout((int) getNumberConfig("HttpTimeout"));
+		RestRequest.setCompressionThreshold((int) getNumberConfig("RequestCompression"));
+
+		File directory = Config.getInstance().getProgramDirectory();
+		ResponseCache.enable(getNumberConfig("HttpCacheSize"), directory != null ? new File(directory, RESPONSE_CACHE_DIRECTORY_NAME) : null, getNumberConfig("HttpDiskCacheSize"));
+
+		Logger.getGlobal().info("HTTP transport: " + Transports.getType());
+	}
+
+	/**
+	 * Parse a numeric config entry.
+	 * @param field
+	 * @return the value, or 0 (default) if invalid
+	 */
+	private static long getNumberConfig(String field) {
+		try {
+			return Long.parseLong(Config.getInstance().get(field));
+		} catch (NumberFormatException e) {
+			Logger.getGlobal().warning("Invalid \"" + field + "\" config value, using default.");
+			return 0;
+		}
+	}
+
 	private static StreamHandler createStreamHandler(PrintStream stream, LogFormatter formatter) {
 		return new StreamHandler(stream, formatter) {
 
@@ -17,6 +17,8 @@
  */
  package fr.elyssif.client;
 
+import java.util.Locale;
+
 /**
  * Various utilities for String.
  * 
@@ -60,4 +62,32 @@ public abstract class StringUtils {
 		return builder.toString();
 	}
 
+	/**
+	 * Format an amount of bytes to a human-readable string using binary units.
+	 * For example, 1536 is formatted to "1.5 KB".
+	 * @param bytes the amount of bytes
+	 * @return the formatted amount
+	 */
+	public static String formatBytes(double bytes) {
+		final String[] units = { "B", "KB", "MB", "GB", "TB" };
+		int unit = 0;
+		while(bytes >= 1024 && unit < units.length - 1) {
+			bytes /= 1024;
+			unit++;
+		}
+		return unit == 0 ? Math.round(bytes) + " " + units[0] : String.format(Locale.ROOT, "%.1f %s", bytes, units[unit]);
+	}
+
+	/**
+	 * Format a duration to a "h:mm:ss" or "m:ss" string.
+	 * @param seconds the duration in seconds
+	 * @return the formatted duration
+	 */
+	public static String formatDuration(long seconds) {
+		long hours = seconds / 3600;
+		long minutes = (seconds % 3600) / 60;
+		long remaining = seconds % 60;
+		return hours > 0 ? String.format("%d:%02d:%02d", hours, minutes, remaining) : String.format("%d:%02d", minutes, remaining);
+	}
+
 }
@@ -20,7 +20,9 @@
 /**
  * Functional interface for asynchronous process progress.
  * Mainly used to update the UI so the <code>process</code> method
- * should be called on the JavaFX thread using <code>Platform.runLater()</code>.
+ * should be called on the JavaFX thread using <code>Platform.runLater()</code>.<br>
+ * Use {@link fr.elyssif.client.gui.view.ProgressPulse} to merge the updates
+ * into a single pending JavaFX pulse.
  * @author Jérémy LAMBERT
  *
  */
@@ -32,5 +34,14 @@ public interface ProgressCallback {
 	 * @param progress a progress value, between 0 and 1
 	 */
 	void progress(double progress);
-	
+
+	/**
+	 * Callback when the asynchronous process progressed, with its throughput.
+	 * Calls {@link #progress(double)} by default.
+	 * @param data the progress data
+	 */
+	default void progress(ProgressCallbackData data) {
+		progress(data.getProgress());
+	}
+
 }
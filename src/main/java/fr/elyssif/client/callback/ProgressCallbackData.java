@@ -0,0 +1,107 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.callback;
+
+/**
+ * Progress callback data, with the throughput of the process
+ * and its estimated remaining time.
+ * @author Jérémy LAMBERT
+ *
+ * @see ProgressCallback#progress(ProgressCallbackData)
+ */
+public final class ProgressCallbackData {
+
+	private final double progress;
+	private final long processed;
+	private final long total;
+	private final double bytesPerSecond;
+	private final long remainingSeconds;
+
+	/**
+	 * Create a new instance of ProgressCallbackData without throughput information.
+	 * @param progress a progress value, between 0 and 1
+	 */
+	public ProgressCallbackData(double progress) {
+		this(progress, -1, -1, 0, -1);
+	}
+
+	/**
+	 * Create a new instance of ProgressCallbackData.
+	 * @param progress a progress value, between 0 and 1
+	 * @param processed the amount of bytes processed so far
+	 * @param total the total amount of bytes to process
+	 * @param bytesPerSecond the current throughput
+	 * @param remainingSeconds the estimated remaining time, -1 if unknown
+	 */
+	public ProgressCallbackData(double progress, long processed, long total, double bytesPerSecond, long remainingSeconds) {
+		this.progress = progress;
+		this.processed = processed;
+		this.total = total;
+		this.bytesPerSecond = bytesPerSecond;
+		this.remainingSeconds = remainingSeconds;
+	}
+
+	/**
+	 * Get the progress value.
+	 * @return progress, between 0 and 1
+	 */
+	public final double getProgress() {
+		return progress;
+	}
+
+	/**
+	 * Get the amount of bytes processed so far.
+	 * @return processed, -1 if unknown
+	 */
+	public final long getProcessed() {
+		return processed;
+	}
+
+	/**
+	 * Get the total amount of bytes to process.
+	 * @return total, -1 if unknown
+	 */
+	public final long getTotal() {
+		return total;
+	}
+
+	/**
+	 * Get the current throughput.
+	 * @return bytesPerSecond, zero if unknown
+	 */
+	public final double getBytesPerSecond() {
+		return bytesPerSecond;
+	}
+
+	/**
+	 * Get the estimated remaining time.
+	 * @return remainingSeconds, -1 if unknown
+	 */
+	public final long getRemainingSeconds() {
+		return remainingSeconds;
+	}
+
+	/**
+	 * Get if the throughput and remaining time are known.
+	 * @return true if known
+	 */
+	public final boolean hasThroughput() {
+		return bytesPerSecond > 0 && remainingSeconds >= 0;
+	}
+
+}
@@ -26,6 +26,9 @@ import com.jfoenix.controls.JFXDecorator;
 
 import fr.elyssif.client.Config;
 import fr.elyssif.client.gui.controller.MainController;
+import fr.elyssif.client.gui.controller.SnackbarController;
+import fr.elyssif.client.gui.controller.SnackbarController.SnackbarMessageType;
+import fr.elyssif.client.gui.transfer.TransferQueue;
 import fr.elyssif.client.gui.view.ViewUtils;
 import fr.elyssif.client.http.RestRequest;
 import fr.elyssif.client.http.echo.Echo;
@@ -75,6 +78,9 @@ public final class ElyssifClient extends Application {
 				public void handle(WindowEvent event) {
 					if(!MainController.getInstance().canExit()) {
 						event.consume();
+						if(TransferQueue.getInstance().isActive()) {
+							SnackbarController.getInstance().message(MainController.getInstance().getBundle().getString("transfers-running"), SnackbarMessageType.ERROR, 4000);
+						}
 					} else {
 						Echo echo = MainController.getInstance().getAuthenticator().getEcho();
 						if(echo != null) {
@@ -30,6 +30,7 @@ public final class AppContainerController extends ContainerController {
 	@FXML private SendController sendController;
 	@FXML private ReceiveController receiveController;
 	@FXML private SettingsController settingsController;
+	@FXML private TransfersController transfersController;
 
 	public void initialize(URL location, ResourceBundle resources) {
 		if(Config.getInstance().isVerbose())
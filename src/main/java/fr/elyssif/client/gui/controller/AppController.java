@@ -92,7 +92,8 @@ public final class AppController extends FadeController implements Lockable {
 		});
 
 		sideMenuController.bind(0, containerController.getController("home"));
-		sideMenuController.bind(2, containerController.getController("settings"));
+		sideMenuController.bind(2, containerController.getController("transfers"));
+		sideMenuController.bind(3, containerController.getController("settings"));
 	}
 
 	@Override
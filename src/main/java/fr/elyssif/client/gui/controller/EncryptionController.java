@@ -17,56 +17,44 @@
  */
  package fr.elyssif.client.gui.controller;
 
-import java.awt.Desktop;
-import java.io.IOException;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.ResourceBundle;
-import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import com.jfoenix.controls.JFXButton;
-import com.jfoenix.controls.JFXSpinner;
 
 import fr.elyssif.client.Config;
+import fr.elyssif.client.gui.controller.SnackbarController.SnackbarMessageType;
 import fr.elyssif.client.gui.repository.FileRepository;
+import fr.elyssif.client.gui.transfer.Transfer;
+import fr.elyssif.client.gui.transfer.TransferQueue;
 import fr.elyssif.client.gui.validation.ServerValidator;
-import fr.elyssif.client.gui.view.ImageSlideTransition;
 import fr.elyssif.client.gui.view.TadaAnimation;
-import fr.elyssif.client.gui.view.ViewUtils;
-import javafx.animation.FadeTransition;
 import javafx.application.Platform;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.fxml.FXML;
-import javafx.scene.control.ProgressIndicator;
 import javafx.scene.image.ImageView;
 import javafx.scene.layout.VBox;
-import javafx.util.Duration;
 
 /**
  * Super-class for "send" and "receive" controllers which
- * share the same animation and overall logic.
+ * share the same animation and overall logic.<br>
+ * Encryption and decryption run as transfers in the {@link TransferQueue},
+ * so the form is available again as soon as a transfer is submitted.
  * @author Jérémy LAMBERT
  *
  */
 public abstract class EncryptionController extends FadeController implements Lockable, Validatable {
 
 	@FXML private ImageView image;
-	@FXML private JFXSpinner spinner;
 	@FXML private VBox formContainer;
 	@FXML private JFXButton button;
 
-	private java.io.File destinationFile;
 	private SimpleBooleanProperty disableProperty;
 	private FileRepository fileRepository;
 
 	private HashMap<String, ServerValidator> serverValidators;
-	private double progress = 0;
-
-	private FadeTransition formContainerTransition;
-	private FadeTransition buttonTransition;
-	private FadeTransition spinnerTransition;
-	private ImageSlideTransition slideTransition;
 
 	public void initialize(URL location, ResourceBundle resources) {
 		if(Config.getInstance().isVerbose())
@@ -82,97 +70,43 @@ public abstract class EncryptionController extends FadeController implements Loc
 		Platform.runLater(() -> fileRepository = new FileRepository());
 	}
 
-	protected final java.io.File getDestinationFile() {
-		return destinationFile;
-	}
-
-	protected final void setDestinationFile(java.io.File destinationFile) {
-		this.destinationFile = destinationFile;
-	}
-
 	protected final FileRepository getFileRepository() {
 		return fileRepository;
 	}
 
-	protected final double getProgress() {
-		return progress;
-	}
-
-	protected final void setProgress(double progress) {
-		this.progress = progress;
-		Platform.runLater(() -> spinner.setProgress(progress));
-	}
-
-	protected void playAnimation() {
-		spinner.setVisible(true);
-		spinner.setProgress(ProgressIndicator.INDETERMINATE_PROGRESS);
-		formContainerTransition = ViewUtils.createFadeOutTransition(formContainer, Duration.millis(750));
-		buttonTransition = ViewUtils.createFadeOutTransition(button, Duration.millis(750));
-		spinnerTransition = ViewUtils.createFadeInTransition(spinner, Duration.millis(750));
-		spinnerTransition.setDelay(Duration.millis(1000));
-
-		slideTransition = new ImageSlideTransition(image, getFadePane().getHeight(), Duration.millis(750));
-		spinner.toFront();
-		formContainerTransition.play();
-		buttonTransition.play();
-		spinnerTransition.play();
-		slideTransition.play();
-
-		slideTransition.setOnFinished(e -> {
-			process(() -> {
-				resetForm();
-				TadaAnimation tada = new TadaAnimation(image);
-				tada.play();
-				tada.setOnFinished(e2 -> {
-					openFile();
-					revertAnimation();
-				});
-			}, () -> {
-				// On process failure
-				destinationFile.delete();
-				resetForm();
-				revertAnimation();
-			});
-		});
-	}
+	/**
+	 * Check if the given file can be used as a destination.
+	 * Displays an error message if it cannot.
+	 * @param source the file or directory read by the transfer
+	 * @param destination the file or directory written by the transfer
+	 * @return true if the destination is valid
+	 */
+	protected final boolean checkDestination(java.io.File source, java.io.File destination) {
+		var sourcePath = source.toPath().toAbsolutePath().normalize();
+		var destinationPath = destination.toPath().toAbsolutePath().normalize();
+		if(destinationPath.equals(sourcePath) || (source.isDirectory() && destinationPath.startsWith(sourcePath))) {
+			SnackbarController.getInstance().message(getBundle().getString("invalid-file"), SnackbarMessageType.ERROR, 4000);
+			return false;
+		}
 
-	protected void revertAnimation() {
-		formContainerTransition.setRate(-1);
-		buttonTransition.setRate(-1);
-		spinnerTransition.setRate(-1);
-		slideTransition.revert();
-
-		spinnerTransition.setDelay(Duration.millis(0));
-
-		formContainerTransition.setDelay(Duration.millis(1000));
-		buttonTransition.setDelay(Duration.millis(1000));
-		slideTransition.setDelay(Duration.millis(1000));
-
-		formContainerTransition.play();
-		buttonTransition.play();
-		spinnerTransition.play();
-		slideTransition.play();
-		slideTransition.setOnFinished(e3 -> {
-			spinner.toBack();
-			progress = 0;
-			setLocked(false);
-			spinner.setVisible(false);
-		});
+		if(TransferQueue.getInstance().isBusy(destination)) {
+			SnackbarController.getInstance().message(getBundle().getString("transfer-busy"), SnackbarMessageType.ERROR, 4000);
+			return false;
+		}
+		return true;
 	}
 
-	private void openFile() {
-		new Thread(() -> {
-			Desktop desktop = Desktop.getDesktop();
-			try {
-				if(Desktop.isDesktopSupported() && desktop.isSupported(Desktop.Action.OPEN)) {
-					desktop.open(destinationFile.getParentFile());
-				} else {
-					Logger.getGlobal().warning("Desktop open action not supported.");
-				}
-			} catch (IOException e) {
-				Logger.getGlobal().log(Level.SEVERE, "Couldn't open file explorer.", e);
-			}
-		}).start();
+	/**
+	 * Add a transfer to the queue and reset the form
+	 * so another file can be selected right away.
+	 * @param transfer
+	 */
+	protected final void submit(Transfer transfer) {
+		TransferQueue.getInstance().submit(transfer);
+		resetForm();
+		resetValidation();
+		new TadaAnimation(image).play();
+		SnackbarController.getInstance().message(getBundle().getString("transfer-added"), SnackbarMessageType.INFO, 4000);
 	}
 
 	@FXML
@@ -182,8 +116,6 @@ public abstract class EncryptionController extends FadeController implements Loc
 		}
 	}
 
-	protected abstract void process(Runnable successCallback, Runnable failureCallback);
-
 	/**
 	 * Executed when the user clicks the button
 	 * and the form is validated (using <code>validateAll()</code>)
@@ -193,8 +125,6 @@ public abstract class EncryptionController extends FadeController implements Loc
 	@Override
 	public void setLocked(boolean locked) {
 		disableProperty.set(locked);
-		MainController.getInstance().setCanExit(!locked);
-		((Lockable) MainController.getInstance().getController("app")).setLocked(locked);
 	}
 
 	@Override
@@ -208,8 +138,4 @@ public abstract class EncryptionController extends FadeController implements Loc
 		return serverValidators;
 	}
 
-	protected JFXSpinner getSpinner() {
-		return spinner;
-	}
-
 }
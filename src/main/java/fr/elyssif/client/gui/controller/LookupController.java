@@ -18,6 +18,8 @@
  package fr.elyssif.client.gui.controller;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.Timer;
 import java.util.TimerTask;
@@ -40,6 +42,7 @@ import javafx.collections.ObservableList;
 import javafx.fxml.FXML;
 import javafx.scene.control.Label;
 import javafx.scene.control.ListCell;
+import javafx.scene.control.SelectionMode;
 
 /**
  * Controller for the custom lookup modal.
@@ -59,6 +62,8 @@ public final class LookupController extends Controller {
 	private JFXDialog parentDialog;
 	private ObservableList<Model<?>> list;
 	private Model<?> selected;
+	private List<Model<?>> selectedItems;
+	private boolean multiple;
 	private Runnable callback;
 
 	private Timer searchTimer;
@@ -110,6 +115,23 @@ public final class LookupController extends Controller {
 		return selected;
 	}
 
+	/**
+	 * Get the selected resources, when several resources can be selected.
+	 * @return the selected resources, empty if the lookup has been cancelled
+	 */
+	public final List<Model<?>> getSelectedItems() {
+		return selectedItems;
+	}
+
+	/**
+	 * Set if several resources can be selected at once.
+	 * @param multiple
+	 */
+	public final void setMultiple(boolean multiple) {
+		this.multiple = multiple;
+		results.getSelectionModel().setSelectionMode(multiple ? SelectionMode.MULTIPLE : SelectionMode.SINGLE);
+	}
+
 	public final void setParentDialog(JFXDialog parentDialog) {
 		this.parentDialog = parentDialog;
 	}
@@ -168,6 +190,7 @@ public final class LookupController extends Controller {
 	@FXML
 	public void cancel() {
 		selected = null;
+		selectedItems = List.of();
 		if(callback != null) {
 			callback.run();
 		}
@@ -177,6 +200,10 @@ public final class LookupController extends Controller {
 	@FXML
 	private void select() {
 		selected = (Model<?>) results.getSelectionModel().getSelectedItem();
+		selectedItems = new ArrayList<>();
+		for(Object item : results.getSelectionModel().getSelectedItems()) {
+			selectedItems.add((Model<?>) item);
+		}
 		if(callback != null) {
 			callback.run();
 		}
@@ -188,6 +215,10 @@ public final class LookupController extends Controller {
 			@SuppressWarnings("unchecked")
 			ListCell<Model<?>> cell = (ListCell<Model<?>>) event.getTarget();
 			if (event.getClickCount() == 2 && !cell.isEmpty()) {
+				if(multiple) {
+					select();
+					return;
+				}
 				selected = cell.getItem();
 				if(callback != null) {
 					callback.run();
@@ -21,15 +21,15 @@ import java.net.URL;
 import java.util.ResourceBundle;
 import java.util.logging.Logger;
 
-import org.apache.http.client.HttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
-
 import com.jfoenix.controls.JFXSnackbar;
 
 import fr.elyssif.client.Config;
 import fr.elyssif.client.gui.controller.SnackbarController.SnackbarMessageType;
 import fr.elyssif.client.gui.controller.auth.AuthController;
+import fr.elyssif.client.gui.transfer.TransferQueue;
 import fr.elyssif.client.http.Authenticator;
+import fr.elyssif.client.http.HttpTransport;
+import fr.elyssif.client.http.Transports;
 import javafx.fxml.FXML;
 
 /**
@@ -41,7 +41,7 @@ public final class MainController extends ContainerController {
 
 	private static MainController instance;
 
-	private HttpClient client;
+	private HttpTransport transport;
 	private Authenticator authenticator;
 
 	@FXML private AppController appController;
@@ -53,8 +53,8 @@ public final class MainController extends ContainerController {
 		if(Config.getInstance().isVerbose())
 			Logger.getGlobal().info("Loading main controller.");
 		super.initialize(location, resources);
-		client = HttpClientBuilder.create().build();
-		authenticator = new Authenticator(client, Config.getInstance().get("Host"), Config.getInstance().get("SocketHost"), Config.getInstance().get("Token"));
+		transport = Transports.create();
+		authenticator = new Authenticator(transport, Config.getInstance().get("Host"), Config.getInstance().get("SocketHost"), Config.getInstance().get("Token"));
 		instance = this;
 
 		SnackbarController.getInstance().setSnackbar(new JFXSnackbar(getPane()));
@@ -79,11 +79,11 @@ public final class MainController extends ContainerController {
 	}
 
 	/**
-	 * Get the http client.
-	 * @return client
+	 * Get the http transport shared by every request.
+	 * @return transport
 	 */
-	public final HttpClient getHttpClient() {
-		return client;
+	public final HttpTransport getTransport() {
+		return transport;
 	}
 
 	/**
@@ -119,8 +119,14 @@ public final class MainController extends ContainerController {
 		this.canExit = canExit;
 	}
 
+	/**
+	 * Get if the program can exit. The program cannot exit
+	 * while transfers are running.
+	 * @return true if the program can exit
+	 * @see TransferQueue#isActive()
+	 */
 	public boolean canExit() {
-		return canExit;
+		return canExit && !TransferQueue.getInstance().isActive();
 	}
 
 }
@@ -19,7 +19,10 @@
 
 import java.awt.Toolkit;
 import java.awt.datatransfer.StringSelection;
+import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -42,6 +45,8 @@ import fr.elyssif.client.gui.controller.SnackbarController.SnackbarMessageType;
 import fr.elyssif.client.gui.model.File;
 import fr.elyssif.client.gui.model.PaymentState;
 import fr.elyssif.client.gui.model.User;
+import fr.elyssif.client.gui.transfer.Transfer;
+import fr.elyssif.client.gui.transfer.TransferType;
 import fr.elyssif.client.gui.view.BitcoinFormatter;
 import fr.elyssif.client.gui.view.QRCode;
 import fr.elyssif.client.gui.view.ViewUtils;
@@ -55,12 +60,12 @@ import javafx.application.Platform;
 import javafx.beans.binding.Bindings;
 import javafx.fxml.FXML;
 import javafx.scene.control.Label;
-import javafx.scene.control.ProgressIndicator;
 import javafx.scene.image.ImageView;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.StackPane;
 import javafx.scene.layout.VBox;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 import javafx.util.Duration;
 
@@ -107,7 +112,6 @@ public final class ReceiveController extends EncryptionController {
 			Logger.getGlobal().info("Loading receive controller.");
 		super.initialize(location, resources);
 
-		getSpinner().prefWidthProperty().bind(form.widthProperty());
 		initInputKeyListeners();
 	}
 
@@ -162,28 +166,48 @@ public final class ReceiveController extends EncryptionController {
 		showForm();
 	}
 
+	/**
+	 * Ask the user where to save the decrypted file. Encrypted directories
+	 * are extracted into a directory.
+	 * @return the chosen destination, null if cancelled
+	 */
+	private java.io.File chooseDestination() {
+		boolean archive = false;
+		try {
+			archive = Crypter.isArchive(selectedFile);
+		} catch (IOException e) {
+			Logger.getGlobal().log(Level.WARNING, "Couldn't read encrypted file header.", e);
+		}
+
+		if(archive) {
+			DirectoryChooser directoryChooser = new DirectoryChooser();
+			directoryChooser.setTitle(getBundle().getString("save-decrypt-folder"));
+			return directoryChooser.showDialog(getPane().getScene().getWindow());
+		}
+
+		FileChooser fileChooser = new FileChooser();
+		fileChooser.setTitle(getBundle().getString("save-decrypt"));
+		return fileChooser.showSaveDialog(getPane().getScene().getWindow());
+	}
+
 	@FXML
 	private void saveClicked() {
 		foundButtonsContainer.setDisable(true);
 		addressLabel.setDisable(true);
 
 		getFileRepository().getPrivateKey(fileModel, data -> {
-			FileChooser fileChooser = new FileChooser();
-			fileChooser.setTitle(getBundle().getString("save-decrypt"));
-			java.io.File dest = fileChooser.showSaveDialog(getPane().getScene().getWindow());
+			java.io.File dest = chooseDestination();
 
 			foundButtonsContainer.setDisable(false);
 			addressLabel.setDisable(false);
 
-			if(dest != null) {
-				if(dest.getAbsolutePath().equals(selectedFile.getAbsolutePath())) {
-					SnackbarController.getInstance().message(getBundle().getString("invalid-file"), SnackbarMessageType.ERROR, 4000);
-				} else {
-					setDestinationFile(dest);
-					setLocked(true);
-					showForm();
-					playAnimation();
-				}
+			if(dest != null && checkDestination(selectedFile, dest)) {
+				File model = fileModel;
+				java.io.File source = selectedFile;
+
+				reset();
+				showForm();
+				submit(new Transfer(model.getName().get(), TransferType.RECEIVE, dest, transfer -> receive(transfer, model, source)));
 			}
 		}, errorData -> {
 			if(errorData.getStatus() == 403) {
@@ -198,35 +222,70 @@ public final class ReceiveController extends EncryptionController {
 	}
 
 
-	@SuppressWarnings("unchecked")
 	protected void onButtonClicked() {
 		form.setDisable(true);
 		showHashSpinner();
 
+		// Files carrying their server ids are found right away, others have to be hashed first
+		lookupById(readFileIds(selectedFile), 0);
+	}
+
+	/**
+	 * Read the ids of the file on the server from the header of the given encrypted file.
+	 * A file sent to several recipients carries one id per recipient.
+	 * @param file the encrypted file
+	 * @return the ids, empty if the file doesn't carry them
+	 */
+	private List<Integer> readFileIds(java.io.File file) {
+		var ids = new ArrayList<Integer>();
+		try {
+			String token = Crypter.getLookupToken(file);
+			if(token != null) {
+				for(String id : token.split(",")) {
+					ids.add(Integer.parseInt(id));
+				}
+			}
+		} catch (IOException | NumberFormatException e) {
+			Logger.getGlobal().log(Level.WARNING, "Couldn't read file lookup token.", e);
+			ids.clear();
+		}
+		return ids;
+	}
+
+	/**
+	 * Fetch the ids one after another until one of them is a file sent to the current user.
+	 * Hash the file and look it up by hash if none is.
+	 */
+	@SuppressWarnings("unchecked")
+	private void lookupById(List<Integer> ids, int index) {
+		if(index == ids.size()) {
+			lookupByHash();
+			return;
+		}
+
+		getFileRepository().getById(ids.get(index), data -> {
+			File model = ((ModelCallbackData<File>) data).getModel();
+			if(ids.size() == 1 || model.getRecipientId().get() == MainController.getInstance().getAuthenticator().getUser().getId().get()) {
+				fileFetched(model);
+			} else {
+				lookupById(ids, index + 1);
+			}
+		}, errorData -> lookupById(ids, index + 1));
+	}
+
+	@SuppressWarnings("unchecked")
+	private void lookupByHash() {
 		Hash.sha256(selectedFile, digest -> {
 			hashCiphered = Hash.toHex(digest);
 			getFileRepository().fetch(hashCiphered, data -> {
-				fileModel = ((ModelCallbackData<File>) data).getModel();
-
-				if(fileModel.getPrice().get() > 0) {
-					getFileRepository().getPaymentState(fileModel, paymentStateData -> {
-						bindPaymentState(((PaymentStateCallbackData) paymentStateData).getState());
-						hideHashSpinner();
-						showFileFound();
-					}, errorData -> {
-						if(errorData.getStatus() == 403) {
-							SnackbarController.getInstance().message(getBundle().getString("forbidden"), SnackbarMessageType.ERROR, 4000);
-						} else {
-							SnackbarController.getInstance().message(getBundle().getString(((FailCallbackData) errorData).getMessage()), SnackbarMessageType.ERROR, 4000);
-						}
-						hideHashSpinner();
-					});
+				// Files sent to several recipients always carry their ids, the record found by hash must be ours
+				File model = ((ModelCallbackData<File>) data).getModel();
+				if(model.getRecipientId().get() == MainController.getInstance().getAuthenticator().getUser().getId().get()) {
+					fileFetched(model);
 				} else {
+					SnackbarController.getInstance().message(getBundle().getString("file-not-found"), SnackbarMessageType.ERROR, 4000);
+					form.setDisable(false);
 					hideHashSpinner();
-					showFileFound();
-					saveButton.setDisable(false);
-					paymentPane.setVisible(false);
-					paymentPane.setManaged(false);
 				}
 			}, errorData -> {
 				if(errorData.getStatus() == 404) {
@@ -242,11 +301,36 @@ public final class ReceiveController extends EncryptionController {
 				SnackbarController.getInstance().message(exception.getMessage(), SnackbarMessageType.ERROR, 4000);
 				hideHashSpinner();
 				resetForm();
-				revertAnimation();
+				form.setDisable(false);
 			});
 		});
 	}
 
+	private void fileFetched(File model) {
+		fileModel = model;
+
+		if(fileModel.getPrice().get() > 0) {
+			getFileRepository().getPaymentState(fileModel, paymentStateData -> {
+				bindPaymentState(((PaymentStateCallbackData) paymentStateData).getState());
+				hideHashSpinner();
+				showFileFound();
+			}, errorData -> {
+				if(errorData.getStatus() == 403) {
+					SnackbarController.getInstance().message(getBundle().getString("forbidden"), SnackbarMessageType.ERROR, 4000);
+				} else {
+					SnackbarController.getInstance().message(getBundle().getString(((FailCallbackData) errorData).getMessage()), SnackbarMessageType.ERROR, 4000);
+				}
+				hideHashSpinner();
+			});
+		} else {
+			hideHashSpinner();
+			showFileFound();
+			saveButton.setDisable(false);
+			paymentPane.setVisible(false);
+			paymentPane.setManaged(false);
+		}
+	}
+
 	private void bindPaymentState(PaymentState state) {
 		paymentState = state;
 		paidLabel.textProperty().unbind();
@@ -389,46 +473,30 @@ public final class ReceiveController extends EncryptionController {
 		}
 	}
 
-	@Override
-	protected final void process(Runnable successCallback, Runnable failureCallback) {
-
-		Crypter crypter = new Crypter(selectedFile);
-		crypter.decrypt(fileModel.getPrivateKey().get(), getDestinationFile(), progress -> {
-			Platform.runLater(() -> setProgress(progress));
-		}, () -> {
-			getSpinner().setProgress(ProgressIndicator.INDETERMINATE_PROGRESS);
-			Hash.sha256(getDestinationFile(), digest -> {
-				fileModel.setHash(Hash.toHex(digest));
-				fileModel.setHashCiphered(hashCiphered);
-				getFileRepository().check(fileModel, data -> {
-					SnackbarController.getInstance().message(getBundle().getString("decrypt-success").replace("\\n", "\n"), SnackbarMessageType.SUCCESS, 10000);
-					successCallback.run();
-					reset();
-				}, errorData -> {
-					if(errorData.getStatus() == 404) {
-						openFailDialog(successCallback, failureCallback);
-					} else {
-						SnackbarController.getInstance().message(errorData.getStatus() + ": " + getBundle().getString("server-error").replace("\\n", "\n"), SnackbarMessageType.ERROR, 4000);
-						failureCallback.run();
-						reset();
-					}
-				});
-			}, exception -> handleException(exception, failureCallback));
-		}, exception -> handleException(exception, failureCallback));
-	}
-
-	private void handleException(Exception exception, Runnable failureCallback) {
-		SnackbarController.getInstance().message(exception.getMessage(), SnackbarMessageType.ERROR, 4000);
-		failureCallback.run();
-		reset();
+	private void receive(Transfer transfer, File model, java.io.File source) {
+		Crypter crypter = new Crypter(source);
+		transfer.setJob(crypter.decrypt(model.getPrivateKey().get(), transfer.getDestination(), transfer.createProgressCallback(), (digest, sourceDigest) -> {
+			model.setHash(Hash.toHex(digest));
+			model.setHashCiphered(Hash.toHex(sourceDigest));
+			getFileRepository().check(model, data -> {
+				SnackbarController.getInstance().message(getBundle().getString("decrypt-success").replace("\\n", "\n"), SnackbarMessageType.SUCCESS, 10000);
+				transfer.succeed();
+			}, errorData -> {
+				if(errorData.getStatus() == 404) {
+					openFailDialog(transfer);
+				} else {
+					transfer.fail(errorData.getStatus() + ": " + getBundle().getString("server-error"));
+				}
+			});
+		}, exception -> transfer.fail(exception.getMessage())));
 	}
 
-	private void openFailDialog(Runnable successCallback, Runnable failureCallback) {
+	private void openFailDialog(Transfer transfer) {
 		final JFXDialog dialog = new JFXDialog();
 		dialog.setDialogContainer((StackPane) MainController.getInstance().getPane());
 
 		JFXDialogLayout content = new JFXDialogLayout();
-		Label header = new Label(getBundle().getString("file-check-fail-header"), new ImageView("view/img/warning.png"));
+		Label header = new Label(getBundle().getString("file-check-fail-header") + " - " + transfer.getName(), new ImageView("view/img/warning.png"));
 		header.getStyleClass().add("text-white");
 		content.setHeading(header);
 		Label body = new Label(getBundle().getString("file-check-fail").replace("\\n", "\n"));
@@ -439,9 +507,8 @@ public final class ReceiveController extends EncryptionController {
 		JFXButton acceptButton = new JFXButton(getBundle().getString("yes"));
 		acceptButton.getStyleClass().add("green-A700");
 		acceptButton.setOnAction(e -> {
-			fileModel = null;
 			dialog.close();
-			successCallback.run();
+			transfer.succeed();
 		});
 		ImageView image = new ImageView("view/img/save.png");
 		image.setFitWidth(24);
@@ -451,9 +518,8 @@ public final class ReceiveController extends EncryptionController {
 		JFXButton cancelButton = new JFXButton(getBundle().getString("cancel"));
 		cancelButton.setMaxHeight(Double.MAX_VALUE);
 		cancelButton.setOnAction(e -> {
-			fileModel = null;
 			dialog.close();
-			failureCallback.run();
+			transfer.fail(getBundle().getString("file-check-fail-header"));
 		});
 
 		content.setActions(cancelButton, acceptButton);
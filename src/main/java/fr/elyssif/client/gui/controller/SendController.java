@@ -18,6 +18,9 @@
  package fr.elyssif.client.gui.controller;
 
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.ResourceBundle;
 import java.util.logging.Logger;
 
@@ -33,6 +36,8 @@ import fr.elyssif.client.gui.controller.SnackbarController.SnackbarMessageType;
 import fr.elyssif.client.gui.model.File;
 import fr.elyssif.client.gui.model.User;
 import fr.elyssif.client.gui.repository.UserRepository;
+import fr.elyssif.client.gui.transfer.Transfer;
+import fr.elyssif.client.gui.transfer.TransferType;
 import fr.elyssif.client.gui.validation.StringMaxLengthValidator;
 import fr.elyssif.client.gui.validation.StringMinLengthValidator;
 import fr.elyssif.client.gui.view.JFXNumberField;
@@ -40,12 +45,11 @@ import fr.elyssif.client.gui.view.LookupModal;
 import fr.elyssif.client.gui.view.UserListFactory;
 import fr.elyssif.client.security.Crypter;
 import fr.elyssif.client.security.Hash;
-import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.Label;
-import javafx.scene.control.ProgressIndicator;
 import javafx.scene.input.KeyCode;
 import javafx.scene.layout.StackPane;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.FileChooser;
 
 /**
@@ -55,20 +59,24 @@ import javafx.stage.FileChooser;
  */
 public final class SendController extends EncryptionController {
 
+	private static final int MAX_RECIPIENTS = 255;
+	private static final int MAX_LOOKUP_TOKEN_LENGTH = 255;
+
 	@FXML private JFXTextField nameInput;
 	@FXML private JFXNumberField priceInput;
 	@FXML private JFXTextField fileInput;
 	@FXML private JFXTextField recipientInput;
 
 	@FXML private JFXButton browseButton;
+	@FXML private JFXButton browseDirectoryButton;
 	@FXML private JFXButton recipientButton;
+	@FXML private JFXButton clearRecipientsButton;
 
 	@FXML private Label priceInputDisabledNotice;
 
 	private LookupModal<User> modal;
 	private java.io.File selectedFile;
-	private User selectedUser;
-	private File fileModel;
+	private ArrayList<User> selectedUsers = new ArrayList<>();
 
 	public void initialize(URL location, ResourceBundle resources) {
 		if(Config.getInstance().isVerbose())
@@ -83,6 +91,7 @@ public final class SendController extends EncryptionController {
 		super.show(transition, backController);
 		resetForm();
 		resetValidation();
+		Crypter.prepareEncryption();
 	}
 
 	@Override
@@ -119,6 +128,18 @@ public final class SendController extends EncryptionController {
 		}
 	}
 
+	@FXML
+	private void browseDirectoryClicked() {
+		DirectoryChooser directoryChooser = new DirectoryChooser();
+		directoryChooser.setTitle(getBundle().getString("browse-encrypt-folder"));
+		java.io.File directory = directoryChooser.showDialog(getPane().getScene().getWindow());
+		if(directory != null && directory.isDirectory()) {
+			fileInput.setText(directory.getName());
+			selectedFile = directory;
+			fileInput.validate();
+		}
+	}
+
 	@FXML
 	private void recipientClicked() {
 		modal = new LookupModal<User>(new UserRepository(), getBundle());
@@ -126,98 +147,189 @@ public final class SendController extends EncryptionController {
 		modal.setHeader("lookup-recipient");
 		modal.setListFactory(new UserListFactory());
 
-		modal.showDialog((StackPane) MainController.getInstance().getPane(), model -> {
-			if(model != null) {
-				selectedUser = model;
-				recipientInput.setText(selectedUser.getName().get());
+		modal.showMultipleDialog((StackPane) MainController.getInstance().getPane(), models -> {
+			if(!models.isEmpty()) {
+				addRecipients(models);
 				recipientInput.validate();
 			}
 		});
 	}
 
+	/**
+	 * Add users to the recipients, so recipients found with different searches can be combined.
+	 */
+	private void addRecipients(List<User> users) {
+		for(User user : users) {
+			boolean selected = selectedUsers.stream().anyMatch(u -> u.getId().get() == user.getId().get());
+			if(!selected && selectedUsers.size() < MAX_RECIPIENTS) {
+				selectedUsers.add(user);
+			}
+		}
+
+		updateRecipients();
+	}
+
+	@FXML
+	private void clearRecipientsClicked() {
+		selectedUsers.clear();
+		updateRecipients();
+		recipientInput.validate();
+	}
+
+	/**
+	 * Show the selected recipients in the recipient input.
+	 */
+	private void updateRecipients() {
+		var names = new ArrayList<String>();
+		for(User user : selectedUsers) {
+			names.add(user.getName().get());
+		}
+		recipientInput.setText(names.isEmpty() ? null : String.join(", ", names));
+		clearRecipientsButton.setDisable(selectedUsers.isEmpty());
+	}
+
 	protected void onButtonClicked() {
 		FileChooser fileChooser = new FileChooser();
 		fileChooser.setTitle(getBundle().getString("save-encrypt"));
 
 		java.io.File dest = fileChooser.showSaveDialog(getPane().getScene().getWindow());
-		if(dest != null) {
-			if(dest.getAbsolutePath().equals(selectedFile.getAbsolutePath())) {
-				SnackbarController.getInstance().message(getBundle().getString("invalid-file"), SnackbarMessageType.ERROR, 4000);
-			} else {
-				setDestinationFile(dest);
-				setLocked(true);
-				playAnimation();
+		if(dest != null && checkDestination(selectedFile, dest)) {
+			// One file record per recipient, all sharing the same encrypted file
+			var fileModels = new ArrayList<File>();
+			for(User recipient : selectedUsers) {
+				File fileModel = new File();
+				fileModel.setName(nameInput.getText());
+				fileModel.setRecipientId(recipient.getId().get());
+
+				if(priceInput.getText() != null && !priceInput.getText().isEmpty()) {
+					fileModel.setPrice(priceInput.getValue());
+				}
+				fileModels.add(fileModel);
 			}
+
+			java.io.File source = selectedFile;
+			submit(new Transfer(nameInput.getText(), TransferType.SEND, dest, transfer -> send(transfer, fileModels, source)));
 		}
 	}
 
-	@Override
-	protected final void process(Runnable successCallback, Runnable failureCallback) {
+	private void send(Transfer transfer, List<File> fileModels, java.io.File source) {
+		if(fileModels.stream().allMatch(fileModel -> fileModel.getId().get() != 0)) {
+			// Resumed, the files already exist on the server
+			encrypt(transfer, fileModels, source);
+			return;
+		}
+
+		Hash.sha256(source, digest -> {
+			for(File fileModel : fileModels) {
+				fileModel.setHash(Hash.toHex(digest));
+			}
+			store(transfer, fileModels, 0, source);
+		}, exception -> transfer.fail(exception.getMessage()));
+	}
 
-		fileModel = new File();
-		fileModel.setName(nameInput.getText());
-		fileModel.setRecipientId(selectedUser.getId().get());
+	/**
+	 * Store the file records not stored yet, one after another, then encrypt the file.
+	 */
+	private void store(Transfer transfer, List<File> fileModels, int index, java.io.File source) {
+		if(index == fileModels.size()) {
+			encrypt(transfer, fileModels, source);
+			return;
+		}
 
-		if(priceInput.getText() != null && !priceInput.getText().isEmpty()) {
-			fileModel.setPrice(priceInput.getValue());
+		File fileModel = fileModels.get(index);
+		if(fileModel.getId().get() != 0) {
+			store(transfer, fileModels, index + 1, source);
+			return;
 		}
 
-		Hash.sha256(selectedFile, digest -> {
-			fileModel.setHash(Hash.toHex(digest));
-			getFileRepository().store(fileModel, e -> encrypt(successCallback, failureCallback),
-					data -> {
-						handleValidationErrors(((FormCallbackData) data).getValidationErrors());
-						revertAnimation();
-						fileModel = null;
-					}, errorData -> {
-						SnackbarController.getInstance().message(((FailCallbackData) errorData).getFullMessage(), SnackbarMessageType.ERROR, 4000);
-						revertAnimation();
-						fileModel = null;
-					});
-		}, exception -> {
-			Platform.runLater(() -> {
-				SnackbarController.getInstance().message(exception.getMessage(), SnackbarMessageType.ERROR, 4000);
-				resetForm();
-				revertAnimation();
-			});
+		getFileRepository().store(fileModel, e -> store(transfer, fileModels, index + 1, source),
+				data -> discard(transfer, fileModels, 0, joinValidationErrors(((FormCallbackData) data).getValidationErrors())),
+				errorData -> discard(transfer, fileModels, 0, ((FailCallbackData) errorData).getFullMessage()));
+	}
+
+	/**
+	 * Destroy the file records already stored, one after another, then fail the transfer with the given message.
+	 * Records that couldn't be destroyed are reported in the message so the user can delete them.
+	 */
+	private void discard(Transfer transfer, List<File> fileModels, int index, String message) {
+		if(index == fileModels.size()) {
+			transfer.fail(message);
+			return;
+		}
+
+		File fileModel = fileModels.get(index);
+		if(fileModel.getId().get() == 0) {
+			discard(transfer, fileModels, index + 1, message);
+			return;
+		}
+
+		getFileRepository().destroy(fileModel, data -> {
+			fileModel.setId(0);
+			discard(transfer, fileModels, index + 1, message);
+		}, errorData -> {
+			Logger.getGlobal().warning("Couldn't destroy file record " + fileModel.getId().get() + " after a failed send.");
+			discard(transfer, fileModels, index + 1, message + "\n" + getBundle().getString("send-orphan").replace("%ID%", String.valueOf(fileModel.getId().get())));
 		});
 	}
 
-	private void encrypt(Runnable successCallback, Runnable failureCallback) {
+	private void encrypt(Transfer transfer, List<File> fileModels, java.io.File source) {
+		if(transfer.isCancelled()) {
+			transfer.fail(null);
+			return;
+		}
+
+		var publicKeys = new ArrayList<String>();
+		var ids = new ArrayList<String>();
+		for(File fileModel : fileModels) {
+			publicKeys.add(fileModel.getPublicKey().get());
+			ids.add(String.valueOf(fileModel.getId().get()));
+		}
 
-		Crypter crypter = new Crypter(selectedFile);
-		crypter.encrypt(fileModel.getPublicKey().get(), getDestinationFile(), progress -> {
-			Platform.runLater(() -> setProgress(progress));
-		}, () -> {
-			setProgress(ProgressIndicator.INDETERMINATE_PROGRESS);
+		// Every recipient's record shares the same ciphered hash, so looking the file up
+		// by hash can't tell them apart: the header must carry every id.
+		String lookupToken = String.join(",", ids);
+		if(lookupToken.length() > MAX_LOOKUP_TOKEN_LENGTH) {
+			discard(transfer, fileModels, 0, getBundle().getString("too-many-recipients"));
+			return;
+		}
 
-			Hash.sha256(getDestinationFile(), digest -> {
+		Crypter crypter = new Crypter(source);
+		crypter.setLookupToken(lookupToken);
+		transfer.setJob(crypter.encrypt(publicKeys, transfer.getDestination(), transfer.createProgressCallback(), digest -> {
+			for(File fileModel : fileModels) {
 				fileModel.setHashCiphered(Hash.toHex(digest));
-				getFileRepository().cipher(fileModel, data -> {
-					SnackbarController.getInstance().message(getBundle().getString("encrypt-success").replace("\\n", "\n"), SnackbarMessageType.SUCCESS, 10000);
-					successCallback.run();
-					fileModel = null;
-				}, data -> {
-					SnackbarController.getInstance().message(String.join("\n", ((FormCallbackData) data).getValidationErrors().get("ciphered_hash")), SnackbarMessageType.ERROR, 4000);
-					failureCallback.run();
-					fileModel = null;
-				}, errorData -> {
-					if(errorData.getStatus() == 403) {
-						SnackbarController.getInstance().message(getBundle().getString("forbidden"), SnackbarMessageType.ERROR, 4000);
-					} else {
-						SnackbarController.getInstance().message(((FailCallbackData) errorData).getFullMessage(), SnackbarMessageType.ERROR, 4000);
-					}
-					failureCallback.run();
-					fileModel = null;
-				});
-			}, exception -> handleException(exception, failureCallback));
-		}, exception -> handleException(exception, failureCallback));
+			}
+			cipher(transfer, fileModels, 0);
+		}, exception -> transfer.fail(exception.getMessage())));
 	}
 
-	private void handleException(Exception exception, Runnable failureCallback) {
-		SnackbarController.getInstance().message(exception.getMessage(), SnackbarMessageType.ERROR, 4000);
-		failureCallback.run();
-		fileModel = null;
+	/**
+	 * Send the hash of the encrypted file for each file record, one after another.
+	 */
+	private void cipher(Transfer transfer, List<File> fileModels, int index) {
+		if(index == fileModels.size()) {
+			SnackbarController.getInstance().message(getBundle().getString("encrypt-success").replace("\\n", "\n"), SnackbarMessageType.SUCCESS, 10000);
+			transfer.succeed();
+			return;
+		}
+
+		getFileRepository().cipher(fileModels.get(index), data -> cipher(transfer, fileModels, index + 1), data -> {
+			transfer.fail(String.join("\n", ((FormCallbackData) data).getValidationErrors().get("ciphered_hash")));
+		}, errorData -> {
+			if(errorData.getStatus() == 403) {
+				transfer.fail(getBundle().getString("forbidden"));
+			} else {
+				transfer.fail(((FailCallbackData) errorData).getFullMessage());
+			}
+		});
+	}
+
+	private String joinValidationErrors(HashMap<String, ArrayList<String>> errors) {
+		var messages = new ArrayList<String>();
+		for(ArrayList<String> fieldErrors : errors.values()) {
+			messages.addAll(fieldErrors);
+		}
+		return String.join("\n", messages);
 	}
 
 	@Override
@@ -268,8 +380,9 @@ public final class SendController extends EncryptionController {
 		nameInput.setText(null);
 		fileInput.setText(null);
 		priceInput.setText(null);
-		recipientInput.setText(null);
 		selectedFile = null;
+		selectedUsers.clear();
+		updateRecipients();
 
 		if(MainController.getInstance().getAuthenticator().getUser().getAddress().get() == null) {
 			priceInput.setManaged(false);
@@ -26,6 +26,8 @@ import com.jfoenix.controls.JFXListView;
 
 import fr.elyssif.client.Config;
 import fr.elyssif.client.callback.LogoutCallback;
+import fr.elyssif.client.gui.controller.SnackbarController.SnackbarMessageType;
+import fr.elyssif.client.gui.transfer.TransferQueue;
 import javafx.fxml.FXML;
 import javafx.scene.control.Label;
 
@@ -117,6 +119,10 @@ public final class SideMenuController extends Controller {
 
 	@FXML
 	private void logoutClicked() {
+		if(TransferQueue.getInstance().isActive()) {
+			SnackbarController.getInstance().message(getBundle().getString("transfers-running"), SnackbarMessageType.ERROR, 4000);
+			return;
+		}
 		((Lockable) getParentController()).setLocked(true);
 		MainController.getInstance().getAuthenticator().logout(new LogoutCallback());
 	}
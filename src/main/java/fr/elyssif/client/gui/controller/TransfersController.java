@@ -0,0 +1,81 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.gui.controller;
+
+import java.awt.Desktop;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ResourceBundle;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.jfoenix.controls.JFXListView;
+
+import fr.elyssif.client.Config;
+import fr.elyssif.client.gui.transfer.Transfer;
+import fr.elyssif.client.gui.transfer.TransferQueue;
+import fr.elyssif.client.gui.transfer.TransferState;
+import fr.elyssif.client.gui.view.TransferListFactory;
+import javafx.fxml.FXML;
+import javafx.scene.control.Label;
+
+/**
+ * Controller for the "transfers" view, listing the encryptions
+ * and decryptions of the session.
+ * @author Jérémy LAMBERT
+ *
+ */
+public final class TransfersController extends FadeController {
+
+	@FXML private JFXListView<Transfer> transferListView;
+
+	public void initialize(URL location, ResourceBundle resources) {
+		if(Config.getInstance().isVerbose())
+			Logger.getGlobal().info("Loading transfers controller.");
+		super.initialize(location, resources);
+
+		transferListView.setPlaceholder(new Label(getBundle().getString("no-transfers")));
+		new TransferListFactory(getBundle()).make(transferListView, TransferQueue.getInstance().getTransfers(), event -> {
+			Transfer transfer = transferListView.getSelectionModel().getSelectedItem();
+			if (event.getClickCount() == 2 && transfer != null && transfer.getState().get() == TransferState.DONE) {
+				openFolder(transfer.getDestination());
+			}
+		});
+	}
+
+	private void openFolder(java.io.File file) {
+		new Thread(() -> {
+			Desktop desktop = Desktop.getDesktop();
+			try {
+				if(Desktop.isDesktopSupported() && desktop.isSupported(Desktop.Action.OPEN)) {
+					desktop.open(file.isDirectory() ? file : file.getParentFile());
+				} else {
+					Logger.getGlobal().warning("Desktop open action not supported.");
+				}
+			} catch (IOException e) {
+				Logger.getGlobal().log(Level.SEVERE, "Couldn't open file explorer.", e);
+			}
+		}).start();
+	}
+
+	@FXML
+	private void clearClicked() {
+		TransferQueue.getInstance().clearFinished();
+	}
+
+}
@@ -41,6 +41,13 @@ import fr.elyssif.client.http.HttpMethod;
  */
 public class FileRepository extends Repository<File> {
 
+	private static final String KEY_ACTION = "/key";
+
+	@Override
+	protected boolean isCacheable(String action) {
+		return !action.endsWith(KEY_ACTION); // Never keep private keys
+	}
+
 	/**
 	 * Fetch a file by its hash cipehered.
 	 * @param hashCiphered the hash ciphered of the file to fetch, must be 64 characters long
@@ -84,7 +91,7 @@ public class FileRepository extends Repository<File> {
 	 * Wrapped data is of type FailCallbackData.
 	 */
 	public void getPrivateKey(File file, RestCallback callback, RestCallback failCallback) {
-		request(file.getId().get() + "/key", HttpMethod.GET, data -> {
+		request(file.getId().get() + KEY_ACTION, HttpMethod.GET, data -> {
 
 			var element = ((JsonCallbackData) data).getElement();
 			if(element != null && element.isJsonPrimitive()) {
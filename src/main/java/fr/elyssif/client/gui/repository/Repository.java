@@ -24,11 +24,10 @@ import java.lang.reflect.ParameterizedType;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.http.client.HttpClient;
-
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
@@ -49,6 +48,7 @@ import fr.elyssif.client.gui.model.Model;
 import fr.elyssif.client.gui.view.Paginator;
 import fr.elyssif.client.http.Authenticator;
 import fr.elyssif.client.http.HttpMethod;
+import fr.elyssif.client.http.HttpTransport;
 import fr.elyssif.client.http.RestRequest;
 import fr.elyssif.client.http.RestResponse;
 import javafx.beans.property.Property;
@@ -74,7 +74,7 @@ public abstract class Repository<T extends Model<T>> {
 
 	private static final String API_URL = "/api/";
 
-	private HttpClient httpClient;
+	private HttpTransport transport;
 	private Authenticator authenticator;
 
 	private boolean authenticated; // Defines if sent requests use authentication
@@ -83,18 +83,18 @@ public abstract class Repository<T extends Model<T>> {
 
 	/**
 	 * Create a new Repository instance using
-	 * the global http client and authenticator.
+	 * the global http transport and authenticator.
 	 */
 	public Repository() {
-		this(MainController.getInstance().getHttpClient(), MainController.getInstance().getAuthenticator());
+		this(MainController.getInstance().getTransport(), MainController.getInstance().getAuthenticator());
 	}
 
 	/**
 	 * Create a new Repository instance using the global authenticator.
-	 * @param client the http client used for queries
+	 * @param transport the http transport used for queries
 	 */
-	public Repository(HttpClient client) {
-		this(client, MainController.getInstance().getAuthenticator());
+	public Repository(HttpTransport transport) {
+		this(transport, MainController.getInstance().getAuthenticator());
 	}
 
 	/**
@@ -102,16 +102,16 @@ public abstract class Repository<T extends Model<T>> {
 	 * @param authenticator the authenticator used for authenticated queries
 	 */
 	public Repository(Authenticator authenticator) {
-		this(MainController.getInstance().getHttpClient(), authenticator);
+		this(MainController.getInstance().getTransport(), authenticator);
 	}
 
 	/**
 	 * Create a new Repository instance.
-	 * @param httpClient the http client used for queries
+	 * @param transport the http transport used for queries
 	 * @param authenticator the authenticator used for authenticated queries
 	 */
-	public Repository(HttpClient httpClient, Authenticator authenticator) {
-		this.httpClient = httpClient;
+	public Repository(HttpTransport transport, Authenticator authenticator) {
+		this.transport = transport;
 		this.authenticator = authenticator;
 		this.authenticated = true;
 
@@ -240,11 +240,12 @@ public abstract class Repository<T extends Model<T>> {
 	 *
 	 * @param action the action (last segment of the url)
 	 * @param method the method to use in the request
+	 * @return the future response
 	 *
 	 * @see HttpMethod
 	 */
-	protected final void request(String action, HttpMethod method) {
-		request(action, method, null, null, null);
+	protected final CompletableFuture<RestResponse> request(String action, HttpMethod method) {
+		return request(action, method, null, null, null);
 	}
 
 	/**
@@ -255,14 +256,15 @@ public abstract class Repository<T extends Model<T>> {
 	 * @param method the method to use in the request
 	 * @param callback the callback to execute when the request is done, nullable.
 	 * Wrapped data is of type RestCallbackData or JsonCallbackData if the response contains JSON.
+	 * @return the future response
 	 *
 	 * @see HttpMethod
 	 * @see RestCallback
 	 * @see RestCallbackData
 	 * @see JsonCallbackData
 	 */
-	protected final void request(String action, HttpMethod method, RestCallback callback) {
-		request(action, method, null, callback, null);
+	protected final CompletableFuture<RestResponse> request(String action, HttpMethod method, RestCallback callback) {
+		return request(action, method, null, callback, null);
 	}
 
 	/**
@@ -275,6 +277,7 @@ public abstract class Repository<T extends Model<T>> {
 	 * Wrapped data is of type RestCallbackData or JsonCallbackData if the response contains JSON.
 	 * @param failCallback the callback to execute if the request fails, nullable.
 	 * Wrapped data is of type FailCallbackData.
+	 * @return the future response
 	 *
 	 * @see HttpMethod
 	 * @see RestCallback
@@ -282,8 +285,8 @@ public abstract class Repository<T extends Model<T>> {
 	 * @see JsonCallbackData
 	 * @see FailCallbackData
 	 */
-	protected final void request(String action, HttpMethod method, RestCallback callback, RestCallback failCallback) {
-		request(action, method, null, callback, failCallback);
+	protected final CompletableFuture<RestResponse> request(String action, HttpMethod method, RestCallback callback, RestCallback failCallback) {
+		return request(action, method, null, callback, failCallback);
 	}
 
 	/**
@@ -294,11 +297,12 @@ public abstract class Repository<T extends Model<T>> {
 	 * @param method the method to use in the request
 	 * @param params a map of parameters. If <code>method</code> is <code>GET</code>, the parameters
 	 * will be URL parameters and body parameters otherwise. Nullable.
+	 * @return the future response
 	 *
 	 * @see HttpMethod
 	 */
-	protected final void request(String action, HttpMethod method, HashMap<String, ?> params) {
-		request(action, method, params, null, null);
+	protected final CompletableFuture<RestResponse> request(String action, HttpMethod method, HashMap<String, ?> params) {
+		return request(action, method, params, null, null);
 	}
 
 	/**
@@ -311,14 +315,15 @@ public abstract class Repository<T extends Model<T>> {
 	 * will be URL parameters and body parameters otherwise. Nullable.
 	 * @param callback the callback to execute when the request is done, nullable.
 	 * Wrapped data is of type RestCallbackData or JsonCallbackData if the response contains JSON.
+	 * @return the future response
 	 *
 	 * @see HttpMethod
 	 * @see RestCallback
 	 * @see RestCallbackData
 	 * @see JsonCallbackData
 	 */
-	protected final void request(String action, HttpMethod method, HashMap<String, ?> params, RestCallback callback) {
-		request(action, method, params, callback, null);
+	protected final CompletableFuture<RestResponse> request(String action, HttpMethod method, HashMap<String, ?> params, RestCallback callback) {
+		return request(action, method, params, callback, null);
 	}
 
 	/**
@@ -333,6 +338,7 @@ public abstract class Repository<T extends Model<T>> {
 	 * Wrapped data is of type RestCallbackData or JsonCallbackData if the response contains JSON.
 	 * @param failCallback the callback to execute if the request fails, nullable.
 	 * Wrapped data is of type FailCallbackData.
+	 * @return the future response
 	 *
 	 * @see HttpMethod
 	 * @see RestCallback
@@ -340,8 +346,8 @@ public abstract class Repository<T extends Model<T>> {
 	 * @see JsonCallbackData
 	 * @see FailCallbackData
 	 */
-	protected final void request(String action, HttpMethod method, HashMap<String, ?> params, RestCallback callback, RestCallback failCallback) {
-		RestRequest request = new RestRequest(httpClient, Config.getInstance().get("Host") + API_URL + model.getResourceName() + (action != "" ? "/" + action : ""));
+	protected final CompletableFuture<RestResponse> request(String action, HttpMethod method, HashMap<String, ?> params, RestCallback callback, RestCallback failCallback) {
+		RestRequest request = new RestRequest(transport, Config.getInstance().get("Host") + API_URL + model.getResourceName() + (action != "" ? "/" + action : ""));
 
 		if(params != null) { // Set params
 			if(method.equals(HttpMethod.GET)) { // Set URL params if method is GET
@@ -358,8 +364,9 @@ public abstract class Repository<T extends Model<T>> {
 		if(authenticated && authenticator != null) {
 			request.setAuthorizationToken(authenticator.getToken());
 		}
+		request.cacheable(isCacheable(action));
 
-		request.asyncExecute(method, data -> {
+		return request.asyncExecute(method, data -> {
 
 			RestResponse response = data.getResponse();
 			FailCallbackData failData = null;
@@ -384,6 +391,17 @@ public abstract class Repository<T extends Model<T>> {
 		});
 	}
 
+	/**
+	 * Get if the response of the given action can be kept in the response cache.<br>
+	 * Override this method to keep responses holding secrets out of the cache.
+	 * @param action the action (last segment of the url)
+	 * @return true by default
+	 * @see RestRequest#cacheable(boolean)
+	 */
+	protected boolean isCacheable(String action) {
+		return true;
+	}
+
 	/**
 	 * Prepare and execute a fail callback and log a warning.<br>
 	 * This method should only be called when a request was successful but
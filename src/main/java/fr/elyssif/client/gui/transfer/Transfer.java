@@ -0,0 +1,217 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.gui.transfer;
+
+import java.io.File;
+
+import fr.elyssif.client.callback.ProgressCallback;
+import fr.elyssif.client.callback.ProgressCallbackData;
+import fr.elyssif.client.gui.view.ProgressPulse;
+import fr.elyssif.client.security.Crypter;
+import fr.elyssif.client.security.Job;
+import javafx.application.Platform;
+import javafx.beans.property.SimpleObjectProperty;
+import javafx.beans.property.SimpleStringProperty;
+
+/**
+ * Encryption or decryption of a single file or directory, run by the {@link TransferQueue}.<br>
+ * The properties of a transfer are only updated on the JavaFX thread,
+ * so they can be bound to the view.
+ * @author Jérémy LAMBERT
+ *
+ */
+public final class Transfer {
+
+	private final String name;
+	private final TransferType type;
+	private final File destination;
+	private final TransferTask task;
+
+	private final SimpleObjectProperty<TransferState> state;
+	private final SimpleObjectProperty<ProgressCallbackData> progress;
+	private final SimpleStringProperty message;
+
+	private volatile Job job;
+	private volatile boolean cancelled;
+
+	/**
+	 * Create a new transfer. Submit it to the {@link TransferQueue} to run it.
+	 * @param name the name of the transferred file
+	 * @param type the type of transfer
+	 * @param destination the file written by the transfer, or the directory a directory is extracted to
+	 * @param task the task run when the transfer starts, and again when it is resumed
+	 */
+	public Transfer(String name, TransferType type, File destination, TransferTask task) {
+		this.name = name;
+		this.type = type;
+		this.destination = destination;
+		this.task = task;
+		this.state = new SimpleObjectProperty<>(TransferState.QUEUED);
+		this.progress = new SimpleObjectProperty<>(new ProgressCallbackData(0));
+		this.message = new SimpleStringProperty();
+	}
+
+	public final String getName() {
+		return name;
+	}
+
+	public final TransferType getType() {
+		return type;
+	}
+
+	public final File getDestination() {
+		return destination;
+	}
+
+	public final SimpleObjectProperty<TransferState> getState() {
+		return state;
+	}
+
+	public final SimpleObjectProperty<ProgressCallbackData> getProgress() {
+		return progress;
+	}
+
+	/**
+	 * Get the error message of the failed transfer.
+	 * @return message
+	 */
+	public final SimpleStringProperty getMessage() {
+		return message;
+	}
+
+	/**
+	 * Get if the transfer is waiting or running.
+	 * @return true if active
+	 */
+	public final boolean isActive() {
+		return state.get() == TransferState.QUEUED || state.get() == TransferState.RUNNING;
+	}
+
+	/**
+	 * Get if the transfer stopped and can continue where it stopped.
+	 * @return true if resumable
+	 * @see Crypter#hasCheckpoint(File)
+	 */
+	public final boolean isResumable() {
+		return (state.get() == TransferState.CANCELLED || state.get() == TransferState.FAILED) && Crypter.hasCheckpoint(destination);
+	}
+
+	/**
+	 * Get if the cancellation of the transfer has been requested.
+	 * The task should stop at its next step.
+	 * @return true if cancelled
+	 */
+	public final boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Request the cancellation of the transfer.
+	 * A queued transfer is removed from the queue right away.
+	 */
+	public final void cancel() {
+		if(state.get() == TransferState.QUEUED) {
+			TransferQueue.getInstance().remove(this);
+			state.set(TransferState.CANCELLED);
+			return;
+		}
+
+		cancelled = true;
+		var job = this.job;
+		if(job != null) {
+			job.cancel();
+		}
+	}
+
+	/**
+	 * Set the encryption or decryption job run by the task, so it can be cancelled.
+	 * @param job the job
+	 */
+	public final void setJob(Job job) {
+		this.job = job;
+		if(cancelled) {
+			job.cancel();
+		}
+	}
+
+	/**
+	 * Create a progress callback updating the progress of this transfer.
+	 * @return the progress callback
+	 */
+	public final ProgressCallback createProgressCallback() {
+		return new ProgressPulse(progress::set);
+	}
+
+	/**
+	 * Mark the transfer as succeeded. Can be called from any thread.
+	 */
+	public final void succeed() {
+		Platform.runLater(() -> finish(TransferState.DONE, null));
+	}
+
+	/**
+	 * Mark the transfer as failed, or as cancelled if its cancellation has been requested.
+	 * The destination file is deleted unless the transfer can be resumed.
+	 * Directories extracted by a transfer are kept as they are.
+	 * Can be called from any thread.
+	 * @param message the error message
+	 */
+	public final void fail(String message) {
+		Platform.runLater(() -> {
+			if(destination.isFile() && !Crypter.hasCheckpoint(destination)) {
+				destination.delete();
+			}
+			finish(cancelled ? TransferState.CANCELLED : TransferState.FAILED, cancelled ? null : message);
+		});
+	}
+
+	/**
+	 * Start the task. Executed on the JavaFX thread by the queue.
+	 */
+	void start() {
+		job = null;
+		cancelled = false;
+		message.set(null);
+		progress.set(new ProgressCallbackData(-1));
+		state.set(TransferState.RUNNING);
+		task.start(this);
+	}
+
+	/**
+	 * Set the transfer back in the queued state. Executed on the JavaFX thread by the queue.
+	 */
+	void enqueue() {
+		message.set(null);
+		state.set(TransferState.QUEUED);
+	}
+
+	private void finish(TransferState result, String message) {
+		if(state.get() != TransferState.RUNNING) {
+			return;
+		}
+
+		job = null;
+		this.message.set(message);
+		if(result == TransferState.DONE) {
+			progress.set(new ProgressCallbackData(1));
+		}
+		state.set(result);
+		TransferQueue.getInstance().finished(this);
+	}
+
+}
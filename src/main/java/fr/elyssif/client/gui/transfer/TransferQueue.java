@@ -0,0 +1,177 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.gui.transfer;
+
+import java.util.ArrayDeque;
+import java.util.logging.Logger;
+
+import fr.elyssif.client.Config;
+import fr.elyssif.client.security.Crypter;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+
+/**
+ * Singleton queue of transfers.<br>
+ * Transfers run in submission order, with a limited amount of
+ * transfers running at once. Every method has to be called on
+ * the JavaFX thread.
+ * @author Jérémy LAMBERT
+ *
+ * @see #setConcurrency(int)
+ */
+public final class TransferQueue {
+
+	private static final int DEFAULT_CONCURRENCY = 2;
+
+	private static TransferQueue instance;
+	private static int concurrency = DEFAULT_CONCURRENCY;
+
+	private final ObservableList<Transfer> transfers;
+	private final ArrayDeque<Transfer> pending;
+	private int running;
+
+	private TransferQueue() {
+		transfers = FXCollections.observableArrayList();
+		pending = new ArrayDeque<>();
+	}
+
+	public static final TransferQueue getInstance() {
+		if(instance == null)
+			instance = new TransferQueue();
+		return instance;
+	}
+
+	/**
+	 * Get all the transfers of the session, most recent first.
+	 * @return transfers
+	 */
+	public final ObservableList<Transfer> getTransfers() {
+		return transfers;
+	}
+
+	/**
+	 * Add a transfer to the queue.
+	 * @param transfer the transfer to run
+	 * @throws IllegalStateException if an active transfer already writes to the same destination
+	 */
+	public final void submit(Transfer transfer) {
+		if(isBusy(transfer.getDestination())) {
+			throw new IllegalStateException("Destination already used by another transfer.");
+		}
+
+		if(Config.getInstance().isVerbose())
+			Logger.getGlobal().info("Queuing transfer \"" + transfer.getName() + "\"");
+
+		transfers.add(0, transfer);
+		pending.add(transfer);
+		startNext();
+	}
+
+	/**
+	 * Queue a stopped transfer again so it continues where it stopped.
+	 * @param transfer the transfer to resume
+	 */
+	public final void resume(Transfer transfer) {
+		if(transfer.isResumable()) {
+			transfer.enqueue();
+			pending.add(transfer);
+			startNext();
+		}
+	}
+
+	/**
+	 * Remove the transfers which are not active anymore from the list.
+	 * The partial output and checkpoint of resumable transfers are discarded.
+	 */
+	public final void clearFinished() {
+		transfers.removeIf(transfer -> {
+			if(transfer.isActive()) {
+				return false;
+			}
+
+			if(transfer.isResumable()) {
+				Crypter.discardCheckpoint(transfer.getDestination());
+				transfer.getDestination().delete();
+			}
+			return true;
+		});
+	}
+
+	/**
+	 * Get if there are queued or running transfers.
+	 * @return true if active
+	 */
+	public final boolean isActive() {
+		return running > 0 || !pending.isEmpty();
+	}
+
+	/**
+	 * Get if an active transfer writes to the given destination.
+	 * @param destination the destination file
+	 * @return true if busy
+	 */
+	public final boolean isBusy(java.io.File destination) {
+		for(Transfer transfer : transfers) {
+			if(transfer.isActive() && transfer.getDestination().equals(destination)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Remove a queued transfer before it starts.
+	 * @param transfer
+	 */
+	void remove(Transfer transfer) {
+		pending.remove(transfer);
+	}
+
+	/**
+	 * Free the slot of a transfer which stopped and start the next one.
+	 * @param transfer
+	 */
+	void finished(Transfer transfer) {
+		running--;
+		startNext();
+	}
+
+	private void startNext() {
+		while(running < getConcurrency() && !pending.isEmpty()) {
+			running++;
+			pending.poll().start();
+		}
+	}
+
+	/**
+	 * Set the amount of transfers running at once.
+	 * @param concurrency the amount of transfers. Zero or less to use the default (2)
+	 */
+	public static final synchronized void setConcurrency(int concurrency) {
+		TransferQueue.concurrency = concurrency > 0 ? concurrency : DEFAULT_CONCURRENCY;
+	}
+
+	/**
+	 * Get the amount of transfers running at once.
+	 * @return concurrency
+	 */
+	public static final synchronized int getConcurrency() {
+		return concurrency;
+	}
+
+}
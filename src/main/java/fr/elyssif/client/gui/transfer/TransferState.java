@@ -0,0 +1,52 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.gui.transfer;
+
+/**
+ * State of a transfer.
+ * @author Jérémy LAMBERT
+ *
+ */
+public enum TransferState {
+
+	/**
+	 * Waiting for a free slot in the queue.
+	 */
+	QUEUED,
+
+	/**
+	 * Running.
+	 */
+	RUNNING,
+
+	/**
+	 * Completed successfully.
+	 */
+	DONE,
+
+	/**
+	 * Stopped on an error.
+	 */
+	FAILED,
+
+	/**
+	 * Stopped by the user.
+	 */
+	CANCELLED
+
+}
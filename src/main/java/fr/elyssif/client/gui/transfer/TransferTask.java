@@ -0,0 +1,39 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.gui.transfer;
+
+/**
+ * Work done by a transfer.
+ * @author Jérémy LAMBERT
+ *
+ */
+@FunctionalInterface
+public interface TransferTask {
+
+	/**
+	 * Start the work of the given transfer. Executed on the JavaFX thread,
+	 * the work itself has to be asynchronous.<br>
+	 * The task must eventually call either <code>succeed()</code> or <code>fail()</code>
+	 * on the transfer, and should register its encryption or decryption job using
+	 * <code>setJob()</code> so it can be cancelled.<br>
+	 * A resumed transfer runs its task again.
+	 * @param transfer the transfer
+	 */
+	void start(Transfer transfer);
+
+}
@@ -18,6 +18,7 @@
  package fr.elyssif.client.gui.view;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.ResourceBundle;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -25,6 +26,7 @@ import java.util.logging.Logger;
 import com.jfoenix.controls.JFXDialog;
 
 import fr.elyssif.client.callback.ModelCallback;
+import fr.elyssif.client.callback.ModelListCallback;
 import fr.elyssif.client.gui.controller.LookupController;
 import fr.elyssif.client.gui.model.Model;
 import fr.elyssif.client.gui.repository.Repository;
@@ -107,7 +109,30 @@ public class LookupModal<T extends Model<T>> {
 	 */
 	@SuppressWarnings("unchecked")
 	public void showDialog(StackPane ownerPane, ModelCallback<T> callback) {
+		show(ownerPane, false, () -> callback.run((T) controller.getSelected()));
+	}
+
+	/**
+	 * Show a new lookup dialog in which several items can be selected.
+	 * If the owner window for the dialog is set, input to all windows in the dialog's owner
+	 * chain is blocked while the dialog is being shown. Clicking the overlay closes the dialog.
+	 * @param ownerPane the container pane on which the dialog will popup
+	 * @param callback the callback executed when the dialog closes because items
+	 * have been selected or the "Cancel" button has been clicked. Contains the
+	 * selected records, empty if cancelled
+	 */
+	@SuppressWarnings("unchecked")
+	public void showMultipleDialog(StackPane ownerPane, ModelListCallback<T> callback) {
+		show(ownerPane, true, () -> {
+			var selected = new ArrayList<T>();
+			for(var model : controller.getSelectedItems()) {
+				selected.add((T) model);
+			}
+			callback.run(selected);
+		});
+	}
 
+	private void show(StackPane ownerPane, boolean multiple, Runnable callback) {
 		try {
 			FXMLLoader loader = new FXMLLoader(getClass().getResource("/view/LookupView.fxml"));
 			loader.setResources(bundle);
@@ -121,10 +146,9 @@ public class LookupModal<T extends Model<T>> {
 			controller.setRepository(repository);
 			controller.setHeader(header);
 			controller.initList(factory);
+			controller.setMultiple(multiple);
 			controller.setParentDialog(dialog);
-			controller.setCallback(() -> {
-				callback.run((T) controller.getSelected());
-			});
+			controller.setCallback(callback);
 
 			dialog.setOnDialogOpened(e -> controller.focusInput());
 			dialog.show();
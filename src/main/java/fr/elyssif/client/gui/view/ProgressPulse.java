@@ -0,0 +1,61 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.gui.view;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import fr.elyssif.client.callback.ProgressCallback;
+import fr.elyssif.client.callback.ProgressCallbackData;
+import javafx.application.Platform;
+
+/**
+ * Progress callback forwarding updates to the JavaFX thread.<br>
+ * At most one update is pending in the JavaFX queue at any time: updates
+ * received before it runs replace its data, so a fast process cannot
+ * flood the queue.
+ * @author Jérémy LAMBERT
+ *
+ */
+public final class ProgressPulse implements ProgressCallback {
+
+	private final Consumer<ProgressCallbackData> consumer;
+	private final AtomicReference<ProgressCallbackData> pending;
+
+	/**
+	 * Create a new instance of ProgressPulse.
+	 * @param consumer the consumer of the progress data, executed on the JavaFX thread
+	 */
+	public ProgressPulse(Consumer<ProgressCallbackData> consumer) {
+		this.consumer = consumer;
+		this.pending = new AtomicReference<>();
+	}
+
+	@Override
+	public void progress(double progress) {
+		progress(new ProgressCallbackData(progress));
+	}
+
+	@Override
+	public void progress(ProgressCallbackData data) {
+		if(pending.getAndSet(data) == null) {
+			Platform.runLater(() -> consumer.accept(pending.getAndSet(null)));
+		}
+	}
+
+}
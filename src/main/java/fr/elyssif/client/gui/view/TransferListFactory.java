@@ -0,0 +1,153 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.gui.view;
+
+import java.util.ResourceBundle;
+
+import com.jfoenix.controls.JFXButton;
+import com.jfoenix.controls.JFXListView;
+import com.jfoenix.controls.JFXProgressBar;
+
+import fr.elyssif.client.StringUtils;
+import fr.elyssif.client.gui.transfer.Transfer;
+import fr.elyssif.client.gui.transfer.TransferQueue;
+import fr.elyssif.client.gui.transfer.TransferState;
+import fr.elyssif.client.gui.transfer.TransferType;
+import javafx.beans.binding.Bindings;
+import javafx.collections.ObservableList;
+import javafx.event.EventHandler;
+import javafx.geometry.Pos;
+import javafx.scene.control.Label;
+import javafx.scene.image.ImageView;
+import javafx.scene.input.MouseEvent;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+/**
+ * List factory for transfers. Entries show the progress of the
+ * transfer and buttons to cancel or resume it.
+ * @author Jérémy LAMBERT
+ *
+ */
+public class TransferListFactory {
+
+	private ResourceBundle bundle;
+
+	/**
+	 * Create a new instance of Transfer list factory.
+	 * @param bundle the language bundle to use for the list items
+	 */
+	public TransferListFactory(ResourceBundle bundle) {
+		this.bundle = bundle;
+	}
+
+	/**
+	 * Setup a list to be a transfer list.
+	 * @param listView the list to prepare
+	 * @param transferList the list containing the transfers to show
+	 * @param onMouseClicked the event handler executed on a list cell click
+	 */
+	public final void make(JFXListView<Transfer> listView, ObservableList<Transfer> transferList, EventHandler<? super MouseEvent> onMouseClicked) {
+		listView.setItems(transferList);
+		listView.setCellFactory(param -> {
+			JFXListCellAnimated<Transfer> cell = new JFXListCellAnimated<Transfer>() {
+				@Override
+				public void updateItem(Transfer transfer, boolean empty) {
+					super.updateItem(transfer, empty);
+
+					setText(null);
+					setGraphic(empty ? null : createTransferEntry(transfer));
+				}
+			};
+			cell.setOnMouseClicked(onMouseClicked);
+
+			return cell;
+		});
+	}
+
+	private HBox createTransferEntry(Transfer transfer) {
+		HBox container = new HBox();
+		container.setSpacing(10);
+		container.setAlignment(Pos.CENTER_LEFT);
+
+		ImageView icon = new ImageView(transfer.getType() == TransferType.SEND ? "view/img/send.png" : "view/img/receive.png");
+		icon.setFitHeight(42);
+		icon.setFitWidth(42);
+
+		VBox textContainer = new VBox();
+		textContainer.setSpacing(4);
+
+		Label fileNameLabel = new Label(transfer.getName());
+		fileNameLabel.getStyleClass().add("text-lg");
+
+		Label destinationLabel = new Label(transfer.getDestination().getPath());
+		destinationLabel.getStyleClass().add("text-sm");
+
+		JFXProgressBar progressBar = new JFXProgressBar();
+		progressBar.setMaxWidth(Double.MAX_VALUE);
+		progressBar.progressProperty().bind(Bindings.createDoubleBinding(() -> {
+			return transfer.getState().get() == TransferState.QUEUED ? 0 : transfer.getProgress().get().getProgress();
+		}, transfer.getState(), transfer.getProgress()));
+		progressBar.visibleProperty().bind(Bindings.createBooleanBinding(transfer::isActive, transfer.getState()));
+		progressBar.managedProperty().bind(progressBar.visibleProperty());
+
+		Label statusLabel = new Label();
+		statusLabel.getStyleClass().add("text-sm");
+		statusLabel.textProperty().bind(Bindings.createStringBinding(() -> getStatus(transfer), transfer.getState(), transfer.getProgress(), transfer.getMessage()));
+
+		textContainer.getChildren().addAll(fileNameLabel, destinationLabel, progressBar, statusLabel);
+
+		JFXButton cancelButton = new JFXButton(bundle.getString("cancel"));
+		cancelButton.getStyleClass().add("red-A700");
+		cancelButton.setOnAction(e -> transfer.cancel());
+		cancelButton.visibleProperty().bind(progressBar.visibleProperty());
+		cancelButton.managedProperty().bind(cancelButton.visibleProperty());
+
+		JFXButton resumeButton = new JFXButton(bundle.getString("resume"));
+		resumeButton.getStyleClass().add("green-A700");
+		resumeButton.setOnAction(e -> TransferQueue.getInstance().resume(transfer));
+		resumeButton.visibleProperty().bind(Bindings.createBooleanBinding(transfer::isResumable, transfer.getState()));
+		resumeButton.managedProperty().bind(resumeButton.visibleProperty());
+
+		container.getChildren().addAll(icon, textContainer, cancelButton, resumeButton);
+		HBox.setHgrow(textContainer, Priority.ALWAYS);
+		return container;
+	}
+
+	private String getStatus(Transfer transfer) {
+		switch(transfer.getState().get()) {
+		case QUEUED:
+			return bundle.getString("transfer-queued");
+		case RUNNING:
+			var progress = transfer.getProgress().get();
+			if(progress.hasThroughput()) {
+				return bundle.getString("progress-rate")
+						.replace("%RATE%", StringUtils.formatBytes(progress.getBytesPerSecond()))
+						.replace("%TIME%", StringUtils.formatDuration(progress.getRemainingSeconds()));
+			}
+			return bundle.getString("transfer-running");
+		case DONE:
+			return bundle.getString(transfer.getType() == TransferType.SEND ? "encrypt-done" : "decrypt-done");
+		case CANCELLED:
+			return bundle.getString(transfer.isResumable() ? "job-resumable" : "job-cancelled");
+		default:
+			return transfer.getMessage().get();
+		}
+	}
+}
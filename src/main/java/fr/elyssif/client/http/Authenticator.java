@@ -19,8 +19,6 @@
 
 import java.util.logging.Logger;
 
-import org.apache.http.client.HttpClient;
-
 import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 
@@ -33,6 +31,7 @@ import fr.elyssif.client.http.echo.Echo;
 import fr.elyssif.client.http.echo.EchoOptions;
 import fr.elyssif.client.http.echo.EchoSubscriptionException;
 import fr.elyssif.client.http.echo.SocketIOConnector;
+import fr.elyssif.client.security.Crypter;
 
 /**
  * Utility class for authentication and token holding.
@@ -46,7 +45,7 @@ public final class Authenticator {
 	private static final String LOGOUT_ENDPOINT = "/api/logout";
 	private static final String REGISTER_ENDPOINT = "/api/register";
 
-	private HttpClient client;
+	private HttpTransport transport;
 	private String token;
 	private String host;
 	private String socketHost;
@@ -57,24 +56,24 @@ public final class Authenticator {
 	/**
 	 * Create a new instance of Authenticator.
 	 * 
-	 * @param client the client to use for the authentication and user info queries
+	 * @param transport the transport to use for the authentication and user info queries
 	 * @param host the url of the host (without trailing slash)
 	 * @param socketHost the url of the socket host (without trailing slash)
 	 */
-	public Authenticator(HttpClient client, String host, String socketHost) {
-		this(client, host, socketHost, null);
+	public Authenticator(HttpTransport transport, String host, String socketHost) {
+		this(transport, host, socketHost, null);
 	}
 
 	/**
 	 * Create a new instance of Authenticator.
 	 * 
-	 * @param client the client to use for the authentication and user info queries
+	 * @param transport the transport to use for the authentication and user info queries
 	 * @param host the url of the host (without trailing slash)
 	 * @param socketHost the url of the socket host (without trailing slash)
 	 * @param token access token if you have it, nullable
 	 */
-	public Authenticator(HttpClient client, String host, String socketHost, String token) {
-		this.client = client;
+	public Authenticator(HttpTransport transport, String host, String socketHost, String token) {
+		this.transport = transport;
 		this.host = host;
 		this.socketHost = socketHost;
 		this.token = token;
@@ -139,7 +138,7 @@ public final class Authenticator {
 	 * @param callback the callback to execute on success
 	 */
 	public final void login(String email, String password, RestCallback callback) {
-		RestRequest request = new RestRequest(client, host + LOGIN_ENDPOINT)
+		RestRequest request = new RestRequest(transport, host + LOGIN_ENDPOINT)
 				.param("email", email.trim())
 				.param("password", password);
 
@@ -151,7 +150,7 @@ public final class Authenticator {
 	 * @param callback
 	 */
 	public final void logout(RestCallback callback) {
-		RestRequest request = new RestRequest(client, host + LOGOUT_ENDPOINT)
+		RestRequest request = new RestRequest(transport, host + LOGOUT_ENDPOINT)
 				.setAuthorizationToken(token);
 
 		request.asyncExecute(HttpMethod.DELETE, data -> {
@@ -160,6 +159,8 @@ public final class Authenticator {
 			if(response.getStatus() == 204 || response.getStatus() == 401) {
 				token = null;
 				user = null;
+				ResponseCache.clear();
+				Crypter.purgeCheckpoints(0);
 				if(echo != null) {
 					SocketIOConnector.setExiting(true);
 					echo.disconnect();
@@ -181,7 +182,7 @@ public final class Authenticator {
 	 * @param callback
 	 */
 	public final void register(String email, String password, String passwordConfirmation, String name, RestCallback callback) {
-		RestRequest request = new RestRequest(client, host + REGISTER_ENDPOINT)
+		RestRequest request = new RestRequest(transport, host + REGISTER_ENDPOINT)
 				.param("email", email.trim())
 				.param("password", password)
 				.param("password_confirmation", passwordConfirmation)
@@ -195,7 +196,7 @@ public final class Authenticator {
 	 * @param callback the callback to execute after the response is received, successful or not. Nullable
 	 */
 	public final void requestUserInfo(RestCallback callback) {
-		RestRequest request = new RestRequest(client, host + USER_INFO_ENDPOINT)
+		RestRequest request = new RestRequest(transport, host + USER_INFO_ENDPOINT)
 				.setAuthorizationToken(token);
 
 		request.asyncExecute(HttpMethod.GET, data -> {
@@ -0,0 +1,158 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.http;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes request bodies and decodes response bodies according to
+ * their <code>Content-Encoding</code>.<br>
+ * Responses are decoded as they are read: a response decoded from the
+ * connection stream is never held in memory. A response that had to be
+ * buffered is held compressed, and also uncompressed if its raw string is kept.
+ * @author Jérémy LAMBERT
+ *
+ * @see RestRequest
+ * @see RestResponse
+ */
+final class ContentEncoding {
+
+	static final String GZIP = "gzip";
+	static final String DEFLATE = "deflate";
+
+	/**
+	 * Value of the <code>Accept-Encoding</code> header sent with every request.
+	 */
+	static final String ACCEPTED = GZIP + ", " + DEFLATE;
+
+	private ContentEncoding() {}
+
+	/**
+	 * Get a stream decoding the given body.
+	 * @param body the body as received
+	 * @param encoding the value of the <code>Content-Encoding</code> header, nullable
+	 * @return the decoding stream
+	 * @throws IOException if the encoding is not supported or the gzip header is invalid
+	 */
+	static InputStream decode(byte[] body, String encoding) throws IOException {
+		return decode(new ByteArrayInputStream(body), encoding);
+	}
+
+	/**
+	 * Get a stream decoding the given body as it is read.
+	 * @param input the body as received
+	 * @param encoding the value of the <code>Content-Encoding</code> header, nullable
+	 * @return the decoding stream, closing <code>input</code> when closed
+	 * @throws IOException if the encoding is not supported or the gzip header is invalid
+	 */
+	static InputStream decode(InputStream input, String encoding) throws IOException {
+		if(encoding == null || encoding.isBlank() || encoding.equalsIgnoreCase("identity")) {
+			return input;
+		}
+		if(encoding.equalsIgnoreCase(GZIP) || encoding.equalsIgnoreCase("x-gzip")) {
+			return new GZIPInputStream(input);
+		}
+		if(encoding.equalsIgnoreCase(DEFLATE)) {
+			// Some servers send raw deflate data instead of the zlib format
+			var buffered = new BufferedInputStream(input);
+			buffered.mark(2);
+			var header = buffered.readNBytes(2);
+			buffered.reset();
+			return new InflaterInputStream(buffered, new Inflater(!isZlib(header)));
+		}
+		throw new IOException("Unsupported content encoding: " + encoding);
+	}
+
+	/**
+	 * Check if the given data starts with a zlib header.
+	 */
+	private static boolean isZlib(byte[] data) {
+		return data.length >= 2 && (data[0] & 0x0F) == 8 && ((data[0] & 0xFF) << 8 | (data[1] & 0xFF)) % 31 == 0;
+	}
+
+	/**
+	 * Compress the given data using gzip.
+	 * @param data
+	 * @return the compressed data
+	 */
+	static byte[] gzip(byte[] data) {
+		var output = new ByteArrayOutputStream(data.length / 4 + 64);
+		try(var gzip = new GZIPOutputStream(output)) {
+			gzip.write(data);
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // Never thrown by ByteArrayOutputStream
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * Input stream counting the bytes read through it.
+	 */
+	static final class CountingInputStream extends FilterInputStream {
+
+		private long count;
+
+		CountingInputStream(InputStream in) {
+			super(in);
+		}
+
+		@Override
+		public int read() throws IOException {
+			int b = super.read();
+			if(b != -1) {
+				count++;
+			}
+			return b;
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			int read = super.read(b, off, len);
+			if(read > 0) {
+				count += read;
+			}
+			return read;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			long skipped = super.skip(n);
+			count += skipped;
+			return skipped;
+		}
+
+		/**
+		 * Get the amount of bytes read so far.
+		 * @return count
+		 */
+		long getCount() {
+			return count;
+		}
+
+	}
+
+}
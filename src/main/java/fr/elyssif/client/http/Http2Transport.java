@@ -0,0 +1,90 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Redirect;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.time.Duration;
+
+/**
+ * HTTP/2 transport multiplexing every request to a host on a single connection,
+ * so parallel requests never wait for a free socket.<br>
+ * Falls back to HTTP/1.1 if the server doesn't support HTTP/2.
+ * @author Jérémy LAMBERT
+ *
+ * @see Transports
+ */
+final class Http2Transport implements HttpTransport {
+
+	private final HttpClient client;
+	private final Duration timeout;
+
+	/**
+	 * Create a new instance of Http2Transport.
+	 * @param timeout the connect and response timeout in seconds, 0 disables it
+	 */
+	Http2Transport(int timeout) {
+		this.timeout = timeout > 0 ? Duration.ofSeconds(timeout) : null;
+
+		var builder = HttpClient.newBuilder()
+				.version(Version.HTTP_2)
+				.followRedirects(Redirect.NEVER);
+		if(this.timeout != null) {
+			builder.connectTimeout(this.timeout);
+		}
+		client = builder.build();
+	}
+
+	@Override
+	public TransportResponse execute(TransportRequest request) throws IOException {
+		var builder = HttpRequest.newBuilder(request.getUri())
+				.method(request.getMethod().name(), request.getBody() != null ? BodyPublishers.ofByteArray(request.getBody()) : BodyPublishers.noBody());
+		request.getHeaders().forEach(builder::header);
+		if(timeout != null) {
+			builder.timeout(timeout);
+		}
+
+		try {
+			HttpResponse<InputStream> response = client.send(builder.build(), BodyHandlers.ofInputStream());
+			String version = response.version() == Version.HTTP_2 ? "HTTP/2" : "HTTP/1.1";
+			return new TransportResponse(response.statusCode(), version + " " + response.statusCode(), response.headers().map(), response.body());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for the response.");
+		}
+	}
+
+	@Override
+	public void close() {
+		// The connections are closed by the client when they become idle
+	}
+
+	@Override
+	public String toString() {
+		return "http2";
+	}
+
+}
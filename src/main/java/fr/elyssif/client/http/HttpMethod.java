@@ -20,6 +20,7 @@
 import java.lang.reflect.InvocationTargetException;
 
 import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
 import org.apache.http.client.methods.HttpGet;
 import org.apache.http.client.methods.HttpPatch;
 import org.apache.http.client.methods.HttpPost;
@@ -54,6 +55,14 @@ public enum HttpMethod {
 		return cls;
 	}
 
+	/**
+	 * Get if requests using this method send the parameters in their body.
+	 * @return true if the method encloses a body
+	 */
+	protected boolean hasBody() {
+		return HttpEntityEnclosingRequestBase.class.isAssignableFrom(cls);
+	}
+
 	/**
 	 * Instantiate and get a request for this method.
 	 * @param url the url of the request
@@ -0,0 +1,43 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.http;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Sends HTTP requests to the server.<br>
+ * Implementations are thread-safe and shared by every request of the application,
+ * so they can keep connections open between requests.
+ * @author Jérémy LAMBERT
+ *
+ * @see Transports
+ * @see RestRequest
+ */
+public interface HttpTransport extends Closeable {
+
+	/**
+	 * Send the given request and read the whole response.
+	 * This method blocks until the response is received.
+	 * @param request the request to send
+	 * @return the response
+	 * @throws IOException if the request couldn't be sent or the response couldn't be read
+	 */
+	TransportResponse execute(TransportRequest request) throws IOException;
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.http;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.Header;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+/**
+ * HTTP/1.1 transport keeping a pool of persistent connections per host.<br>
+ * Connections are kept alive as long as the server allows it (or
+ * <code>KEEP_ALIVE</code> seconds if it doesn't say), and a background
+ * thread closes the ones staying idle, so the pool never hands out sockets
+ * the server already dropped.
+ * @author Jérémy LAMBERT
+ *
+ * @see Transports
+ */
+final class PooledTransport implements HttpTransport {
+
+	private static final long KEEP_ALIVE = 30; // Seconds
+	private static final long MAX_IDLE = 15; // Seconds
+	private static final int VALIDATE_AFTER = 2000; // Milliseconds of inactivity
+
+	private final PoolingHttpClientConnectionManager manager;
+	private final CloseableHttpClient client;
+
+	/**
+	 * Create a new instance of PooledTransport.
+	 * @param maxConnections the maximum amount of connections per host
+	 * @param timeout the connect, pool and read timeout in seconds, 0 disables it
+	 */
+	PooledTransport(int maxConnections, int timeout) {
+		manager = new PoolingHttpClientConnectionManager();
+		manager.setDefaultMaxPerRoute(maxConnections);
+		manager.setMaxTotal(maxConnections * 2); // Api and files hosts
+		manager.setValidateAfterInactivity(VALIDATE_AFTER);
+
+		int millis = (int) TimeUnit.SECONDS.toMillis(timeout);
+		RequestConfig config = RequestConfig.custom()
+				.setConnectTimeout(millis)
+				.setConnectionRequestTimeout(millis)
+				.setSocketTimeout(millis)
+				.build();
+
+		client = HttpClients.custom()
+				.setConnectionManager(manager)
+				.setDefaultRequestConfig(config)
+				.setKeepAliveStrategy((response, context) -> {
+					long duration = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+					return duration > 0 ? duration : TimeUnit.SECONDS.toMillis(KEEP_ALIVE);
+				})
+				.evictExpiredConnections()
+				.evictIdleConnections(MAX_IDLE, TimeUnit.SECONDS)
+				.disableContentCompression() // Bodies are decoded by RestResponse
+				.build();
+	}
+
+	@Override
+	public TransportResponse execute(TransportRequest request) throws IOException {
+		RequestBuilder builder = RequestBuilder.create(request.getMethod().name()).setUri(request.getUri());
+		request.getHeaders().forEach(builder::addHeader);
+		if(request.getBody() != null) {
+			builder.setEntity(new ByteArrayEntity(request.getBody()));
+		}
+
+		CloseableHttpResponse response = client.execute(builder.build());
+		try {
+			var headers = new LinkedHashMap<String, List<String>>();
+			for(Header header : response.getAllHeaders()) {
+				headers.computeIfAbsent(header.getName(), name -> new ArrayList<>()).add(header.getValue());
+			}
+
+			int status = response.getStatusLine().getStatusCode();
+			if(response.getEntity() == null) {
+				response.close();
+				return new TransportResponse(status, response.getStatusLine().toString(), headers, new byte[0]);
+			}
+
+			// Closing the entity stream reads what's left of it, releasing the connection back to the pool
+			var body = new FilterInputStream(response.getEntity().getContent()) {
+				@Override
+				public void close() throws IOException {
+					try {
+						super.close();
+					} finally {
+						response.close();
+					}
+				}
+			};
+			return new TransportResponse(status, response.getStatusLine().toString(), headers, body);
+		} catch (IOException | RuntimeException e) {
+			response.close();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		client.close();
+	}
+
+	@Override
+	public String toString() {
+		return "pooled (" + manager.getDefaultMaxPerRoute() + " connections per host)";
+	}
+
+}
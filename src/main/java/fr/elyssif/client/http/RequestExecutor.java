@@ -0,0 +1,89 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.http;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import fr.elyssif.client.Config;
+
+/**
+ * Shared executor running the Rest requests.<br>
+ * Uses a virtual thread per request when the runtime supports it. Otherwise,
+ * a pool of daemon threads sized like the connection pool runs the requests,
+ * so a burst of requests never starts more threads than the transport can serve.
+ * @author Jérémy LAMBERT
+ *
+ * @see RestRequest#asyncExecute(HttpMethod)
+ */
+final class RequestExecutor {
+
+	private static final long KEEP_ALIVE = 30; // Seconds
+
+	private static ExecutorService executor;
+
+	private RequestExecutor() {}
+
+	/**
+	 * Get the shared executor, creating it if needed.
+	 * @return executor
+	 */
+	static synchronized ExecutorService get() {
+		if(executor == null) {
+			executor = createVirtual();
+			if(executor == null) {
+				executor = createPool(Transports.getMaxConnections());
+			}
+		}
+		return executor;
+	}
+
+	/**
+	 * Create an executor starting a virtual thread per task.
+	 * Looked up by reflection as the project targets Java 11.
+	 * @return the executor, or null if virtual threads are not supported
+	 */
+	private static ExecutorService createVirtual() {
+		try {
+			var method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			var virtual = (ExecutorService) method.invoke(null);
+			if(Config.getInstance().isVerbose())
+				Logger.getGlobal().info("Rest requests run on virtual threads.");
+			return virtual;
+		} catch (ReflectiveOperationException | UnsupportedOperationException e) {
+			return null; // Not available, or preview feature not enabled
+		}
+	}
+
+	private static ExecutorService createPool(int size) {
+		var counter = new AtomicInteger();
+		var pool = new ThreadPoolExecutor(size, size, KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), job -> {
+			var thread = new Thread(job, "rest-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+}
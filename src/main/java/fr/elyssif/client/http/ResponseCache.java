@@ -0,0 +1,379 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.http;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fr.elyssif.client.Config;
+import fr.elyssif.client.FileUtils;
+import fr.elyssif.client.security.Hash;
+
+/**
+ * Client-side cache of GET responses, revalidated with conditional requests.<br>
+ * Responses carrying an <code>ETag</code> or a <code>Last-Modified</code> header
+ * are stored per URL and authorization token. The next identical request sends
+ * <code>If-None-Match</code> and <code>If-Modified-Since</code>, and a
+ * <code>304 Not Modified</code> response is answered with the stored body, so
+ * unchanged pages are not downloaded again.<br>
+ * The memory tier is a least-recently-used map capped in bytes. The optional
+ * disk tier keeps one file per response in the program's directory, and
+ * removes the oldest ones when it exceeds its own cap. Its directory and files
+ * are only accessible by their owner, and responses marked <code>private</code>
+ * or <code>no-cache</code> are only kept in memory. Cookies are never stored,
+ * and both tiers must be cleared when the user logs out.
+ * @author Jérémy LAMBERT
+ *
+ * @see RestRequest
+ */
+public final class ResponseCache {
+
+	private static final int VERSION = 1;
+	private static final int ENTRY_OVERHEAD = 256; // Estimated size of the status and headers
+	private static final String EXTENSION = ".bin";
+	private static final String[] PRIVATE_HEADERS = { "Set-Cookie", "Set-Cookie2" };
+	private static ResponseCache instance;
+
+	private final long memoryCapacity;
+	private final File directory;
+	private final long diskCapacity;
+	private final LinkedHashMap<String, TransportResponse> entries;
+	private long memorySize;
+
+	private ResponseCache(long memoryCapacity, File directory, long diskCapacity) {
+		this.memoryCapacity = memoryCapacity;
+		this.directory = directory;
+		this.diskCapacity = diskCapacity;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * Enable the response cache.
+	 * @param memoryCapacity the maximum amount of bytes kept in memory, zero or less to disable the cache
+	 * @param directory the directory of the disk tier, null to disable it
+	 * @param diskCapacity the maximum amount of bytes kept on disk, zero or less to disable the disk tier
+	 */
+	public static final synchronized void enable(long memoryCapacity, File directory, long diskCapacity) {
+		if(memoryCapacity <= 0) {
+			instance = null;
+			return;
+		}
+		if(directory != null && diskCapacity <= 0) {
+			deleteFiles(directory); // Don't leave responses on disk once the disk tier is disabled
+			directory = null;
+		}
+		if(directory != null) {
+			try {
+				FileUtils.createRestrictedDirectory(directory.toPath());
+			} catch (IOException e) {
+				Logger.getGlobal().log(Level.WARNING, "Couldn't create response cache directory, disk cache disabled.", e);
+				directory = null;
+			}
+		}
+		instance = new ResponseCache(memoryCapacity, directory, diskCapacity);
+	}
+
+	/**
+	 * Disable the response cache. The stored entries are kept on disk, call {@link #clear()} first to remove them.
+	 */
+	public static final synchronized void disable() {
+		instance = null;
+	}
+
+	/**
+	 * Remove every cached response from memory and from the disk tier.<br>
+	 * Must be called when the user logs out so their responses can't be read afterwards.
+	 */
+	public static final synchronized void clear() {
+		if(instance != null) {
+			instance.clearEntries();
+		}
+	}
+
+	/**
+	 * Get the current response cache.
+	 * @return the cache, null if disabled
+	 */
+	static synchronized ResponseCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Send the given GET request, revalidating the cached response if there is one.
+	 * @param transport the transport used to send the request
+	 * @param request the request, conditional headers are added to it
+	 * @return the response, the cached one if the server answered 304
+	 * @throws IOException if the request couldn't be sent
+	 */
+	TransportResponse execute(HttpTransport transport, TransportRequest request) throws IOException {
+		String key = key(request);
+		TransportResponse cached = get(key);
+		if(cached != null) {
+			String etag = cached.getHeader("ETag");
+			String modified = cached.getHeader("Last-Modified");
+			if(etag != null)
+				request.setHeader("If-None-Match", etag);
+			if(modified != null)
+				request.setHeader("If-Modified-Since", modified);
+		}
+
+		TransportResponse response = transport.execute(request);
+		if(cached != null && response.getStatus() == 304) {
+			response.close();
+			if(Config.getInstance().isVerbose())
+				Logger.getGlobal().info("Not modified, using cached response for " + request.getUri());
+			return cached;
+		}
+
+		if(isCacheable(response)) {
+			put(key, response.buffer()); // Only cached responses are read into memory before being decoded
+		} else if(cached != null) {
+			remove(key);
+		}
+		return response;
+	}
+
+	/**
+	 * Build the key of a request from its URI and authorization.
+	 * The key is hashed so tokens are never written to the disk tier.
+	 */
+	private static String key(TransportRequest request) {
+		String authorization = request.getHeaders().getOrDefault("Authorization", "");
+		String language = request.getHeaders().getOrDefault("Accept-Language", "");
+		try {
+			var digest = MessageDigest.getInstance("SHA-256");
+			return Hash.toHex(digest.digest((authorization + "\n" + language + "\n" + request.getUri()).getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // SHA-256 is always available
+		}
+	}
+
+	private synchronized void clearEntries() {
+		entries.clear();
+		memorySize = 0;
+		if(directory != null) {
+			deleteFiles(directory);
+		}
+	}
+
+	private static void deleteFiles(File directory) {
+		var files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION) || name.endsWith(".tmp"));
+		if(files == null) {
+			return;
+		}
+		for(var file : files) {
+			if(!file.delete()) {
+				Logger.getGlobal().warning("Couldn't delete cached response " + file.getName());
+			}
+		}
+	}
+
+	private static boolean isCacheable(TransportResponse response) {
+		if(response.getStatus() != 200) {
+			return false;
+		}
+		String control = response.getHeader("Cache-Control");
+		if(control != null && control.toLowerCase().contains("no-store")) {
+			return false;
+		}
+		return response.getHeader("ETag") != null || response.getHeader("Last-Modified") != null;
+	}
+
+	/**
+	 * Get if the given cached response can be written to the disk tier.
+	 */
+	private static boolean isStorable(TransportResponse response) {
+		String control = response.getHeader("Cache-Control");
+		if(control == null) {
+			return true;
+		}
+		control = control.toLowerCase();
+		return !control.contains("private") && !control.contains("no-cache");
+	}
+
+	private static long weight(TransportResponse response) {
+		return response.getBody().length + ENTRY_OVERHEAD;
+	}
+
+	/**
+	 * Get the cached response for the given key, loading it from the disk tier if needed.
+	 * @return the response, null if not cached
+	 */
+	synchronized TransportResponse get(String key) {
+		var response = entries.get(key);
+		if(response == null && directory != null) {
+			response = load(key);
+			if(response != null) {
+				putInMemory(key, response);
+			}
+		}
+		return response;
+	}
+
+	/**
+	 * Cache a response in memory and in the disk tier, without its cookies.
+	 */
+	synchronized void put(String key, TransportResponse response) {
+		response = response.withoutHeaders(PRIVATE_HEADERS);
+		if(weight(response) > memoryCapacity) {
+			remove(key);
+			return;
+		}
+		putInMemory(key, response);
+		if(directory != null) {
+			if(isStorable(response)) {
+				save(key, response);
+			} else {
+				new File(directory, key + EXTENSION).delete();
+			}
+		}
+	}
+
+	private synchronized void remove(String key) {
+		var removed = entries.remove(key);
+		if(removed != null) {
+			memorySize -= weight(removed);
+		}
+		if(directory != null) {
+			new File(directory, key + EXTENSION).delete();
+		}
+	}
+
+	private void putInMemory(String key, TransportResponse response) {
+		var previous = entries.put(key, response);
+		if(previous != null) {
+			memorySize -= weight(previous);
+		}
+		memorySize += weight(response);
+
+		// Iteration order is least-recently used first
+		var iterator = entries.values().iterator();
+		while(memorySize > memoryCapacity && iterator.hasNext()) {
+			memorySize -= weight(iterator.next());
+			iterator.remove();
+		}
+	}
+
+	private TransportResponse load(String key) {
+		var file = new File(directory, key + EXTENSION);
+		if(!file.exists()) {
+			return null;
+		}
+
+		try(var input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(input.readInt() != VERSION || !input.readUTF().equals(key)) {
+				return null;
+			}
+
+			int status = input.readInt();
+			String statusLine = input.readUTF();
+			int headerCount = input.readInt();
+			var headers = new LinkedHashMap<String, List<String>>();
+			for(int i = 0 ; i < headerCount ; i++) {
+				String name = input.readUTF();
+				int valueCount = input.readInt();
+				var values = new ArrayList<String>(valueCount);
+				for(int j = 0 ; j < valueCount ; j++) {
+					values.add(input.readUTF());
+				}
+				headers.put(name, values);
+			}
+			var body = new byte[input.readInt()];
+			input.readFully(body);
+			file.setLastModified(System.currentTimeMillis()); // Keep recently used files when trimming
+			return new TransportResponse(status, statusLine, headers, body);
+		} catch (IOException e) {
+			Logger.getGlobal().log(Level.WARNING, "Couldn't load cached response, ignoring it.", e);
+			file.delete();
+			return null;
+		}
+	}
+
+	private void save(String key, TransportResponse response) {
+		var file = new File(directory, key + EXTENSION);
+		var temp = new File(directory, key + ".tmp");
+		try {
+			FileUtils.createRestrictedFile(temp.toPath());
+			try(var output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+				output.writeInt(VERSION);
+				output.writeUTF(key);
+				output.writeInt(response.getStatus());
+				output.writeUTF(response.getStatusLine());
+				output.writeInt(response.getHeaders().size());
+				for(Map.Entry<String, List<String>> header : response.getHeaders().entrySet()) {
+					output.writeUTF(header.getKey());
+					output.writeInt(header.getValue().size());
+					for(String value : header.getValue()) {
+						output.writeUTF(value);
+					}
+				}
+				output.writeInt(response.getBody().length);
+				output.write(response.getBody());
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			trim();
+		} catch (IOException e) {
+			Logger.getGlobal().log(Level.WARNING, "Couldn't save cached response.", e);
+			temp.delete();
+		}
+	}
+
+	/**
+	 * Remove the least recently used files of the disk tier until it fits in its capacity.
+	 */
+	private void trim() {
+		var files = directory.listFiles((dir, name) -> name.endsWith(EXTENSION));
+		if(files == null) {
+			return;
+		}
+
+		long size = 0;
+		for(var file : files) {
+			size += file.length();
+		}
+		if(size <= diskCapacity) {
+			return;
+		}
+
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for(int i = 0 ; i < files.length && size > diskCapacity ; i++) {
+			size -= files[i].length();
+			files[i].delete();
+		}
+	}
+
+}
@@ -20,26 +20,18 @@
 import java.io.IOException;
 import java.io.Serializable;
 import java.io.UnsupportedEncodingException;
-import java.lang.reflect.InvocationTargetException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
 import java.util.Hashtable;
 import java.util.Locale;
 import java.util.Map.Entry;
 import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.http.Header;
-import org.apache.http.HttpResponse;
-import org.apache.http.ParseException;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpEntityEnclosingRequestBase;
-import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.entity.StringEntity;
-import org.apache.http.util.EntityUtils;
-
 import com.google.gson.Gson;
 
 import fr.elyssif.client.Config;
@@ -60,12 +52,18 @@ public class RestRequest {
 	//Used to automate localization
 	private static Locale globalLocale = null;
 
+	//Bodies larger than this are sent compressed, 0 disables compression
+	private static int compressionThreshold = 0;
+
 	private String url;
 	private String authorizationToken;
 	private Locale locale;
 	private Hashtable<String, Object> parameters;
 	private Hashtable<String, Object> urlParameters;
-	private HttpClient client;
+	private HttpTransport transport;
+	private boolean cacheable = true;
+	private long bodyBytes;
+	private long sentBytes;
 
 	/**
 	 * Set locale to use by default for every request.<br>
@@ -84,13 +82,30 @@ public class RestRequest {
 		return globalLocale;
 	}
 
+	/**
+	 * Set the size above which request bodies are compressed with gzip.<br>
+	 * The server must accept gzip encoded requests.
+	 * @param threshold the size in bytes, 0 disables compression
+	 */
+	public static final void setCompressionThreshold(int threshold) {
+		compressionThreshold = Math.max(0, threshold);
+	}
+
+	/**
+	 * Get the size above which request bodies are compressed with gzip.
+	 * @return the size in bytes, 0 if compression is disabled
+	 */
+	public static final int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
 	/**
 	 * Create a new RestRequest instance
-	 * @param client
+	 * @param transport
 	 * @param url
 	 */
-	public RestRequest(HttpClient client, String url) {
-		this.client = client;
+	public RestRequest(HttpTransport transport, String url) {
+		this.transport = transport;
 		this.url = url;
 		this.parameters = new Hashtable<>();
 		this.urlParameters = new Hashtable<>();
@@ -98,10 +113,10 @@ public class RestRequest {
 
 	/**
 	 * Create a new RestRequest instance without providing an URL. Therefore, it must be given later using the url() method.
-	 * @param client
+	 * @param transport
 	 */
-	public RestRequest(HttpClient client) {
-		this.client = client;
+	public RestRequest(HttpTransport transport) {
+		this.transport = transport;
 	}
 
 	/**
@@ -200,80 +215,150 @@ public class RestRequest {
 		return this;
 	}
 
+	/**
+	 * Set if the response of this request can be kept in the response cache.<br>
+	 * Only GET requests are cached. Disable it for responses holding secrets.
+	 * @param cacheable
+	 * @return current instance, used to chain the builder
+	 * @see ResponseCache
+	 */
+	public final RestRequest cacheable(boolean cacheable) {
+		this.cacheable = cacheable;
+		return this;
+	}
+
+	/**
+	 * Get if the response of this request can be kept in the response cache.
+	 * @return cacheable
+	 */
+	public final boolean isCacheable() {
+		return cacheable;
+	}
+
+	/**
+	 * Get the size of the request body, before compression.
+	 * @return the amount of bytes, 0 if the request hasn't been executed yet
+	 */
+	public final long getBodyBytes() {
+		return bodyBytes;
+	}
+
+	/**
+	 * Get the size of the request body as sent, after compression.
+	 * @return the amount of bytes, 0 if the request hasn't been executed yet
+	 */
+	public final long getSentBytes() {
+		return sentBytes;
+	}
+
 	/**
 	 * Execute the request asynchronously using the given HttpMethod and executes the given callback when done
 	 * 
 	 * @param method the Http method to use for this request
-	 * @param callback the action to execute when the request is done
+	 * @param callback the action to execute on the JavaFX thread when the request is done
+	 * @return the future response. The callback isn't executed if the future is cancelled.
 	 * 
 	 * @see RestResponse
 	 * @see HttpMethod
 	 * @see RestCallback
 	 */
-	public void asyncExecute(HttpMethod method, RestCallback callback) {
-
-		Thread thread = new Thread(() -> {
-
-			RestResponse result = null;
-			try {
-				HttpRequestBase request = prepareRequest(method);
-
-				if(request != null) {
-					if(Config.getInstance().isVerbose())
-						Logger.getGlobal().info("Send request:\n" + requestToString(request));
-					HttpResponse response = client.execute(request);
-					result = new RestResponse(response);
-					if(Config.getInstance().isVerbose())
-						Logger.getGlobal().info("Response received:\n" + result.toString());
-				}
-
-			} catch (IOException e) {
-				Logger.getGlobal().log(Level.SEVERE, "Unable to execute Rest " + method.name() + " request", e);
-				result = new RestResponse(e.getMessage()); //Create a response with status code -1 and exception message.
+	public CompletableFuture<RestResponse> asyncExecute(HttpMethod method, RestCallback callback) {
+		CompletableFuture<RestResponse> future = asyncExecute(method);
+		future.whenComplete((result, e) -> {
+			if(future.isCancelled()) {
+				return;
 			}
-
-			var data = new RestCallbackData(result);
+			var data = new RestCallbackData(e == null ? result : new RestResponse(e.getMessage()));
 			Platform.runLater(() -> {
 				callback.run(data);
 			});
 		});
-		thread.setDaemon(true);
-		thread.start();
+		return future;
 	}
 
 	/**
-	 * Prepare the request by instantiating it, setting the headers and the parameters.
+	 * Execute the request asynchronously on the shared request executor using the given HttpMethod.<br>
+	 * The returned future completes on the executor thread, not on the JavaFX thread.
+	 * Cancelling it only prevents the dependent stages from running, the request itself still completes.
+	 * 
+	 * @param method the Http method to use for this request
+	 * @return the future response. Never completes exceptionally: failures are
+	 * reported as a response with status code -1.
+	 * 
+	 * @see RestResponse
+	 * @see HttpMethod
+	 */
+	public CompletableFuture<RestResponse> asyncExecute(HttpMethod method) {
+		return CompletableFuture.supplyAsync(() -> execute(method), RequestExecutor.get());
+	}
+
+	/**
+	 * Execute the request synchronously on the calling thread.
+	 * @param method the Http method to use for this request
+	 * @return the response, null if the request couldn't be prepared
+	 */
+	private RestResponse execute(HttpMethod method) {
+		RestResponse result = null;
+		try {
+			TransportRequest request = prepareRequest(method);
+
+			if(request != null) {
+				if(Config.getInstance().isVerbose())
+					Logger.getGlobal().info("Send request:\n" + request.toString());
+				ResponseCache cache = cacheable && method.equals(HttpMethod.GET) ? ResponseCache.getInstance() : null;
+				TransportResponse response = cache != null ? cache.execute(transport, request) : transport.execute(request);
+				result = new RestResponse(response);
+				if(Config.getInstance().isVerbose()) {
+					Logger.getGlobal().info("Response received (" + result.getReceivedBytes() + " bytes, " + result.getDecodedBytes() + " decoded):\n" + result.toString());
+				}
+			}
+
+		} catch (IOException | RuntimeException e) {
+			Logger.getGlobal().log(Level.SEVERE, "Unable to execute Rest " + method.name() + " request", e);
+			result = new RestResponse(e.getMessage()); //Create a response with status code -1 and exception message.
+		}
+		return result;
+	}
+
+	/**
+	 * Prepare the request by setting the headers and the parameters.
 	 * @param method The HttpMethod used
 	 * @return the prepared request, ready to be executed. null if an error occurred
 	 * @see HttpMethod
 	 */
-	private HttpRequestBase prepareRequest(HttpMethod method) {
+	private TransportRequest prepareRequest(HttpMethod method) {
 		try {
-			HttpRequestBase request = method.instantiate(url);
+			TransportRequest request = new TransportRequest(method, new URI(url + urlEncodeParameters()));
 
 			//Headers
-			request.addHeader("Accept", "application/json");
-			request.addHeader("Content-type", "application/json; charset=UTF-8");
+			request.setHeader("Accept", "application/json");
+			request.setHeader("Content-type", "application/json; charset=UTF-8");
+			request.setHeader("Accept-Encoding", ContentEncoding.ACCEPTED);
 
 			if(locale != null)
-				request.addHeader("Accept-Language", locale.getLanguage());
+				request.setHeader("Accept-Language", locale.getLanguage());
 			else if(globalLocale != null)
-				request.addHeader("Accept-Language", globalLocale.getLanguage());
+				request.setHeader("Accept-Language", globalLocale.getLanguage());
 
 			if(authorizationToken != null)
-				request.addHeader("Authorization", "Bearer " + authorizationToken);
+				request.setHeader("Authorization", "Bearer " + authorizationToken);
 
 			//Parameters
-			request.setURI(new URI(url + urlEncodeParameters()));
-			if(HttpEntityEnclosingRequestBase.class.isAssignableFrom(request.getClass())) {
-				((HttpEntityEnclosingRequestBase) request).setEntity(serializeParameters());
+			if(method.hasBody()) {
+				byte[] body = serializeParameters();
+				bodyBytes = body.length;
+				if(compressionThreshold > 0 && body.length > compressionThreshold) {
+					body = ContentEncoding.gzip(body);
+					request.setHeader("Content-Encoding", ContentEncoding.GZIP);
+				}
+				sentBytes = body.length;
+				request.setBody(body);
 			} else if(method.equals(HttpMethod.GET) && parameters.size() > 0) {
 				Logger.getGlobal().warning("GET request has " + parameters.size() + " non-URL parameters.");
 			}
 
 			return request;
-		} catch (InstantiationException | IllegalAccessException | IllegalArgumentException | InvocationTargetException
-				| NoSuchMethodException | SecurityException | UnsupportedEncodingException | URISyntaxException e) {
+		} catch (UnsupportedEncodingException | URISyntaxException e) {
 			Logger.getGlobal().log(Level.SEVERE, "Unable to instantiate Http request.", e);
 		}
 		return null;
@@ -281,16 +366,11 @@ public class RestRequest {
 
 	/**
 	 * Serialize the parameters in json
-	 * @return the json string representing parameters
-	 * @throws UnsupportedEncodingException 
-	 * @see StringEntity
+	 * @return the UTF-8 json representing parameters
 	 */
-	private StringEntity serializeParameters() throws UnsupportedEncodingException {
+	private byte[] serializeParameters() {
 		Gson gson = new Gson();
-		StringEntity jsonparam = new StringEntity(gson.toJson(parameters), "UTF-8");
-		jsonparam.setContentType("application/json");
-		jsonparam.setChunked(true);
-		return jsonparam;
+		return gson.toJson(parameters).getBytes(StandardCharsets.UTF_8);
 	}
 
 	/**
@@ -310,28 +390,4 @@ public class RestRequest {
 		}
 	}
 
-	/**
-	 * Convert an HTTP request to String.
-	 * @param request
-	 * @return requestString
-	 */
-	private String requestToString(HttpRequestBase request) {
-		try {
-			String full = request.toString();
-
-			for (Header header : request.getAllHeaders()) {
-				full += "\n" + header.getName() + ": " + header.getValue();
-			}
-			if(!request.getMethod().equals(HttpMethod.GET.name()) && !request.getMethod().equals(HttpMethod.DELETE.name())) {
-				full += "\n\n";
-				full += EntityUtils.toString(((HttpEntityEnclosingRequestBase) request).getEntity());
-			}
-			return full;
-		} catch (ParseException | IOException e) {
-			Logger.getGlobal().log(Level.SEVERE, "Error while converting HTTP request to string", e);
-		}
-
-		return null;
-	}
-
 }
@@ -17,33 +17,46 @@
  */
  package fr.elyssif.client.http;
 
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.apache.http.Header;
-import org.apache.http.HttpRequest;
-import org.apache.http.HttpResponse;
-import org.apache.http.util.EntityUtils;
-
 import com.google.gson.JsonElement;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import fr.elyssif.client.Config;
 
 /**
- * Result of a Rest query built using RestBuilder.
+ * Result of a Rest query built using RestBuilder.<br>
+ * JSON bodies are decoded straight from the connection, decompressing them
+ * on the fly if the server compressed the response, so they are never held in
+ * memory as bytes nor as a string. The body is only read into memory first if
+ * the request failed, verbose logging is enabled, the response isn't declared as
+ * JSON or the response cache stores it; the raw body is then kept as a string
+ * if the request failed, the body isn't valid JSON or verbose logging is enabled.
  * 
  * @author Jérémy LAMBERT
  * 
  * @see RestRequest
- * @see HttpRequest
+ * @see TransportResponse
  *
  */
 public class RestResponse {
 
 	private int status;
-	private HttpResponse response;
+	private TransportResponse response;
 	private String raw;
 	private JsonElement jsonElement;
+	private long receivedBytes;
+	private long decodedBytes;
 
 	/**
 	 * Use this constructor if the HttpRequest failed. Will instantiate a fail result
@@ -62,25 +75,87 @@ public class RestResponse {
 		raw = message;
 	}
 
-	protected RestResponse(HttpResponse response) {
-		this.response = response;
-		status = response.getStatusLine().getStatusCode();
+	protected RestResponse(TransportResponse response) {
+		status = response.getStatus();
+		boolean keepRaw = !isSuccessful() || Config.getInstance().isVerbose();
+
+		try(response) {
+			if(status != 204) {
+				String encoding = response.getHeader("Content-Encoding");
+				if(keepRaw || !isJson(response)) {
+					// The raw body is needed, or may be if it isn't JSON
+					byte[] body = response.buffer().getBody();
+					receivedBytes = body.length;
+					if(body.length > 0 && !parse(new ByteArrayInputStream(body), encoding)) {
+						keepRaw = true;
+					}
+					if(keepRaw) {
+						raw = decodeRaw(body, encoding);
+					}
+				} else {
+					var received = new ContentEncoding.CountingInputStream(response.getBodyStream());
+					if(!parse(received, encoding)) {
+						raw = "Unable to parse JSON response.";
+					}
+					receivedBytes = received.getCount();
+				}
+			}
+		} catch (IOException e) {
+			Logger.getGlobal().log(Level.WARNING, "Unable to read response", e);
+			status = -1;
+			raw = e.getMessage();
+		}
+		this.response = response.withoutBody();
+	}
 
-		if(status != 204) {
-			try {
-				raw = EntityUtils.toString(response.getEntity());
+	/**
+	 * Check if the given response declares a JSON body.
+	 */
+	private static boolean isJson(TransportResponse response) {
+		String type = response.getHeader("Content-Type");
+		return type != null && type.toLowerCase().contains("json");
+	}
 
-				if(raw != null && !raw.isEmpty()) {
-					JsonParser parser = new JsonParser();
-					jsonElement = parser.parse(raw);
-				}
-			} catch (UnsupportedOperationException | IOException e) {
-				Logger.getGlobal().log(Level.SEVERE, "Unable to read HttpResponse", e);
-				status = -1;
-				raw = e.getMessage();
+	/**
+	 * Decode and parse the JSON body from the given stream, which is closed afterwards.
+	 * @return false if the body isn't valid JSON
+	 */
+	private boolean parse(InputStream input, String encoding) {
+		ContentEncoding.CountingInputStream decoded;
+		try {
+			decoded = new ContentEncoding.CountingInputStream(ContentEncoding.decode(input, encoding));
+		} catch (IOException e) {
+			Logger.getGlobal().log(Level.WARNING, "Unable to decode response", e);
+			return false;
+		}
+
+		try(JsonReader reader = new JsonReader(new InputStreamReader(decoded, StandardCharsets.UTF_8))) {
+			JsonParser parser = new JsonParser();
+			JsonElement element = parser.parse(reader);
+			if(reader.peek() != JsonToken.END_DOCUMENT) {
+				throw new JsonSyntaxException("Did not consume the entire document.");
 			}
-		} else {
-			raw = null;
+			jsonElement = decoded.getCount() > 0 ? element : null; // An empty body is parsed as JsonNull
+			return true;
+		} catch (JsonParseException | IOException e) {
+			Logger.getGlobal().log(Level.WARNING, "Unable to parse JSON response", e);
+			return false;
+		} finally {
+			decodedBytes = decoded.getCount();
+		}
+	}
+
+	/**
+	 * Decode the whole body as a string.
+	 * @return the body, or the reason it couldn't be decoded
+	 */
+	private String decodeRaw(byte[] body, String encoding) {
+		try(var input = ContentEncoding.decode(body, encoding)) {
+			byte[] decoded = input.readAllBytes();
+			decodedBytes = decoded.length;
+			return new String(decoded, StandardCharsets.UTF_8);
+		} catch (IOException e) {
+			return e.getMessage();
 		}
 	}
 
@@ -118,13 +193,33 @@ public class RestResponse {
 	}
 
 	/**
-	 * Get the raw response body
-	 * @return raw response
+	 * Get the raw response body.<br>
+	 * If the raw body wasn't kept, the parsed JSON is serialized back.
+	 * @return raw response, null if there is no body
 	 */
 	public String getRawBody() {
+		if(raw == null && jsonElement != null) {
+			return jsonElement.toString();
+		}
 		return raw;
 	}
 
+	/**
+	 * Get the amount of body bytes received, compressed if the server compressed the response.
+	 * @return the amount of bytes
+	 */
+	public long getReceivedBytes() {
+		return receivedBytes;
+	}
+
+	/**
+	 * Get the amount of body bytes once decompressed.
+	 * @return the amount of bytes
+	 */
+	public long getDecodedBytes() {
+		return decodedBytes;
+	}
+
 	/**
 	 * Get the JsonElement parsed from the raw response
 	 * @return the json element parsed from the raw response
@@ -135,11 +230,8 @@ public class RestResponse {
 	}
 
 	public String toString() {
-		String full = response.getStatusLine().toString();
+		String full = response.toString();
 
-		for (Header header : response.getAllHeaders()) {
-			full += "\n" + header.getName() + ": " + header.getValue();
-		}
 		if(raw != null) {
 			full += "\n\n";
 			full += raw;
@@ -0,0 +1,115 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.http;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Transport-independent HTTP request, ready to be sent by an {@link HttpTransport}.
+ * @author Jérémy LAMBERT
+ *
+ * @see RestRequest
+ */
+public final class TransportRequest {
+
+	private final HttpMethod method;
+	private final URI uri;
+	private final Map<String, String> headers;
+	private byte[] body;
+
+	/**
+	 * Create a new instance of TransportRequest.
+	 * @param method the HTTP method
+	 * @param uri the full URI, including the query string
+	 */
+	public TransportRequest(HttpMethod method, URI uri) {
+		this.method = method;
+		this.uri = uri;
+		this.headers = new LinkedHashMap<>();
+	}
+
+	/**
+	 * Set a header. Overrides if a header with the given name already exists.
+	 * @param name
+	 * @param value
+	 */
+	public void setHeader(String name, String value) {
+		headers.put(name, value);
+	}
+
+	/**
+	 * Set the body of the request.
+	 * @param body the body, nullable
+	 */
+	public void setBody(byte[] body) {
+		this.body = body;
+	}
+
+	/**
+	 * Get the HTTP method.
+	 * @return method
+	 */
+	public HttpMethod getMethod() {
+		return method;
+	}
+
+	/**
+	 * Get the full URI.
+	 * @return uri
+	 */
+	public URI getUri() {
+		return uri;
+	}
+
+	/**
+	 * Get a read-only map of the headers, in insertion order.
+	 * @return headers
+	 */
+	public Map<String, String> getHeaders() {
+		return Collections.unmodifiableMap(headers);
+	}
+
+	/**
+	 * Get the body of the request.
+	 * @return body, null if the request has no body
+	 */
+	public byte[] getBody() {
+		return body;
+	}
+
+	@Override
+	public String toString() {
+		String full = method.name() + " " + uri;
+
+		for(Entry<String, String> header : headers.entrySet()) {
+			full += "\n" + header.getKey() + ": " + header.getValue();
+		}
+		if(body != null) {
+			full += "\n\n";
+			String encoding = headers.get("Content-Encoding");
+			full += encoding != null ? "[" + body.length + " bytes, " + encoding + "]" : new String(body, StandardCharsets.UTF_8);
+		}
+		return full;
+	}
+
+}
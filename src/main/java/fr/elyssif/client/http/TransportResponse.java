@@ -0,0 +1,208 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+/**
+ * Transport-independent HTTP response, returned by an {@link HttpTransport}.<br>
+ * The body is either held in memory or still being received: a streamed body
+ * can be read once with {@link #getBodyStream()}, or read into memory with
+ * {@link #buffer()}. Closing the response releases the connection.
+ * @author Jérémy LAMBERT
+ *
+ * @see RestResponse
+ */
+public final class TransportResponse implements Closeable {
+
+	private final int status;
+	private final String statusLine;
+	private final Map<String, List<String>> headers;
+	private byte[] body;
+	private InputStream stream;
+
+	/**
+	 * Create a new instance of TransportResponse with a body held in memory.
+	 * @param status the HTTP status code
+	 * @param statusLine the status line, for logging
+	 * @param headers the response headers
+	 * @param body the response body, empty if none
+	 */
+	public TransportResponse(int status, String statusLine, Map<String, List<String>> headers, byte[] body) {
+		this.status = status;
+		this.statusLine = statusLine;
+		this.headers = headers;
+		this.body = body;
+	}
+
+	/**
+	 * Create a new instance of TransportResponse with a body still being received.
+	 * @param status the HTTP status code
+	 * @param statusLine the status line, for logging
+	 * @param headers the response headers
+	 * @param stream the response body, closed with the response
+	 */
+	public TransportResponse(int status, String statusLine, Map<String, List<String>> headers, InputStream stream) {
+		this.status = status;
+		this.statusLine = statusLine;
+		this.headers = headers;
+		this.stream = stream;
+	}
+
+	/**
+	 * Get the HTTP status code.
+	 * @return status
+	 */
+	public int getStatus() {
+		return status;
+	}
+
+	/**
+	 * Get the status line, such as "HTTP/1.1 200 OK".
+	 * @return statusLine
+	 */
+	public String getStatusLine() {
+		return statusLine;
+	}
+
+	/**
+	 * Get a read-only map of the response headers.
+	 * @return headers
+	 */
+	public Map<String, List<String>> getHeaders() {
+		return Collections.unmodifiableMap(headers);
+	}
+
+	/**
+	 * Get the first value of a header, ignoring the case of its name.
+	 * @param name the name of the header
+	 * @return the value, null if the header is absent
+	 */
+	public String getHeader(String name) {
+		for(Entry<String, List<String>> header : headers.entrySet()) {
+			if(header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) {
+				return header.getValue().get(0);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Read the whole body into memory if it is still being received.
+	 * @return current instance
+	 * @throws IOException if the body couldn't be read
+	 */
+	public TransportResponse buffer() throws IOException {
+		if(stream != null) {
+			try(var input = stream) {
+				stream = null;
+				body = input.readAllBytes();
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Get if the body is held in memory.
+	 * @return true if the body is held in memory, false if it is still being received
+	 */
+	public boolean isBuffered() {
+		return stream == null;
+	}
+
+	/**
+	 * Get the response body, as received.
+	 * It is still compressed if the response has a <code>Content-Encoding</code>.
+	 * @return body
+	 * @throws IllegalStateException if the body is still being received, see {@link #buffer()}
+	 */
+	public byte[] getBody() {
+		if(stream != null) {
+			throw new IllegalStateException("The response body hasn't been buffered.");
+		}
+		return body;
+	}
+
+	/**
+	 * Get a stream reading the response body, as received.
+	 * It is still compressed if the response has a <code>Content-Encoding</code>.
+	 * A body still being received can only be read once, and is released when the response is closed.
+	 * @return the body stream
+	 */
+	public InputStream getBodyStream() {
+		return stream != null ? stream : new ByteArrayInputStream(body);
+	}
+
+	/**
+	 * Get a copy of this response without its body, so the body can be released
+	 * while keeping the status and headers.
+	 * @return the response without body
+	 */
+	TransportResponse withoutBody() {
+		return new TransportResponse(status, statusLine, headers, new byte[0]);
+	}
+
+	/**
+	 * Get a copy of this response without the given headers.
+	 * @param names the names of the headers to remove, ignoring case
+	 * @return the response without these headers
+	 */
+	TransportResponse withoutHeaders(String... names) {
+		if(stream != null) {
+			throw new IllegalStateException("The response body hasn't been buffered.");
+		}
+		var copy = new LinkedHashMap<String, List<String>>(headers);
+		copy.keySet().removeIf(key -> Arrays.stream(names).anyMatch(key::equalsIgnoreCase));
+		return new TransportResponse(status, statusLine, copy, body);
+	}
+
+	/**
+	 * Release the connection if the body is still being received.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(stream != null) {
+			var input = stream;
+			stream = null;
+			body = new byte[0];
+			input.close();
+		}
+	}
+
+	@Override
+	public String toString() {
+		String full = statusLine;
+
+		for(Entry<String, List<String>> header : headers.entrySet()) {
+			for(String value : header.getValue()) {
+				full += "\n" + header.getKey() + ": " + value;
+			}
+		}
+		return full;
+	}
+
+}
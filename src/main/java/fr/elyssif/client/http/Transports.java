@@ -0,0 +1,105 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.http;
+
+/**
+ * Creates the {@link HttpTransport} used by the application, according to the settings.
+ * @author Jérémy LAMBERT
+ *
+ */
+public final class Transports {
+
+	/**
+	 * HTTP/1.1 with a pool of keep-alive connections.
+	 */
+	public static final String POOLED = "pooled";
+
+	/**
+	 * HTTP/2 with a single multiplexed connection per host.
+	 */
+	public static final String HTTP2 = "http2";
+
+	private static final int DEFAULT_MAX_CONNECTIONS = 20;
+	private static final int DEFAULT_TIMEOUT = 30; // Seconds
+
+	private static String type = POOLED;
+	private static int maxConnections = DEFAULT_MAX_CONNECTIONS;
+	private static int timeout = DEFAULT_TIMEOUT;
+
+	private Transports() {}
+
+	/**
+	 * Set the type of transport to create.
+	 * @param type {@link #POOLED} or {@link #HTTP2}, anything else uses the pooled transport
+	 */
+	public static synchronized void setType(String type) {
+		Transports.type = HTTP2.equalsIgnoreCase(type) ? HTTP2 : POOLED;
+	}
+
+	/**
+	 * Get the type of transport to create.
+	 * @return type
+	 */
+	public static synchronized String getType() {
+		return type;
+	}
+
+	/**
+	 * Set the maximum amount of connections per host of the pooled transport.
+	 * @param maxConnections the amount of connections, 0 or less uses the default amount
+	 */
+	public static synchronized void setMaxConnections(int maxConnections) {
+		Transports.maxConnections = maxConnections > 0 ? maxConnections : DEFAULT_MAX_CONNECTIONS;
+	}
+
+	/**
+	 * Get the maximum amount of connections per host of the pooled transport.
+	 * @return maxConnections
+	 */
+	public static synchronized int getMaxConnections() {
+		return maxConnections;
+	}
+
+	/**
+	 * Set the connect and read timeout.
+	 * @param timeout the timeout in seconds, 0 or less disables it
+	 */
+	public static synchronized void setTimeout(int timeout) {
+		Transports.timeout = Math.max(0, timeout);
+	}
+
+	/**
+	 * Get the connect and read timeout.
+	 * @return timeout in seconds, 0 if disabled
+	 */
+	public static synchronized int getTimeout() {
+		return timeout;
+	}
+
+	/**
+	 * Create a new transport using the current settings.
+	 * @return transport
+	 */
+	public static synchronized HttpTransport create() {
+		if(HTTP2.equals(type)) {
+			return new Http2Transport(timeout);
+		}
+		return new PooledTransport(maxConnections, timeout);
+	}
+
+}
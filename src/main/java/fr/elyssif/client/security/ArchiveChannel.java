@@ -0,0 +1,221 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Readable channel streaming the {@link Tar} archive of a directory,
+ * so a directory can go through the encryption pipeline without being
+ * copied to a temporary archive first.<br>
+ * A background thread reads the files ahead of the consumer, at most
+ * <code>READ_AHEAD</code> blocks ahead, so opening and reading many small
+ * files overlaps with the processing of the data already read.
+ * @author Jérémy LAMBERT
+ *
+ */
+final class ArchiveChannel implements ReadableByteChannel {
+
+	private static final int READ_AHEAD = 4;
+	private static final ByteBuffer END = ByteBuffer.allocate(0);
+
+	private final List<Tar.Entry> entries;
+	private final long size;
+	private final int blockSize;
+	private final BlockingQueue<ByteBuffer> free;
+	private final BlockingQueue<ByteBuffer> filled;
+	private final Thread producer;
+
+	private ByteBuffer current;
+	private volatile IOException error;
+	private volatile boolean open;
+
+	/**
+	 * Create a new instance of ArchiveChannel and start reading the files of the given directory.
+	 * @param directory the directory to archive
+	 * @throws IOException if the directory cannot be listed
+	 */
+	ArchiveChannel(File directory) throws IOException {
+		this.entries = Tar.scan(directory);
+		this.size = Tar.length(entries);
+		this.blockSize = Math.max(BlockReader.getBlockSize(), 2 * Tar.BLOCK_SIZE);
+		this.free = new ArrayBlockingQueue<>(READ_AHEAD);
+		this.filled = new ArrayBlockingQueue<>(READ_AHEAD + 1);
+		for(int i = 0 ; i < READ_AHEAD ; i++) {
+			free.add(ByteBuffer.allocateDirect(blockSize));
+		}
+
+		open = true;
+		producer = new Thread(this::produce, "archive-" + directory.getName());
+		producer.setDaemon(true);
+		producer.start();
+	}
+
+	/**
+	 * Get the total length of the archive.
+	 * @return size
+	 */
+	long size() {
+		return size;
+	}
+
+	/**
+	 * Get the regular files of the archive.
+	 * @return files
+	 */
+	List<File> getFiles() {
+		var files = new ArrayList<File>();
+		for(var entry : entries) {
+			if(!entry.directory) {
+				files.add(entry.file);
+			}
+		}
+		return files;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		if(!open) {
+			throw new ClosedChannelException();
+		}
+
+		try {
+			if(current != END && (current == null || !current.hasRemaining())) {
+				if(current != null) {
+					free.put(current.clear());
+				}
+				current = filled.take();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while reading archive.");
+		}
+
+		if(current == END) {
+			if(error != null) {
+				throw error;
+			}
+			return -1;
+		}
+
+		int length = Math.min(dst.remaining(), current.remaining());
+		int limit = current.limit();
+		current.limit(current.position() + length);
+		dst.put(current);
+		current.limit(limit);
+		return length;
+	}
+
+	private void produce() {
+		try {
+			var buffer = free.take();
+			for(var entry : entries) {
+				if(buffer.remaining() < Tar.headerLength(entry)) {
+					buffer = flush(buffer);
+				}
+				Tar.writeHeader(entry, buffer);
+
+				if(!entry.directory) {
+					buffer = copy(entry, buffer);
+				}
+			}
+
+			for(int i = 0 ; i < 2 * Tar.BLOCK_SIZE ; i++) {
+				if(!buffer.hasRemaining()) {
+					buffer = flush(buffer);
+				}
+				buffer.put((byte) 0);
+			}
+			filled.put(buffer.flip());
+		} catch (IOException e) {
+			error = e;
+		} catch (InterruptedException e) {
+			// Closed
+		} finally {
+			filled.offer(END);
+		}
+	}
+
+	/**
+	 * Copy the content of a file and its padding to the archive.
+	 */
+	private ByteBuffer copy(Tar.Entry entry, ByteBuffer buffer) throws IOException, InterruptedException {
+		try(var channel = FileChannel.open(entry.file.toPath(), StandardOpenOption.READ)) {
+			long remaining = entry.size;
+			while(remaining > 0) {
+				if(!buffer.hasRemaining()) {
+					buffer = flush(buffer);
+				}
+
+				int limit = buffer.limit();
+				buffer.limit(buffer.position() + (int) Math.min(buffer.remaining(), remaining));
+				int read = channel.read(buffer);
+				buffer.limit(limit);
+				if(read == -1) {
+					throw new IOException("\"" + entry.file + "\" changed while being archived.");
+				}
+				remaining -= read;
+			}
+		}
+
+		int padding = (int) (Tar.pad(entry.size) - entry.size);
+		for(int i = 0 ; i < padding ; i++) {
+			if(!buffer.hasRemaining()) {
+				buffer = flush(buffer);
+			}
+			buffer.put((byte) 0);
+		}
+		return buffer;
+	}
+
+	private ByteBuffer flush(ByteBuffer buffer) throws InterruptedException, IOException {
+		if(!open) {
+			throw new ClosedChannelException();
+		}
+		filled.put(buffer.flip());
+		return free.take();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() throws IOException {
+		open = false;
+		producer.interrupt();
+		try {
+			producer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
@@ -0,0 +1,282 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.logging.Logger;
+
+/**
+ * Writable channel extracting a {@link Tar} archive to a directory as it is written,
+ * so a decrypted directory never needs a temporary archive.<br>
+ * Only directories and regular files are extracted. Every entry must be inside
+ * a single top-level directory which doesn't exist in the destination yet, and
+ * files are never overwritten, so an archive can't replace the receiver's files.
+ * @author Jérémy LAMBERT
+ *
+ */
+final class ArchiveExtractor implements WritableByteChannel {
+
+	private static final int MAX_PAX_LENGTH = 1024 * 1024;
+
+	private enum State { HEADER, PAX, CONTENT, SKIP, END }
+
+	private final Path root;
+	private Path top; // The single top-level directory of the archive
+	private final ByteBuffer header;
+	private final ArrayDeque<Tar.Entry> directories;
+
+	private State state;
+	private long remaining;
+	private int padding;
+	private ByteBuffer pax;
+	private Tar.Entry extended;
+	private Tar.Entry entry;
+	private FileChannel file;
+	private boolean open;
+
+	/**
+	 * Create a new instance of ArchiveExtractor.
+	 * @param destination the existing directory to extract the archive to
+	 */
+	ArchiveExtractor(File destination) {
+		this.root = destination.toPath().toAbsolutePath().normalize();
+		this.header = ByteBuffer.allocate(Tar.BLOCK_SIZE);
+		this.directories = new ArrayDeque<>();
+		this.state = State.HEADER;
+		this.open = true;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		if(!open) {
+			throw new ClosedChannelException();
+		}
+
+		int length = src.remaining();
+		while(src.hasRemaining()) {
+			switch(state) {
+			case HEADER:
+				transfer(src, header);
+				if(!header.hasRemaining()) {
+					readHeader();
+				}
+				break;
+			case PAX:
+				transfer(src, pax);
+				if(!pax.hasRemaining()) {
+					extended = new Tar.Entry(null, null, false, -1, 0, 0);
+					Tar.parsePax(pax.array(), extended);
+					pax = null;
+					skip(padding);
+				}
+				break;
+			case CONTENT:
+				writeContent(src);
+				break;
+			case SKIP:
+				int skipped = (int) Math.min(src.remaining(), remaining);
+				src.position(src.position() + skipped);
+				remaining -= skipped;
+				if(remaining == 0) {
+					state = State.HEADER;
+				}
+				break;
+			case END:
+				src.position(src.limit()); // Trailing blocks
+				break;
+			}
+		}
+		return length;
+	}
+
+	private void readHeader() throws IOException {
+		var block = header.array();
+		header.clear();
+		var parsed = Tar.readHeader(block);
+		if(parsed == null) {
+			finish();
+			return;
+		}
+
+		if(extended != null) {
+			if(extended.path != null) {
+				parsed.path = extended.path;
+			}
+			if(extended.size >= 0) {
+				parsed.size = extended.size;
+			}
+			extended = null;
+		}
+
+		padding = (int) (Tar.pad(parsed.size) - parsed.size);
+		switch(parsed.type) {
+		case Tar.TYPE_PAX:
+			if(parsed.size > MAX_PAX_LENGTH) {
+				throw new InvalidFormatException("Archive extended header is too long.");
+			}
+			pax = ByteBuffer.allocate((int) parsed.size);
+			state = pax.hasRemaining() ? State.PAX : State.HEADER;
+			break;
+		case Tar.TYPE_DIRECTORY:
+			var directory = resolve(parsed.path);
+			Files.createDirectories(directory);
+			directories.push(new Tar.Entry(directory.toFile(), parsed.path, true, 0, parsed.mode, parsed.modified));
+			skip(Tar.pad(parsed.size));
+			break;
+		case Tar.TYPE_FILE:
+		case Tar.TYPE_FILE_OLD:
+			var path = resolve(parsed.path);
+			Files.createDirectories(path.getParent());
+			if(path.equals(top)) {
+				throw new InvalidFormatException("Invalid archive entry path: " + parsed.path);
+			}
+			file = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+			entry = new Tar.Entry(path.toFile(), parsed.path, false, parsed.size, parsed.mode, parsed.modified);
+			remaining = parsed.size;
+			state = State.CONTENT;
+			if(remaining == 0) {
+				closeFile();
+			}
+			break;
+		default:
+			if(parsed.type != Tar.TYPE_PAX_GLOBAL) {
+				Logger.getGlobal().warning("Skipping \"" + parsed.path + "\" while extracting, not a regular file.");
+			}
+			skip(Tar.pad(parsed.size));
+			break;
+		}
+	}
+
+	private void writeContent(ByteBuffer src) throws IOException {
+		int limit = src.limit();
+		src.limit(src.position() + (int) Math.min(src.remaining(), remaining));
+		try {
+			while(src.hasRemaining()) {
+				remaining -= file.write(src);
+			}
+		} finally {
+			src.limit(limit);
+		}
+
+		if(remaining == 0) {
+			closeFile();
+		}
+	}
+
+	private void closeFile() throws IOException {
+		file.close();
+		file = null;
+		restore(entry);
+		entry = null;
+		skip(padding);
+	}
+
+	private void skip(long length) {
+		remaining = length;
+		state = length > 0 ? State.SKIP : State.HEADER;
+	}
+
+	/**
+	 * Resolve the path of an entry in the destination directory.
+	 * The first entry sets the top-level directory of the archive.
+	 * @throws InvalidFormatException if the entry would be extracted outside of the top-level directory
+	 * @throws FileAlreadyExistsException if the top-level directory already exists in the destination
+	 */
+	private Path resolve(String path) throws IOException {
+		if(path.isEmpty() || path.startsWith("/") || path.contains("\\")) {
+			throw new InvalidFormatException("Invalid archive entry path: " + path);
+		}
+		var resolved = root.resolve(path).normalize();
+
+		if(top == null) {
+			var first = root.resolve(path.split("/", 2)[0]).normalize();
+			if(!root.equals(first.getParent())) {
+				throw new InvalidFormatException("Invalid archive entry path: " + path);
+			}
+			if(Files.exists(first, LinkOption.NOFOLLOW_LINKS)) {
+				throw new FileAlreadyExistsException(first.toString(), null, "Extracting the archive would overwrite it.");
+			}
+			top = first;
+		}
+
+		if(!resolved.startsWith(top)) {
+			throw new InvalidFormatException("Invalid archive entry path: " + path);
+		}
+		return resolved;
+	}
+
+	private void restore(Tar.Entry entry) {
+		entry.file.setLastModified(entry.modified);
+		if((entry.mode & 0100) != 0) {
+			entry.file.setExecutable(true, false);
+		}
+	}
+
+	/**
+	 * Restore the modification time of the directories, once
+	 * their content has been extracted.
+	 */
+	private void finish() {
+		state = State.END;
+		while(!directories.isEmpty()) {
+			restore(directories.pop());
+		}
+	}
+
+	/**
+	 * Get if the end of the archive has been reached.
+	 * @return true if complete
+	 */
+	boolean isComplete() {
+		return state == State.END;
+	}
+
+	private static void transfer(ByteBuffer src, ByteBuffer dst) {
+		int length = Math.min(src.remaining(), dst.remaining());
+		int limit = src.limit();
+		src.limit(src.position() + length);
+		dst.put(src);
+		src.limit(limit);
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() throws IOException {
+		open = false;
+		if(file != null) {
+			file.close();
+			file = null;
+		}
+	}
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Reads a channel block by block without copying the data
+ * to the Java heap.<br>
+ * Blocks are read into direct buffers, or sliced from memory-mapped windows
+ * when the channel is a file channel and the remaining input is larger
+ * than the mapped threshold.
+ * @author Jérémy LAMBERT
+ *
+ * @see #setBlockSize(int)
+ * @see #setMappedThreshold(long)
+ */
+public final class BlockReader {
+
+	private static final int DEFAULT_BLOCK_SIZE = 1024 * 1024;
+	private static final long MAPPED_WINDOW_SIZE = 64 * 1024 * 1024;
+
+	private static int defaultBlockSize = DEFAULT_BLOCK_SIZE;
+	private static long mappedThreshold = 0;
+
+	private final ReadableByteChannel channel;
+	private final int blockSize;
+	private final boolean mapped;
+	private long position;
+	private MappedByteBuffer window;
+
+	/**
+	 * Create a new instance of BlockReader, reading from the current
+	 * position of the given channel.
+	 * @param channel the channel to read from
+	 * @param blockSize the maximum length of a block
+	 * @throws IOException
+	 */
+	BlockReader(ReadableByteChannel channel, int blockSize) throws IOException {
+		this.channel = channel;
+		this.blockSize = blockSize;
+		if(channel instanceof FileChannel) {
+			var file = (FileChannel) channel;
+			this.position = file.position();
+			long threshold = getMappedThreshold();
+			this.mapped = threshold > 0 && file.size() - position >= threshold;
+		} else {
+			this.mapped = false;
+		}
+	}
+
+	/**
+	 * Get if blocks are sliced from memory-mapped windows. If true,
+	 * no buffer needs to be given to {@link #read(ByteBuffer)}.
+	 * @return mapped
+	 */
+	final boolean isMapped() {
+		return mapped;
+	}
+
+	/**
+	 * Read the next block. The returned buffer is only shorter than the block
+	 * size at the end of the file, and empty once the end has been reached.
+	 * @param buffer the buffer to fill, with a capacity of at least the block size.
+	 * Ignored if the reader is mapped
+	 * @return a buffer ready to be read, either the given one or a slice of a mapped window
+	 * @throws IOException
+	 */
+	final ByteBuffer read(ByteBuffer buffer) throws IOException {
+		if(mapped) {
+			return slice();
+		}
+
+		buffer.clear().limit(blockSize);
+		while(buffer.hasRemaining() && channel.read(buffer) != -1);
+		return buffer.flip();
+	}
+
+	private ByteBuffer slice() throws IOException {
+		if(window == null || window.remaining() < blockSize) {
+			var file = (FileChannel) channel;
+			long length = Math.min(Math.max(MAPPED_WINDOW_SIZE, blockSize), file.size() - position);
+			window = file.map(FileChannel.MapMode.READ_ONLY, position, length);
+		}
+
+		int length = Math.min(blockSize, window.remaining());
+		var block = window.slice().limit(length);
+		window.position(window.position() + length);
+		position += length;
+		return block;
+	}
+
+	/**
+	 * Set the length of the blocks used to read files when hashing them.
+	 * @param blockSize the length in bytes, zero or less to use the default (1 MiB)
+	 */
+	public static final synchronized void setBlockSize(int blockSize) {
+		BlockReader.defaultBlockSize = blockSize > 0 ? blockSize : DEFAULT_BLOCK_SIZE;
+	}
+
+	/**
+	 * Get the length of the blocks used to read files when hashing them.
+	 * @return the block size in bytes
+	 */
+	public static final synchronized int getBlockSize() {
+		return defaultBlockSize;
+	}
+
+	/**
+	 * Set the input size from which files are memory-mapped instead of
+	 * being read into direct buffers.
+	 * @param mappedThreshold the size in bytes, zero or less to never map files
+	 */
+	public static final synchronized void setMappedThreshold(long mappedThreshold) {
+		BlockReader.mappedThreshold = Math.max(0, mappedThreshold);
+	}
+
+	/**
+	 * Get the input size from which files are memory-mapped.
+	 * @return the size in bytes, zero if files are never mapped
+	 */
+	public static final synchronized long getMappedThreshold() {
+		return mappedThreshold;
+	}
+
+}
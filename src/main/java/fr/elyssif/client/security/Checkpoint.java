@@ -0,0 +1,348 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.NoSuchAlgorithmException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.Cipher;
+
+import fr.elyssif.client.Config;
+import fr.elyssif.client.FileUtils;
+
+/**
+ * File recording how many chunks of a chunked job have been
+ * written to its destination, so an interrupted job can resume after
+ * the last recorded chunk instead of starting over.<br>
+ * Layout (big-endian):
+ * <pre>
+ * version         4 bytes
+ * mode            1 byte   <code>Cipher.ENCRYPT_MODE</code> or <code>Cipher.DECRYPT_MODE</code>
+ * source          UTF      source file identity, see {@link DigestCache#key(File)}
+ * key id          UTF      SHA-256 of the key given to the job
+ * chunks          8 bytes  amount of chunks written
+ * output position 8 bytes  length of the destination once these chunks are written
+ * file key        2 bytes length, then the symmetric file key (encryption only)
+ * </pre>
+ * When encrypting, the symmetric file key has to be stored because the
+ * ephemeral private key is not kept. Encryption checkpoints are therefore never
+ * written beside the destination, which may be a removable or synchronized drive:
+ * they are stored in the program's directory, readable by the owner only, and
+ * named after a hash of the destination path. They are purged when the user
+ * logs out and expire after a while, see {@link #purge(long)}. Without a program directory,
+ * encryptions cannot be resumed. Decryption checkpoints hold no secret and are
+ * written beside the destination.<br>
+ * The checkpoint is deleted as soon as the job completes.<br>
+ * The destination is flushed to the disk before each save, so a recorded
+ * chunk is never lost.
+ * @author Jérémy LAMBERT
+ *
+ */
+final class Checkpoint {
+
+	static final String EXTENSION = ".checkpoint";
+	static final long SAVE_INTERVAL = 64 * 1024 * 1024;
+	private static final String DIRECTORY_NAME = "checkpoints";
+	private static final int VERSION = 1;
+
+	private final File file;
+	private final int mode;
+	private final String source;
+	private final String keyId;
+	private final byte[] fileKey;
+
+	private long chunks;
+	private long outputPosition;
+	private long unsaved;
+	private FileChannel output;
+
+	private Checkpoint(File file, int mode, String source, String keyId, byte[] fileKey) {
+		this.file = file;
+		this.mode = mode;
+		this.source = source;
+		this.keyId = keyId;
+		this.fileKey = fileKey;
+	}
+
+	/**
+	 * Create a new checkpoint for a job starting from scratch.
+	 * Nothing is written until the first save.
+	 * @param destination the destination of the job
+	 * @param mode <code>Cipher.ENCRYPT_MODE</code> or <code>Cipher.DECRYPT_MODE</code>
+	 * @param source the source identity
+	 * @param keyId the key id, see {@link #keyId(String)}
+	 * @param fileKey the symmetric file key when encrypting, null otherwise
+	 * @param headerLength the length of the file header written to the destination, zero when decrypting
+	 * @return the checkpoint
+	 */
+	static Checkpoint create(File destination, int mode, String source, String keyId, byte[] fileKey, long headerLength) {
+		var checkpoint = new Checkpoint(getFile(destination, mode), mode, source, keyId, fileKey);
+		checkpoint.outputPosition = headerLength;
+		return checkpoint;
+	}
+
+	/**
+	 * Load the checkpoint of the given destination if it matches the given job.
+	 * A checkpoint of another job is deleted.
+	 * @param destination the destination of the job
+	 * @param mode <code>Cipher.ENCRYPT_MODE</code> or <code>Cipher.DECRYPT_MODE</code>
+	 * @param source the source identity
+	 * @param keyId the key id, see {@link #keyId(String)}
+	 * @return the checkpoint, null if there is no matching checkpoint
+	 */
+	static Checkpoint load(File destination, int mode, String source, String keyId) {
+		var file = getFile(destination, mode);
+		if(file == null || !file.exists()) {
+			return null;
+		}
+
+		try(var input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(input.readInt() == VERSION && input.readUnsignedByte() == mode
+					&& source.equals(input.readUTF()) && keyId.equals(input.readUTF())) {
+
+				long chunks = input.readLong();
+				long outputPosition = input.readLong();
+				var fileKey = new byte[input.readUnsignedShort()];
+				input.readFully(fileKey);
+
+				if(destination.length() >= outputPosition) {
+					var checkpoint = new Checkpoint(file, mode, source, keyId, fileKey.length == 0 ? null : fileKey);
+					checkpoint.chunks = chunks;
+					checkpoint.outputPosition = outputPosition;
+					return checkpoint;
+				}
+			}
+		} catch (IOException e) {
+			Logger.getGlobal().log(Level.WARNING, "Couldn't read checkpoint, starting over.", e);
+		}
+
+		file.delete();
+		return null;
+	}
+
+	/**
+	 * Get the checkpoint file of the given destination.
+	 * @param destination the destination of the job
+	 * @param mode <code>Cipher.ENCRYPT_MODE</code> or <code>Cipher.DECRYPT_MODE</code>
+	 * @return the checkpoint file, null if encryption checkpoints cannot be stored
+	 */
+	static File getFile(File destination, int mode) {
+		if(mode == Cipher.DECRYPT_MODE) {
+			return new File(destination.getPath() + EXTENSION);
+		}
+
+		var directory = getDirectory();
+		if(directory == null) {
+			return null;
+		}
+		try {
+			String path = destination.getAbsoluteFile().toPath().normalize().toString();
+			return new File(directory, Hash.toHex(Providers.digest(Hash.SHA256).digest(path.getBytes(StandardCharsets.UTF_8))) + EXTENSION);
+		} catch (NoSuchAlgorithmException e) {
+			Logger.getGlobal().log(Level.WARNING, "Couldn't name encryption checkpoint.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Check if a job writing to the given destination left a checkpoint.
+	 * @param destination the destination of the job
+	 * @return true if there is a checkpoint
+	 */
+	static boolean exists(File destination) {
+		for(int mode : new int[] { Cipher.ENCRYPT_MODE, Cipher.DECRYPT_MODE }) {
+			var file = getFile(destination, mode);
+			if(file != null && file.exists()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Delete the checkpoint left by a job writing to the given destination, if any.
+	 * @param destination the destination of the job
+	 */
+	static void discard(File destination) {
+		for(int mode : new int[] { Cipher.ENCRYPT_MODE, Cipher.DECRYPT_MODE }) {
+			var file = getFile(destination, mode);
+			if(file != null) {
+				file.delete();
+			}
+		}
+	}
+
+	/**
+	 * Delete the encryption checkpoints that haven't been saved for the given time.<br>
+	 * Their job cannot be resumed anymore.
+	 * @param maxAge the age in milliseconds, zero or less deletes every encryption checkpoint
+	 */
+	static void purge(long maxAge) {
+		var programDirectory = Config.getInstance().getProgramDirectory();
+		if(programDirectory == null) {
+			return;
+		}
+
+		var files = new File(programDirectory, DIRECTORY_NAME).listFiles((dir, name) -> name.endsWith(EXTENSION) || name.endsWith(EXTENSION + ".tmp"));
+		if(files == null) {
+			return;
+		}
+
+		long limit = System.currentTimeMillis() - maxAge;
+		for(var file : files) {
+			if((maxAge <= 0 || file.lastModified() < limit) && !file.delete()) {
+				Logger.getGlobal().warning("Couldn't delete encryption checkpoint " + file.getName());
+			}
+		}
+	}
+
+	/**
+	 * Get the directory of the encryption checkpoints, creating it if needed.
+	 * @return the directory, null if it cannot be created
+	 */
+	private static File getDirectory() {
+		var programDirectory = Config.getInstance().getProgramDirectory();
+		if(programDirectory == null) {
+			return null;
+		}
+
+		var directory = new File(programDirectory, DIRECTORY_NAME);
+		try {
+			if(!directory.isDirectory()) {
+				FileUtils.createRestrictedDirectory(directory.toPath());
+			}
+			return directory;
+		} catch (IOException e) {
+			Logger.getGlobal().log(Level.WARNING, "Couldn't create checkpoint directory, encryptions cannot be resumed.", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Identify a key without storing it.
+	 * @param key the hex representation of the key
+	 * @return the hex SHA-256 of the key
+	 * @throws NoSuchAlgorithmException
+	 */
+	static String keyId(String key) throws NoSuchAlgorithmException {
+		return Hash.toHex(Providers.digest(Hash.SHA256).digest(key.toLowerCase().getBytes(StandardCharsets.US_ASCII)));
+	}
+
+	/**
+	 * Set the channel of the destination, flushed before each save.
+	 * @param output the destination channel
+	 */
+	final void attach(FileChannel output) {
+		this.output = output;
+	}
+
+	final long getChunks() {
+		return chunks;
+	}
+
+	final long getOutputPosition() {
+		return outputPosition;
+	}
+
+	final byte[] getFileKey() {
+		return fileKey;
+	}
+
+	/**
+	 * Record a chunk written to the destination, saving the checkpoint
+	 * once enough data has been written since the last save.
+	 * @param written the length of the chunk in the destination
+	 * @throws IOException
+	 */
+	void chunkWritten(int written) throws IOException {
+		chunks++;
+		outputPosition += written;
+		unsaved += written;
+		if(unsaved >= SAVE_INTERVAL) {
+			save();
+		}
+	}
+
+	/**
+	 * Flush the destination and save the checkpoint if chunks have been written.
+	 * @throws IOException
+	 */
+	void save() throws IOException {
+		if(chunks == 0 || file == null) {
+			return;
+		}
+
+		if(output != null) {
+			output.force(false);
+		}
+
+		var temp = new File(file.getPath() + ".tmp");
+		if(fileKey != null) {
+			// Restrict the file before the key is written to it
+			FileUtils.createRestrictedFile(temp.toPath());
+		}
+		try(var stream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+			stream.writeInt(VERSION);
+			stream.writeByte(mode);
+			stream.writeUTF(source);
+			stream.writeUTF(keyId);
+			stream.writeLong(chunks);
+			stream.writeLong(outputPosition);
+			stream.writeShort(fileKey == null ? 0 : fileKey.length);
+			if(fileKey != null) {
+				stream.write(fileKey);
+			}
+		}
+		Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		unsaved = 0;
+	}
+
+	/**
+	 * Save the checkpoint after a failure, logging errors instead of throwing them.
+	 */
+	void saveQuietly() {
+		try {
+			save();
+		} catch (IOException e) {
+			Logger.getGlobal().log(Level.WARNING, "Couldn't save checkpoint.", e);
+		}
+	}
+
+	/**
+	 * Delete the checkpoint file.
+	 */
+	void delete() {
+		if(file != null) {
+			file.delete();
+		}
+	}
+
+}
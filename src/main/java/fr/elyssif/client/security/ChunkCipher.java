@@ -0,0 +1,112 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.NoSuchAlgorithmException;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+
+/**
+ * Seals and opens individual chunks of the chunked format using AES-GCM.<br>
+ * The nonce of a chunk is derived from its index and from a flag telling if
+ * it is the last chunk, so chunks cannot be reordered, dropped or truncated
+ * without failing authentication. The key is unique per file, which makes
+ * these deterministic nonces safe.<br>
+ * Instances are not thread-safe.
+ * @author Jérémy LAMBERT
+ *
+ * @see FileHeader
+ */
+final class ChunkCipher {
+
+	static final int TAG_LENGTH = 16;
+	private static final int NONCE_LENGTH = 12;
+	static final String TRANSFORMATION = "AES/GCM/NoPadding";
+
+	private final SecretKey key;
+	private final byte[] aad;
+	private final Cipher cipher;
+	private final byte[] nonce;
+
+	/**
+	 * Create a new instance of ChunkCipher.
+	 * @param key the symmetric file key
+	 * @param aad the additional authenticated data bound to every chunk (the file header)
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchPaddingException
+	 */
+	ChunkCipher(SecretKey key, byte[] aad) throws NoSuchAlgorithmException, NoSuchPaddingException {
+		this.key = key;
+		this.aad = aad;
+		this.cipher = Providers.cipher();
+		this.nonce = new byte[NONCE_LENGTH];
+	}
+
+	/**
+	 * Encrypt and authenticate a chunk.
+	 * @param index the index of the chunk in the file
+	 * @param last true if this is the last chunk of the file
+	 * @param input the plaintext, consumed entirely
+	 * @param output the destination buffer, must have room for <code>input.remaining() + TAG_LENGTH</code> bytes.
+	 * Flipped and ready to be written when this method returns
+	 * @return the length of the sealed chunk
+	 * @throws GeneralSecurityException
+	 */
+	int seal(long index, boolean last, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+		init(Cipher.ENCRYPT_MODE, index, last);
+		return doFinal(input, output);
+	}
+
+	/**
+	 * Verify and decrypt a chunk.
+	 * @param index the index of the chunk in the file
+	 * @param last true if this is the last chunk of the file
+	 * @param input the sealed chunk, tag included, consumed entirely
+	 * @param output the destination buffer, must have room for <code>input.remaining() - TAG_LENGTH</code> bytes.
+	 * Flipped and ready to be written when this method returns
+	 * @return the length of the plaintext
+	 * @throws GeneralSecurityException if the chunk has been tampered with
+	 */
+	int open(long index, boolean last, ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+		init(Cipher.DECRYPT_MODE, index, last);
+		return doFinal(input, output);
+	}
+
+	private int doFinal(ByteBuffer input, ByteBuffer output) throws GeneralSecurityException {
+		output.clear();
+		int length = cipher.doFinal(input, output);
+		output.flip();
+		return length;
+	}
+
+	private void init(int mode, long index, boolean last) throws GeneralSecurityException {
+		for(int i = 0 ; i < Long.BYTES ; i++) {
+			nonce[i] = (byte) (index >>> (8 * (Long.BYTES - 1 - i)));
+		}
+		nonce[NONCE_LENGTH - 1] = (byte) (last ? 1 : 0);
+
+		cipher.init(mode, key, new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+		cipher.updateAAD(aad);
+	}
+
+}
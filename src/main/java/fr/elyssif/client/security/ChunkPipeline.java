@@ -0,0 +1,345 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.SecretKey;
+
+/**
+ * Seals or opens the chunks of a file, spreading them across an executor
+ * while still writing them out in order.<br>
+ * The reading thread fills a bounded window of slots, each slot owning its
+ * direct buffers and its own {@link ChunkCipher}, so no allocation happens once
+ * the window is full and the data never goes through the Java heap.<br>
+ * Writing is a stage of its own: a writer thread takes the processed chunks
+ * from a bounded queue, so reading, cipher work and writing all overlap.
+ * @author Jérémy LAMBERT
+ *
+ * @see Crypter#setParallelism(int)
+ */
+final class ChunkPipeline {
+
+	private static final Future<Slot> STOP = CompletableFuture.completedFuture(null);
+
+	private final int mode;
+	private final SecretKey key;
+	private final byte[] aad;
+	private final int chunkSize;
+	private final ExecutorService executor;
+	private final int window;
+	private MessageDigest inputDigest;
+
+	/**
+	 * Create a new instance of ChunkPipeline.
+	 * @param mode <code>Cipher.ENCRYPT_MODE</code> or <code>Cipher.DECRYPT_MODE</code>
+	 * @param key the symmetric file key
+	 * @param aad the serialized file header
+	 * @param chunkSize the plaintext length of a full chunk
+	 * @param executor the executor sealing or opening the chunks, null to process them on the calling thread
+	 * @param window the maximum amount of chunks in flight
+	 */
+	ChunkPipeline(int mode, SecretKey key, byte[] aad, int chunkSize, ExecutorService executor, int window) {
+		this.mode = mode;
+		this.key = key;
+		this.aad = aad;
+		this.chunkSize = chunkSize;
+		this.executor = executor;
+		this.window = executor == null ? 2 : Math.max(2, window);
+	}
+
+	/**
+	 * Set a digest updated with the input as it is read, so the input
+	 * can be hashed without reading it again.
+	 * @param inputDigest the digest, null to disable
+	 */
+	void setInputDigest(MessageDigest inputDigest) {
+		this.inputDigest = inputDigest;
+	}
+
+	/**
+	 * Process every chunk from the current position of the input channel
+	 * and write the result to the output channel.
+	 * @param input the channel positioned on the chunk at the given index
+	 * @param output the destination channel
+	 * @param firstIndex the index of the first chunk to process, non-zero when resuming
+	 * @param job the job, checked for cancellation before each chunk is read
+	 * @param listener notified of each written chunk
+	 * @throws IOException
+	 * @throws GeneralSecurityException if a chunk fails authentication
+	 * @throws java.util.concurrent.CancellationException if the job is cancelled
+	 */
+	void run(ReadableByteChannel input, WritableByteChannel output, long firstIndex, Job job, Listener listener) throws IOException, GeneralSecurityException {
+		int inputSize = mode == Cipher.ENCRYPT_MODE ? chunkSize : chunkSize + ChunkCipher.TAG_LENGTH;
+		var reader = new BlockReader(input, inputSize);
+		var writer = new Writer(output, listener);
+		var thread = new Thread(writer, "chunk-writer");
+		thread.setDaemon(true);
+		thread.start();
+
+		int slots = 0;
+		long index = firstIndex;
+		boolean last = false;
+		boolean complete = false;
+
+		try {
+			while(!last) {
+				job.checkCancelled();
+				writer.checkError();
+				Slot slot = writer.free.poll();
+				if(slot == null) {
+					if(slots < window) {
+						slot = new Slot(!reader.isMapped());
+						slots++;
+					} else {
+						slot = writer.takeFree();
+					}
+				}
+
+				slot.data = reader.read(slot.input);
+				if(inputDigest != null) {
+					inputDigest.update(slot.data.duplicate());
+				}
+				int read = slot.data.remaining();
+				if(mode == Cipher.DECRYPT_MODE && read < ChunkCipher.TAG_LENGTH) {
+					throw new InvalidFormatException("Encrypted file is truncated.");
+				}
+				last = read < inputSize; // The last chunk is always short, possibly empty
+				slot.index = index++;
+				slot.last = last;
+				slot.read = read;
+
+				if(executor == null) {
+					writer.submit(CompletableFuture.completedFuture(slot.process()));
+				} else {
+					writer.submit(executor.submit(slot::process));
+				}
+			}
+			complete = true;
+		} finally {
+			writer.stop(!complete);
+			join(thread);
+		}
+		writer.checkError();
+	}
+
+	/**
+	 * Wait for the writer thread to exit, so the listener is never notified
+	 * once the pipeline has returned.
+	 */
+	private static void join(Thread thread) {
+		boolean interrupted = false;
+		while(true) {
+			try {
+				thread.join();
+				break;
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if(interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static Slot await(Future<Slot> future) throws IOException, GeneralSecurityException {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a chunk.");
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if(cause instanceof GeneralSecurityException) {
+				throw (GeneralSecurityException) cause;
+			} else if(cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+	}
+
+	/**
+	 * Stage writing the processed chunks in order on its own thread, so the
+	 * reading thread can fill the next slots while the previous ones are written.<br>
+	 * Written slots are handed back through the free queue. After a failure,
+	 * the remaining chunks are drained without being written so the reading
+	 * thread is never left waiting for a slot.
+	 */
+	private final class Writer implements Runnable {
+
+		private final WritableByteChannel output;
+		private final Listener listener;
+		private final BlockingQueue<Future<Slot>> pending;
+		private final BlockingQueue<Slot> free;
+		private volatile Throwable error;
+		private volatile boolean done;
+
+		Writer(WritableByteChannel output, Listener listener) {
+			this.output = output;
+			this.listener = listener;
+			this.pending = new ArrayBlockingQueue<>(window + 1); // Slots in flight and the stop marker
+			this.free = new ArrayBlockingQueue<>(window);
+		}
+
+		void submit(Future<Slot> future) {
+			pending.add(future);
+		}
+
+		/**
+		 * Stop the writer once the chunks already submitted have been written.
+		 * @param abort true to discard the chunks not processed yet
+		 */
+		void stop(boolean abort) {
+			if(abort) {
+				done = true;
+				for(var future : pending) {
+					future.cancel(false);
+				}
+			}
+			pending.add(STOP);
+		}
+
+		/**
+		 * Wait for a slot to be written and handed back.
+		 */
+		Slot takeFree() throws IOException, GeneralSecurityException {
+			try {
+				Slot slot;
+				while((slot = free.poll(100, TimeUnit.MILLISECONDS)) == null) {
+					checkError();
+				}
+				return slot;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted while waiting for a chunk.");
+			}
+		}
+
+		/**
+		 * Rethrow the error which stopped the writer, if any.
+		 */
+		void checkError() throws IOException, GeneralSecurityException {
+			Throwable e = error;
+			if(e instanceof IOException) {
+				throw (IOException) e;
+			} else if(e instanceof GeneralSecurityException) {
+				throw (GeneralSecurityException) e;
+			} else if(e instanceof RuntimeException) {
+				throw (RuntimeException) e;
+			} else if(e instanceof Error) {
+				throw (Error) e;
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				Future<Slot> future;
+				while((future = pending.take()) != STOP) {
+					if(done) {
+						continue;
+					}
+
+					try {
+						var slot = await(future);
+						write(slot);
+						free.add(slot);
+					} catch (Throwable e) {
+						error = e;
+						done = true;
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+
+		private void write(Slot slot) throws IOException {
+			int written = slot.output.remaining();
+			while(slot.output.hasRemaining()) {
+				output.write(slot.output);
+			}
+			listener.chunkWritten(slot.read, written);
+		}
+
+	}
+
+	/**
+	 * Listener notified each time a chunk has been entirely written, in order.
+	 */
+	@FunctionalInterface
+	interface Listener {
+
+		/**
+		 * @param read the amount of input bytes consumed by the chunk
+		 * @param written the amount of bytes written to the output
+		 * @throws IOException
+		 */
+		void chunkWritten(int read, int written) throws IOException;
+
+	}
+
+	/**
+	 * A reusable pair of direct buffers with its own cipher instance.
+	 */
+	private final class Slot {
+
+		private final ChunkCipher cipher;
+		private final ByteBuffer input;
+		private final ByteBuffer output;
+		private ByteBuffer data;
+		private long index;
+		private boolean last;
+		private int read;
+
+		/**
+		 * @param allocateInput false if the input is sliced from mapped windows
+		 */
+		Slot(boolean allocateInput) throws GeneralSecurityException {
+			cipher = new ChunkCipher(key, aad);
+			input = allocateInput ? ByteBuffer.allocateDirect(chunkSize + ChunkCipher.TAG_LENGTH) : null;
+			output = ByteBuffer.allocateDirect(chunkSize + ChunkCipher.TAG_LENGTH);
+		}
+
+		Slot process() throws GeneralSecurityException {
+			if(mode == Cipher.ENCRYPT_MODE) {
+				cipher.seal(index, last, data, output);
+			} else {
+				cipher.open(index, last, data, output);
+			}
+			return this;
+		}
+
+	}
+
+}
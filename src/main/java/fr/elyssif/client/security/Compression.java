@@ -0,0 +1,106 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fr.elyssif.client.Config;
+
+/**
+ * Decides if the content of files is worth compressing before encryption.<br>
+ * A few samples are read across the largest files and their byte entropy is
+ * computed: already compressed data (archives, videos, images) is close to
+ * 8 bits per byte and is left as is, so no time is wasted deflating it.
+ * @author Jérémy LAMBERT
+ *
+ * @see DeflateChannel
+ */
+final class Compression {
+
+	private static final double MAX_ENTROPY = 7.5; // Bits per byte
+	private static final int SAMPLE_LENGTH = 16 * 1024;
+	private static final int SAMPLES_PER_FILE = 4;
+	private static final int MAX_SAMPLED_FILES = 8;
+
+	private Compression() {}
+
+	/**
+	 * Sample the given files and check if their content is compressible.
+	 * @param files the files to sample
+	 * @return true if the content should be compressed
+	 */
+	static boolean isCompressible(List<File> files) {
+		var sampled = new ArrayList<>(files);
+		sampled.sort(Comparator.comparingLong(File::length).reversed());
+
+		var histogram = new long[256];
+		long total = 0;
+		var buffer = ByteBuffer.allocate(SAMPLE_LENGTH);
+		for(var file : sampled.subList(0, Math.min(MAX_SAMPLED_FILES, sampled.size()))) {
+			try(var channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				long size = channel.size();
+				long step = Math.max(SAMPLE_LENGTH, size / SAMPLES_PER_FILE);
+				for(long position = 0 ; position < size ; position += step) {
+					buffer.clear();
+					channel.read(buffer, position);
+					buffer.flip();
+					total += buffer.remaining();
+					while(buffer.hasRemaining()) {
+						histogram[buffer.get() & 0xFF]++;
+					}
+				}
+			} catch (IOException e) {
+				Logger.getGlobal().log(Level.WARNING, "Couldn't sample \"" + file + "\" for compression.", e);
+			}
+		}
+
+		if(total == 0) {
+			return true; // Only empty files or tar headers
+		}
+
+		double entropy = entropy(histogram, total);
+		if(Config.getInstance().isVerbose())
+			Logger.getGlobal().info("Sampled entropy: " + String.format("%.2f", entropy) + " bits per byte");
+		return entropy < MAX_ENTROPY;
+	}
+
+	/**
+	 * Compute the Shannon entropy of a byte histogram.
+	 * @return the entropy in bits per byte
+	 */
+	private static double entropy(long[] histogram, long total) {
+		double entropy = 0;
+		for(long count : histogram) {
+			if(count > 0) {
+				double probability = (double) count / total;
+				entropy -= probability * Math.log(probability);
+			}
+		}
+		return entropy / Math.log(2);
+	}
+
+}
@@ -17,51 +17,79 @@
  */
  package fr.elyssif.client.security;
 
-import java.io.Closeable;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.math.BigInteger;
-import java.security.InvalidKeyException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.GeneralSecurityException;
 import java.security.Key;
-import java.security.KeyFactory;
 import java.security.NoSuchAlgorithmException;
-import java.security.Security;
-import java.security.spec.ECPoint;
-import java.security.spec.ECPublicKeySpec;
+import java.security.PrivateKey;
+import java.security.MessageDigest;
+import java.security.PublicKey;
 import java.security.spec.InvalidKeySpecException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.crypto.Cipher;
 import javax.crypto.CipherOutputStream;
-import javax.crypto.NoSuchPaddingException;
-
-import org.bouncycastle.jce.ECNamedCurveTable;
-import org.bouncycastle.jce.ECPointUtil;
-import org.bouncycastle.jce.provider.BouncyCastleProvider;
-import org.bouncycastle.jce.spec.ECNamedCurveParameterSpec;
-import org.bouncycastle.jce.spec.ECNamedCurveSpec;
-import org.bouncycastle.jce.spec.ECParameterSpec;
-import org.bouncycastle.jce.spec.ECPrivateKeySpec;
-import org.bouncycastle.util.Arrays;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
 
+import fr.elyssif.client.Config;
+import fr.elyssif.client.callback.DecryptCallback;
 import fr.elyssif.client.callback.ErrorCallback;
+import fr.elyssif.client.callback.HashCallback;
 import fr.elyssif.client.callback.ProgressCallback;
 
 /**
- * Handles asynchronous encryption and decryption using elliptic curves (ECIES).
+ * Handles asynchronous encryption and decryption using elliptic curves.<br>
+ * Files are encrypted with the chunked format: a single ECDH key encapsulation
+ * over secp256k1 yields a symmetric key, then the content is split into
+ * fixed-size AES-GCM chunks. Memory usage is therefore constant whatever the
+ * size of the file and chunks are spread across a shared pool of worker threads.<br>
+ * Files encrypted with the legacy whole-file ECIES format can still be decrypted.<br>
+ * Jobs are run by the {@link IOScheduler}. Keys are parsed once and cached by the {@link CryptoContext}.<br>
+ * Jobs can be cancelled between two chunks. Chunked jobs record their progress
+ * in a {@link Checkpoint} so an interrupted job resumes where it stopped when run again
+ * with the same source, key and destination.<br>
+ * Directories are streamed through the pipeline as a {@link Tar} archive and
+ * extracted on the fly when decrypted, without temporary file.<br>
+ * If compression is enabled, content which isn't already compressed is deflated
+ * before encryption, as ciphertext cannot be compressed. Archive and compressed
+ * jobs cannot be resumed.
  * @author Jérémy LAMBERT
  * @author Mickaël PROUST
  *
+ * @see FileHeader
  */
 public class Crypter {
 
-	private static final String CURVE = "secp256k1";
+	private static final int LEGACY_BUFFER_LENGTH = 2048;
+
+	private static int parallelism = Runtime.getRuntime().availableProcessors();
+	private static int chunkSize = FileHeader.DEFAULT_CHUNK_SIZE;
+	private static ForkJoinPool pool;
+	private static boolean compression = false;
 
 	private File source;
-	private static final int BUFFER_LENGTH = 2048;
+	private String lookupToken;
 
 	/**
 	 * Create a new instance of Crypter.
@@ -69,108 +97,635 @@ public class Crypter {
 	 */
 	public Crypter (File source) {
 		this.source = source;
-		Security.addProvider(new BouncyCastleProvider());
 	}
 
-	private void process(String keyHex, int cipherMode, File destination, ProgressCallback progressCallback, Runnable callback, ErrorCallback failCallback) {
+	/**
+	 * Set the token written in the header of the files encrypted by this instance,
+	 * identifying the file on the server so it can be looked up without hashing it.
+	 * A resumed encryption keeps the token of its partial output.
+	 * @param lookupToken the token, at most 255 bytes once encoded. Null for none
+	 * @see #getLookupToken(File)
+	 */
+	public final void setLookupToken(String lookupToken) {
+		this.lookupToken = lookupToken;
+	}
 
-		new Thread(() -> {
-			try {
-				Key key = cipherMode == Cipher.ENCRYPT_MODE ? getPublicKey(keyHex) : getPrivateKey(keyHex);
+	/**
+	 * Set the amount of worker threads sealing or opening chunks in parallel.
+	 * @param parallelism the amount of threads, zero or less to use all available processors
+	 */
+	public static final synchronized void setParallelism(int parallelism) {
+		Crypter.parallelism = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+		if(pool != null) {
+			pool.shutdown(); // Running jobs keep their tasks, new jobs use a new pool
+			pool = null;
+		}
+	}
 
-				int read;
-				FileInputStream isr = null;
-				CipherOutputStream output = null;
-				var buffer = new byte[BUFFER_LENGTH];
-				try {
-					var cipher = Cipher.getInstance("ECIES");
-					isr = new FileInputStream(source);
-					final int total = isr.available();
-					int totalRead = 0;
-
-					cipher.init(cipherMode, key);
-					output = new CipherOutputStream(new FileOutputStream(destination), cipher);
-
-					while((read = isr.read(buffer)) != -1) {
-						output.write(Arrays.copyOf(buffer, read));
-						totalRead += read;
-						progressCallback.progress((double)totalRead / total);
-					}
+	/**
+	 * Get the amount of worker threads sealing or opening chunks in parallel.
+	 * @return parallelism
+	 */
+	public static final synchronized int getParallelism() {
+		return parallelism;
+	}
 
-					closeStream(output, failCallback);
-					output = null;
-					callback.run();
+	/**
+	 * Set the plaintext length of the chunks of newly encrypted files.
+	 * Decryption always uses the chunk size stored in the file header.
+	 * @param chunkSize the length in bytes, zero or less to use the default (64 KiB).
+	 * Capped to 16 MiB
+	 */
+	public static final synchronized void setChunkSize(int chunkSize) {
+		Crypter.chunkSize = chunkSize > 0 ? Math.min(chunkSize, FileHeader.MAX_CHUNK_SIZE) : FileHeader.DEFAULT_CHUNK_SIZE;
+	}
+
+	/**
+	 * Get the plaintext length of the chunks of newly encrypted files.
+	 * @return the chunk size in bytes
+	 */
+	public static final synchronized int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Enable or disable the compression of content before encryption.
+	 * Content which is already compressed is never compressed again.
+	 * Decryption always follows the file header.<br>
+	 * Compressed files are written as a single stream: their encryption and
+	 * decryption cannot be resumed and they cannot be opened for random access,
+	 * so compression is disabled by default.
+	 * @param compression true to enable compression
+	 */
+	public static final synchronized void setCompressionEnabled(boolean compression) {
+		Crypter.compression = compression;
+	}
 
-				} catch (IOException | NoSuchAlgorithmException | InvalidKeyException | NoSuchPaddingException e) {
-					Logger.getGlobal().log(Level.SEVERE, "Error while encrypting or decrypting file.", e);
-					failCallback.run(e);
-				} finally {
-					closeStream(isr, failCallback);
-					closeStream(output, failCallback);
+	/**
+	 * Get if content is compressed before encryption.
+	 * @return true if compression is enabled
+	 */
+	public static final synchronized boolean isCompressionEnabled() {
+		return compression;
+	}
+
+	/**
+	 * Start generating ephemeral keys in the background, so the next
+	 * encryptions don't wait for their key to be generated.
+	 * Call it as soon as an encryption is likely, while the user fills in a form for example.
+	 */
+	public static final void prepareEncryption() {
+		EphemeralKeyPool.getInstance().fill();
+	}
+
+	/**
+	 * Check if an interrupted job left a checkpoint for the given destination.
+	 * Running the same job again resumes it instead of starting over.
+	 * @param destination the output file of the job
+	 * @return true if the job can be resumed
+	 */
+	public static final boolean hasCheckpoint(File destination) {
+		return Checkpoint.exists(destination);
+	}
+
+	/**
+	 * Delete the checkpoint left by an interrupted job, if any.
+	 * @param destination the output file of the job
+	 */
+	public static final void discardCheckpoint(File destination) {
+		Checkpoint.discard(destination);
+	}
+
+	/**
+	 * Delete the checkpoints of interrupted encryptions, which hold their file key.<br>
+	 * Call it when the user logs out, and at startup to expire old ones.
+	 * @param maxAge the age in milliseconds above which checkpoints are deleted, zero deletes all of them
+	 */
+	public static final void purgeCheckpoints(long maxAge) {
+		Checkpoint.purge(maxAge);
+	}
+
+	/**
+	 * Read the lookup token from the header of the given encrypted file.
+	 * @param file the encrypted file
+	 * @return the token, null if the file doesn't carry any
+	 * @throws IOException
+	 * @see #setLookupToken(String)
+	 */
+	public static final String getLookupToken(File file) throws IOException {
+		if(!FileHeader.matches(file)) {
+			return null;
+		}
+		try(var input = new FileInputStream(file)) {
+			return FileHeader.read(input).getLookupToken();
+		}
+	}
+
+	/**
+	 * Check if the given encrypted file holds a directory. Such files
+	 * are decrypted to a directory instead of a file.
+	 * @param file the encrypted file
+	 * @return true if the file holds an archive of a directory
+	 * @throws IOException
+	 */
+	public static final boolean isArchive(File file) throws IOException {
+		if(!FileHeader.matches(file)) {
+			return false;
+		}
+		try(var input = new FileInputStream(file)) {
+			return FileHeader.read(input).isArchive();
+		}
+	}
+
+	private static synchronized ForkJoinPool getPool() {
+		if(pool == null) {
+			pool = new ForkJoinPool(parallelism);
+		}
+		return pool;
+	}
+
+	/**
+	 * @param keys the hex representations of the recipients' public keys, or of the private key
+	 * @param digestOutput true to compute the SHA-256 digest of the output while it is written
+	 * @param digestSource true to compute the SHA-256 digest of the source while it is decrypted
+	 */
+	private Job process(List<String> keys, int cipherMode, File destination, boolean digestOutput, boolean digestSource, ProgressCallback progressCallback, DecryptCallback callback, ErrorCallback failCallback) {
+		var job = new Job();
+
+		IOScheduler.submit(source, destination, () -> {
+			Key key = null;
+			var publicKeys = new ArrayList<PublicKey>();
+			String keyId;
+			try {
+				if(cipherMode == Cipher.ENCRYPT_MODE) {
+					for(var keyHex : keys) {
+						publicKeys.add((PublicKey) getPublicKey(keyHex));
+					}
+				} else {
+					key = getPrivateKey(keys.get(0));
 				}
+				keyId = Checkpoint.keyId(String.join(",", keys));
 			} catch (NoSuchAlgorithmException | InvalidKeySpecException e) {
 				Logger.getGlobal().log(Level.SEVERE, "Couldn't retrieve key from hex string.", e);
 				failCallback.run(e);
+				return;
 			}
-		}).start();
-	}
 
-	private void closeStream(Closeable stream, ErrorCallback failCallback) {
-		if(stream != null) {
+			byte[] digest = null;
+			byte[] sourceDigest = null;
 			try {
-				stream.close();
-			} catch (IOException e) {
-				Logger.getGlobal().log(Level.SEVERE, "Couldn't close stream.", e);
+				job.checkCancelled();
+				var md = digestOutput ? Providers.digest(Hash.SHA256) : null;
+				var sourceMd = digestSource ? Providers.digest(Hash.SHA256) : null;
+				var cache = DigestCache.getInstance();
+				String sourceKey = sourceMd != null && cache != null ? DigestCache.key(source) : null;
+				if(cipherMode == Cipher.ENCRYPT_MODE && source.isDirectory()) {
+					digest = encryptArchive(publicKeys, destination, md, job, progressCallback);
+				} else if(cipherMode == Cipher.ENCRYPT_MODE && !hasCheckpoint(destination) && shouldCompress(List.of(source))) {
+					digest = encryptCompressed(publicKeys, destination, md, job, progressCallback);
+				} else if(cipherMode == Cipher.ENCRYPT_MODE) {
+					digest = encryptChunks(publicKeys, keyId, destination, md, job, progressCallback);
+				} else if(FileHeader.matches(source)) {
+					digest = decryptChunks((PrivateKey) key, keyId, destination, md, sourceMd, job, progressCallback);
+				} else {
+					digest = decryptLegacy(key, destination, md, sourceMd, job, progressCallback);
+				}
+
+				if(digest != null && cache != null && destination.isFile()) {
+					cache.put(DigestCache.key(destination), digest);
+				}
+				if(sourceMd != null) {
+					sourceDigest = sourceMd.digest();
+					if(cache != null) {
+						cache.putIfUnchanged(source, sourceKey, sourceDigest);
+					}
+				}
+			} catch (CancellationException e) {
+				Logger.getGlobal().info("Encryption or decryption cancelled.");
+				failCallback.run(e);
+				return;
+			} catch (IOException | GeneralSecurityException e) {
+				Logger.getGlobal().log(Level.SEVERE, "Error while encrypting or decrypting file.", e);
 				failCallback.run(e);
+				return;
+			}
+
+			callback.run(digest, sourceDigest);
+		});
+
+		return job;
+	}
+
+	private byte[] encryptChunks(List<PublicKey> publicKeys, String keyId, File destination, MessageDigest md, Job job, ProgressCallback progressCallback) throws IOException, GeneralSecurityException {
+		String sourceKey = DigestCache.key(source);
+		var checkpoint = Checkpoint.load(destination, Cipher.ENCRYPT_MODE, sourceKey, keyId);
+
+		try(var input = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+			var output = FileChannel.open(destination.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+
+			FileHeader header = null;
+			if(checkpoint != null) {
+				try {
+					output.position(0);
+					header = FileHeader.read(Channels.newInputStream(output));
+				} catch (InvalidFormatException e) {
+					Logger.getGlobal().log(Level.WARNING, "Invalid partial output, starting over.", e);
+					checkpoint.delete();
+				}
 			}
+
+			SecretKey key;
+			if(header != null && checkpoint.getFileKey() != null) {
+				key = new SecretKeySpec(checkpoint.getFileKey(), "AES");
+				input.position(checkpoint.getChunks() * header.getChunkSize());
+				resume(output, checkpoint, md);
+			} else {
+				var encapsulation = KeyEncapsulation.encapsulate(publicKeys);
+				header = encapsulation.createHeader(0, getChunkSize(), lookupToken);
+				key = encapsulation.getKey();
+
+				var headerBuffer = ByteBuffer.wrap(header.toBytes());
+				checkpoint = Checkpoint.create(destination, Cipher.ENCRYPT_MODE, sourceKey, keyId, key.getEncoded(), headerBuffer.remaining());
+				output.truncate(0);
+				output.position(0);
+				if(md != null) {
+					md.update(headerBuffer.duplicate());
+				}
+				while(headerBuffer.hasRemaining()) {
+					output.write(headerBuffer);
+				}
+			}
+
+			return runPipeline(Cipher.ENCRYPT_MODE, key, header, input, output, md, null, checkpoint, job, progressCallback);
 		}
 	}
 
-	private Key getPrivateKey(String key) throws NoSuchAlgorithmException, InvalidKeySpecException {
-		KeyFactory keyFactory = KeyFactory.getInstance("EC");
-		ECParameterSpec ecParameterSpec = ECNamedCurveTable.getParameterSpec(CURVE);
-		ECPrivateKeySpec privateKeySpec = new ECPrivateKeySpec(new BigInteger(key, 16), ecParameterSpec);
+	private boolean shouldCompress(List<File> files) {
+		return isCompressionEnabled() && Compression.isCompressible(files);
+	}
 
-		return keyFactory.generatePrivate(privateKeySpec);
+	private byte[] encryptArchive(List<PublicKey> publicKeys, File destination, MessageDigest md, Job job, ProgressCallback progressCallback) throws IOException, GeneralSecurityException {
+		try(var input = new ArchiveChannel(source)) {
+			int flags = FileHeader.FLAG_ARCHIVE | (shouldCompress(input.getFiles()) ? FileHeader.FLAG_DEFLATE : 0);
+			return encryptStream(publicKeys, input, input.size(), flags, destination, md, job, progressCallback);
+		}
 	}
 
-	private Key getPublicKey(String key) throws NoSuchAlgorithmException, InvalidKeySpecException {
-		byte[] bytes = new BigInteger(key, 16).toByteArray();
-		KeyFactory keyFactory = KeyFactory.getInstance("EC");
+	private byte[] encryptCompressed(List<PublicKey> publicKeys, File destination, MessageDigest md, Job job, ProgressCallback progressCallback) throws IOException, GeneralSecurityException {
+		try(var input = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+			return encryptStream(publicKeys, input, input.size(), FileHeader.FLAG_DEFLATE, destination, md, job, progressCallback);
+		}
+	}
+
+	/**
+	 * Encrypt a stream which cannot be resumed, compressing it first if the flags say so.
+	 * @param length the length of the stream, before compression
+	 */
+	private byte[] encryptStream(List<PublicKey> publicKeys, ReadableByteChannel input, long length, int flags, File destination, MessageDigest md, Job job, ProgressCallback progressCallback) throws IOException, GeneralSecurityException {
+		discardCheckpoint(destination);
+
+		try(var deflate = (flags & FileHeader.FLAG_DEFLATE) != 0 ? new DeflateChannel(input) : null;
+			var output = FileChannel.open(destination.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
 
-		ECNamedCurveParameterSpec spec = ECNamedCurveTable.getParameterSpec(CURVE);
-		ECNamedCurveSpec params = new ECNamedCurveSpec(CURVE, spec.getCurve(), spec.getG(), spec.getN());
-		ECPoint point =  ECPointUtil.decodePoint(params.getCurve(), bytes);
-		ECPublicKeySpec pubKeySpec = new ECPublicKeySpec(point, params);
-		return keyFactory.generatePublic(pubKeySpec);
+			var encapsulation = KeyEncapsulation.encapsulate(publicKeys);
+			var header = encapsulation.createHeader(flags, getChunkSize(), lookupToken);
+			var digestOutput = new DigestChannel(output, md);
+			var headerBuffer = ByteBuffer.wrap(header.toBytes());
+			while(headerBuffer.hasRemaining()) {
+				digestOutput.write(headerBuffer);
+			}
+
+			var progress = new ProgressReporter(length, 0, progressCallback);
+			createPipeline(Cipher.ENCRYPT_MODE, encapsulation.getKey(), header).run(deflate != null ? deflate : input, digestOutput, 0, job, (read, written) -> {
+				if(deflate != null) {
+					progress.update(deflate.getBytesRead());
+				} else {
+					progress.accept(read);
+				}
+			});
+			return digestOutput.digest();
+		}
+	}
+
+	private byte[] decryptChunks(PrivateKey privateKey, String keyId, File destination, MessageDigest md, MessageDigest sourceMd, Job job, ProgressCallback progressCallback) throws IOException, GeneralSecurityException {
+		try(var input = FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+
+			// Not buffered so the channel is left positioned on the first chunk
+			var header = FileHeader.read(Channels.newInputStream(input));
+			var key = KeyEncapsulation.decapsulate(privateKey, header);
+
+			if(header.isArchive() || header.isCompressed()) {
+				return decryptStream(key, header, input, destination, md, sourceMd, job, progressCallback);
+			}
+			return decryptChunks(key, header, input, keyId, destination, md, sourceMd, job, progressCallback);
+		}
+	}
+
+	private byte[] decryptChunks(SecretKey key, FileHeader header, FileChannel input, String keyId, File destination, MessageDigest md, MessageDigest sourceMd, Job job, ProgressCallback progressCallback) throws IOException, GeneralSecurityException {
+		String sourceKey = DigestCache.key(source);
+		var checkpoint = Checkpoint.load(destination, Cipher.DECRYPT_MODE, sourceKey, keyId);
+
+		try(var output = FileChannel.open(destination.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			if(checkpoint != null) {
+				input.position(input.position() + checkpoint.getChunks() * (header.getChunkSize() + ChunkCipher.TAG_LENGTH));
+				resume(output, checkpoint, md);
+			} else {
+				checkpoint = Checkpoint.create(destination, Cipher.DECRYPT_MODE, sourceKey, keyId, null, 0);
+				output.truncate(0);
+			}
+
+			return runPipeline(Cipher.DECRYPT_MODE, key, header, input, output, md, sourceMd, checkpoint, job, progressCallback);
+		}
+	}
+
+	/**
+	 * Decrypt a stream which cannot be resumed, decompressing it if needed.
+	 * Archives are extracted to the destination directory as they are decrypted.
+	 */
+	private byte[] decryptStream(SecretKey key, FileHeader header, FileChannel input, File destination, MessageDigest md, MessageDigest sourceMd, Job job, ProgressCallback progressCallback) throws IOException, GeneralSecurityException {
+		ArchiveExtractor extractor = null;
+		WritableByteChannel output;
+		if(header.isArchive()) {
+			Files.createDirectories(destination.toPath());
+			extractor = new ArchiveExtractor(destination);
+			output = extractor;
+		} else {
+			discardCheckpoint(destination);
+			output = FileChannel.open(destination.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		}
+
+		var digestOutput = new DigestChannel(output, md);
+		try(output; var inflate = header.isCompressed() ? new InflateChannel(digestOutput) : null) {
+			var progress = new ProgressReporter(input.size(), input.position(), progressCallback);
+			createPipeline(Cipher.DECRYPT_MODE, key, header, input, sourceMd).run(input, inflate != null ? inflate : digestOutput, 0, job, (read, written) -> progress.accept(read));
+
+			if(inflate != null) {
+				inflate.finish();
+			}
+			if(extractor != null && !extractor.isComplete()) {
+				throw new InvalidFormatException("Archive is truncated.");
+			}
+			return digestOutput.digest();
+		}
+	}
+
+	/**
+	 * Discard the output written after the checkpoint, hash the output kept
+	 * and position the channel at its end.
+	 */
+	private void resume(FileChannel output, Checkpoint checkpoint, MessageDigest md) throws IOException {
+		if(Config.getInstance().isVerbose())
+			Logger.getGlobal().info("Resuming after " + checkpoint.getChunks() + " chunks.");
+
+		output.truncate(checkpoint.getOutputPosition());
+		if(md != null) {
+			output.position(0);
+			int blockSize = BlockReader.getBlockSize();
+			var reader = new BlockReader(output, blockSize);
+			var buffer = reader.isMapped() ? null : ByteBuffer.allocateDirect(blockSize);
+
+			ByteBuffer block;
+			while((block = reader.read(buffer)).hasRemaining()) {
+				md.update(block);
+			}
+		}
+		output.position(checkpoint.getOutputPosition());
+	}
+
+	/**
+	 * @param sourceMd the digest of the input, nullable. Updated with the whole input, including the part before its current position
+	 */
+	private byte[] runPipeline(int mode, SecretKey key, FileHeader header, FileChannel input, FileChannel output, MessageDigest md, MessageDigest sourceMd, Checkpoint checkpoint, Job job, ProgressCallback progressCallback) throws IOException, GeneralSecurityException {
+		var progress = new ProgressReporter(input.size(), input.position(), progressCallback);
+		var digestOutput = new DigestChannel(output, md);
+		checkpoint.attach(output);
+
+		try {
+			createPipeline(mode, key, header, input, sourceMd).run(input, digestOutput, checkpoint.getChunks(), job, (read, written) -> {
+				progress.accept(read);
+				checkpoint.chunkWritten(written);
+			});
+		} catch (CancellationException | IOException e) {
+			checkpoint.saveQuietly();
+			throw e;
+		} catch (GeneralSecurityException | RuntimeException e) {
+			checkpoint.delete();
+			throw e;
+		}
+
+		checkpoint.delete();
+		return digestOutput.digest();
+	}
+
+	private ChunkPipeline createPipeline(int mode, SecretKey key, FileHeader header) {
+		int threads = getParallelism();
+		var executor = threads > 1 ? getPool() : null;
+		return new ChunkPipeline(mode, key, header.toBytes(), header.getChunkSize(), executor, threads * 2);
+	}
+
+	/**
+	 * Create a pipeline hashing its input. The input before the current position
+	 * of the channel is hashed first.
+	 * @param sourceMd the digest of the input, nullable
+	 */
+	private ChunkPipeline createPipeline(int mode, SecretKey key, FileHeader header, FileChannel input, MessageDigest sourceMd) throws IOException {
+		var pipeline = createPipeline(mode, key, header);
+		if(sourceMd != null) {
+			var buffer = ByteBuffer.allocateDirect(BlockReader.getBlockSize());
+			long position = 0;
+			long end = input.position();
+			while(position < end) {
+				buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+				int read = input.read(buffer, position);
+				if(read == -1) {
+					break;
+				}
+				position += read;
+				sourceMd.update(buffer.flip());
+			}
+			pipeline.setInputDigest(sourceMd);
+		}
+		return pipeline;
+	}
+
+	private byte[] decryptLegacy(Key key, File destination, MessageDigest md, MessageDigest sourceMd, Job job, ProgressCallback progressCallback) throws IOException, GeneralSecurityException {
+		var cipher = Cipher.getInstance("ECIES");
+		cipher.init(Cipher.DECRYPT_MODE, key);
+
+		OutputStream fileOutput = new FileOutputStream(destination);
+		if(md != null) {
+			fileOutput = new DigestOutputStream(fileOutput, md);
+		}
+
+		InputStream fileInput = new FileInputStream(source);
+		if(sourceMd != null) {
+			fileInput = new DigestInputStream(fileInput, sourceMd);
+		}
+
+		try(var input = fileInput;
+			var output = new CipherOutputStream(fileOutput, cipher)) {
+
+			int read;
+			var buffer = new byte[LEGACY_BUFFER_LENGTH];
+			var progress = new ProgressReporter(source.length(), 0, progressCallback);
+
+			while((read = input.read(buffer)) != -1) {
+				job.checkCancelled();
+				output.write(buffer, 0, read);
+				progress.accept(read);
+			}
+		}
+
+		return md == null ? null : md.digest();
+	}
+
+	private Key getPrivateKey(String key) throws NoSuchAlgorithmException, InvalidKeySpecException {
+		return CryptoContext.getInstance().getPrivateKey(key);
+	}
+
+	private Key getPublicKey(String key) throws NoSuchAlgorithmException, InvalidKeySpecException {
+		return CryptoContext.getInstance().getPublicKey(key);
 	}
 
 	/**
-	 * Encrypt the source file using the given public key and save
+	 * Encrypt the source file or directory using the given public key and save
 	 * the result to the given destination file.
 	 * @param publicKey a hex representation of the public key
 	 * @param destination the output file
-	 * @param progressCallback the callback executed multiple times
-	 * as the process progresses
+	 * @param progressCallback the callback executed at most every 50ms
+	 * as the process progresses, with its throughput
 	 * @param callback the callback executed on success
-	 * @param failCallback the callback executed on error
+	 * @param failCallback the callback executed on error, receiving a
+	 * {@link CancellationException} if the job is cancelled
+	 * @return the job, which can be cancelled
+	 */
+	public Job encrypt(String publicKey, File destination, ProgressCallback progressCallback, Runnable callback, ErrorCallback failCallback) {
+		return process(List.of(publicKey), Cipher.ENCRYPT_MODE, destination, false, false, progressCallback, (digest, sourceDigest) -> callback.run(), failCallback);
+	}
+
+	/**
+	 * Encrypt the source file or directory using the given public key and save
+	 * the result to the given destination file. The encrypted file is
+	 * hashed (SHA-256) as it is written, so it doesn't need to be read again.
+	 * @param publicKey a hex representation of the public key
+	 * @param destination the output file
+	 * @param progressCallback the callback executed at most every 50ms
+	 * as the process progresses, with its throughput
+	 * @param callback the callback executed on success, receiving the digest of the encrypted file
+	 * @param failCallback the callback executed on error, receiving a
+	 * {@link CancellationException} if the job is cancelled
+	 * @return the job, which can be cancelled
+	 */
+	public Job encrypt(String publicKey, File destination, ProgressCallback progressCallback, HashCallback callback, ErrorCallback failCallback) {
+		return process(List.of(publicKey), Cipher.ENCRYPT_MODE, destination, true, false, progressCallback, (digest, sourceDigest) -> callback.run(digest), failCallback);
+	}
+
+	/**
+	 * Encrypt the source file or directory once for several recipients and save
+	 * the result to the given destination file. The content is encrypted with a
+	 * single file key, which is wrapped for each recipient in the header, so each
+	 * recipient decrypts the same file with their own private key. The encrypted file is
+	 * hashed (SHA-256) as it is written, so it doesn't need to be read again.
+	 * @param publicKeys the hex representations of the recipients' public keys, at most 255
+	 * @param destination the output file
+	 * @param progressCallback the callback executed at most every 50ms
+	 * as the process progresses, with its throughput
+	 * @param callback the callback executed on success, receiving the digest of the encrypted file
+	 * @param failCallback the callback executed on error, receiving a
+	 * {@link CancellationException} if the job is cancelled
+	 * @return the job, which can be cancelled
 	 */
-	public void encrypt(String publicKey, File destination, ProgressCallback progressCallback, Runnable callback, ErrorCallback failCallback) {
-		process(publicKey, Cipher.ENCRYPT_MODE, destination, progressCallback, callback, failCallback);
+	public Job encrypt(List<String> publicKeys, File destination, ProgressCallback progressCallback, HashCallback callback, ErrorCallback failCallback) {
+		if(publicKeys.isEmpty() || publicKeys.size() > FileHeader.MAX_RECIPIENTS) {
+			throw new IllegalArgumentException("Invalid amount of recipients: " + publicKeys.size());
+		}
+		return process(List.copyOf(publicKeys), Cipher.ENCRYPT_MODE, destination, true, false, progressCallback, (digest, sourceDigest) -> callback.run(digest), failCallback);
 	}
 
 	/**
 	 * Decrypt the source file using the given private key and save
-	 * the result to the given destination file.
+	 * the result to the given destination file. Encrypted directories
+	 * are extracted into the destination directory instead.
 	 * @param privateKey a hex representation of the private key
-	 * @param destination the output file
-	 * @param progressCallback the callback executed multiple times
-	 * as the process progresses
+	 * @param destination the output file, or directory
+	 * @param progressCallback the callback executed at most every 50ms
+	 * as the process progresses, with its throughput
 	 * @param callback the callback executed on success
-	 * @param failCallback the callback executed on error
+	 * @param failCallback the callback executed on error, receiving a
+	 * {@link CancellationException} if the job is cancelled
+	 * @return the job, which can be cancelled
 	 */
-	public void decrypt(String privateKey, File destination, ProgressCallback progressCallback, Runnable callback, ErrorCallback failCallback) {
-		process(privateKey, Cipher.DECRYPT_MODE, destination, progressCallback, callback, failCallback);
+	public Job decrypt(String privateKey, File destination, ProgressCallback progressCallback, Runnable callback, ErrorCallback failCallback) {
+		return process(List.of(privateKey), Cipher.DECRYPT_MODE, destination, false, false, progressCallback, (digest, sourceDigest) -> callback.run(), failCallback);
+	}
+
+	/**
+	 * Decrypt the source file using the given private key and save
+	 * the result to the given destination file. Encrypted directories
+	 * are extracted into the destination directory instead. The decrypted file is
+	 * hashed (SHA-256) as it is written, so it doesn't need to be read again.
+	 * @param privateKey a hex representation of the private key
+	 * @param destination the output file, or directory
+	 * @param progressCallback the callback executed at most every 50ms
+	 * as the process progresses, with its throughput
+	 * @param callback the callback executed on success, receiving the digest of the decrypted file
+	 * @param failCallback the callback executed on error, receiving a
+	 * {@link CancellationException} if the job is cancelled
+	 * @return the job, which can be cancelled
+	 */
+	public Job decrypt(String privateKey, File destination, ProgressCallback progressCallback, HashCallback callback, ErrorCallback failCallback) {
+		return process(List.of(privateKey), Cipher.DECRYPT_MODE, destination, true, false, progressCallback, (digest, sourceDigest) -> callback.run(digest), failCallback);
+	}
+
+	/**
+	 * Decrypt the source file using the given private key and save
+	 * the result to the given destination file. Encrypted directories
+	 * are extracted into the destination directory instead. Both the decrypted file
+	 * and the encrypted source file are hashed (SHA-256) as they are written and read,
+	 * so neither of them needs to be read again.
+	 * @param privateKey a hex representation of the private key
+	 * @param destination the output file, or directory
+	 * @param progressCallback the callback executed at most every 50ms
+	 * as the process progresses, with its throughput
+	 * @param callback the callback executed on success, receiving the digests of the decrypted file and of the source file
+	 * @param failCallback the callback executed on error, receiving a
+	 * {@link CancellationException} if the job is cancelled
+	 * @return the job, which can be cancelled
+	 */
+	public Job decrypt(String privateKey, File destination, ProgressCallback progressCallback, DecryptCallback callback, ErrorCallback failCallback) {
+		return process(List.of(privateKey), Cipher.DECRYPT_MODE, destination, true, true, progressCallback, callback, failCallback);
+	}
+
+	/**
+	 * Open the source file for random access reads of its plaintext. Only the chunks
+	 * covering the ranges read are decrypted, so the beginning of a large file can be
+	 * previewed without decrypting the whole file.<br>
+	 * Files encrypted with the legacy format, compressed files and directories cannot
+	 * be read at random and must be decrypted entirely.
+	 * @param privateKey a hex representation of the private key
+	 * @return a read-only channel, positioned at the beginning of the plaintext
+	 * @throws InvalidFormatException if the file cannot be read at random, is truncated or has been tampered with
+	 * @throws IOException
+	 * @throws GeneralSecurityException if the key is invalid
+	 */
+	public SeekableByteChannel openDecrypted(String privateKey) throws IOException, GeneralSecurityException {
+		if(!FileHeader.matches(source)) {
+			throw new InvalidFormatException("Legacy encrypted files cannot be read at random.");
+		}
+
+		var key = (PrivateKey) getPrivateKey(privateKey);
+		var input = FileChannel.open(source.toPath(), StandardOpenOption.READ);
+		try {
+			// Not buffered so the channel is left positioned on the first chunk
+			var header = FileHeader.read(Channels.newInputStream(input));
+			if(header.isArchive() || header.isCompressed()) {
+				throw new InvalidFormatException("Compressed files and directories cannot be read at random.");
+			}
+			return new DecryptingChannel(input, KeyEncapsulation.decapsulate(key, header), header);
+		} catch (IOException | GeneralSecurityException | RuntimeException e) {
+			input.close();
+			throw e;
+		}
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,184 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.math.BigInteger;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.InvalidKeySpecException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.bouncycastle.jce.ECNamedCurveTable;
+import org.bouncycastle.jce.ECPointUtil;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.jce.spec.ECNamedCurveParameterSpec;
+import org.bouncycastle.jce.spec.ECNamedCurveSpec;
+import org.bouncycastle.jce.spec.ECPrivateKeySpec;
+import org.bouncycastle.math.ec.FixedPointUtil;
+
+/**
+ * Process-wide elliptic curve context, set up once.<br>
+ * Registers the BouncyCastle provider, resolves the secp256k1 parameters
+ * and precomputes the table used for fixed-base multiplications by the
+ * generator point (key pair generation). Parsed keys are kept in a small
+ * least-recently-used cache keyed by their hex representation, so
+ * processing many files with the same keys doesn't parse them again.
+ * @author Jérémy LAMBERT
+ *
+ * @see KeyEncapsulation
+ */
+final class CryptoContext {
+
+	private static final int KEY_CACHE_CAPACITY = 32;
+	private static final CryptoContext instance = new CryptoContext();
+
+	private final Provider provider;
+	private final ECNamedCurveParameterSpec curve;
+	private final ECNamedCurveSpec params;
+	private final LinkedHashMap<String, Key> keys;
+
+	private CryptoContext() {
+		synchronized(Security.class) {
+			if(Security.getProvider(BouncyCastleProvider.PROVIDER_NAME) == null) {
+				Security.addProvider(new BouncyCastleProvider());
+			}
+		}
+		provider = Security.getProvider(BouncyCastleProvider.PROVIDER_NAME);
+
+		curve = ECNamedCurveTable.getParameterSpec(KeyEncapsulation.CURVE);
+		params = new ECNamedCurveSpec(KeyEncapsulation.CURVE, curve.getCurve(), curve.getG(), curve.getN());
+		FixedPointUtil.precompute(curve.getG());
+
+		keys = new LinkedHashMap<>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = -3512783906446160521L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Key> eldest) {
+				return size() > KEY_CACHE_CAPACITY;
+			}
+
+		};
+	}
+
+	/**
+	 * Get the crypto context, registering the BouncyCastle provider on first call.
+	 * @return the crypto context
+	 */
+	static CryptoContext getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Get the registered BouncyCastle provider.
+	 * @return provider
+	 */
+	final Provider getProvider() {
+		return provider;
+	}
+
+	/**
+	 * Generate a new key pair on the curve.
+	 * @return the key pair
+	 * @throws GeneralSecurityException
+	 */
+	KeyPair generateKeyPair() throws GeneralSecurityException {
+		var generator = KeyPairGenerator.getInstance("EC", provider);
+		generator.initialize(curve);
+		return generator.generateKeyPair();
+	}
+
+	/**
+	 * Get the private key matching the given hex representation.
+	 * @param hex the hex representation of the private key
+	 * @return the private key, cached
+	 * @throws NoSuchAlgorithmException
+	 * @throws InvalidKeySpecException
+	 */
+	PrivateKey getPrivateKey(String hex) throws NoSuchAlgorithmException, InvalidKeySpecException {
+		String cacheKey = "private:" + hex;
+		var key = getCachedKey(cacheKey);
+		if(key == null) {
+			try {
+				var spec = new ECPrivateKeySpec(new BigInteger(hex, 16), curve);
+				key = KeyFactory.getInstance("EC", provider).generatePrivate(spec);
+			} catch (NumberFormatException e) {
+				throw new InvalidKeySpecException("Invalid private key encoding.", e);
+			}
+			putCachedKey(cacheKey, key);
+		}
+		return (PrivateKey) key;
+	}
+
+	/**
+	 * Get the public key matching the given hex representation.
+	 * @param hex the hex representation of the encoded point
+	 * @return the public key, cached
+	 * @throws NoSuchAlgorithmException
+	 * @throws InvalidKeySpecException
+	 */
+	PublicKey getPublicKey(String hex) throws NoSuchAlgorithmException, InvalidKeySpecException {
+		String cacheKey = "public:" + hex;
+		var key = getCachedKey(cacheKey);
+		if(key == null) {
+			try {
+				key = decodePublicKey(new BigInteger(hex, 16).toByteArray());
+			} catch (NumberFormatException e) {
+				throw new InvalidKeySpecException("Invalid public key encoding.", e);
+			}
+			putCachedKey(cacheKey, key);
+		}
+		return (PublicKey) key;
+	}
+
+	/**
+	 * Parse an encoded public key (SEC1 point encoding). The result isn't cached.
+	 * @param bytes the encoded point
+	 * @return the public key
+	 * @throws NoSuchAlgorithmException
+	 * @throws InvalidKeySpecException
+	 */
+	PublicKey decodePublicKey(byte[] bytes) throws NoSuchAlgorithmException, InvalidKeySpecException {
+		try {
+			ECPoint point = ECPointUtil.decodePoint(params.getCurve(), bytes);
+			return KeyFactory.getInstance("EC", provider).generatePublic(new ECPublicKeySpec(point, params));
+		} catch (IllegalArgumentException e) {
+			throw new InvalidKeySpecException("Invalid public key encoding.", e);
+		}
+	}
+
+	private synchronized Key getCachedKey(String cacheKey) {
+		return keys.get(cacheKey);
+	}
+
+	private synchronized void putCachedKey(String cacheKey, Key key) {
+		keys.put(cacheKey, key);
+	}
+
+}
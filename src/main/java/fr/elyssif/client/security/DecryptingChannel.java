@@ -0,0 +1,194 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.security.GeneralSecurityException;
+
+import javax.crypto.SecretKey;
+
+/**
+ * Read-only channel giving random access to the plaintext of a file
+ * encrypted with the chunked format.<br>
+ * Only the chunks covering the requested range are read and decrypted, so
+ * the beginning of a large file can be previewed, or a range extracted,
+ * without decrypting the whole file. The last decrypted chunk is kept, so
+ * small sequential reads don't decrypt the same chunk again.<br>
+ * Instances are not thread-safe.
+ * @author Jérémy LAMBERT
+ *
+ * @see Crypter#openDecrypted(String)
+ */
+final class DecryptingChannel implements SeekableByteChannel {
+
+	private final FileChannel channel;
+	private final ChunkCipher cipher;
+	private final long offset;
+	private final int chunkSize;
+	private final long lastIndex;
+	private final int lastLength;
+	private final long size;
+	private final ByteBuffer sealed;
+	private final ByteBuffer plain;
+
+	private long chunk;
+	private long position;
+
+	/**
+	 * Create a new instance of DecryptingChannel. The last chunk is authenticated
+	 * right away, so the plaintext size can be trusted.
+	 * @param channel the encrypted file, positioned on its first chunk
+	 * @param key the symmetric file key
+	 * @param header the header of the encrypted file
+	 * @throws InvalidFormatException if the file is truncated or has been tampered with
+	 * @throws IOException
+	 * @throws GeneralSecurityException
+	 */
+	DecryptingChannel(FileChannel channel, SecretKey key, FileHeader header) throws IOException, GeneralSecurityException {
+		this.channel = channel;
+		this.cipher = new ChunkCipher(key, header.toBytes());
+		this.offset = channel.position();
+		this.chunkSize = header.getChunkSize();
+
+		long sealedSize = chunkSize + ChunkCipher.TAG_LENGTH;
+		long length = channel.size() - offset;
+		this.lastIndex = length / sealedSize;
+		this.lastLength = (int) (length % sealedSize);
+		if(lastLength < ChunkCipher.TAG_LENGTH) {
+			throw new InvalidFormatException("Encrypted file is truncated.");
+		}
+		this.size = lastIndex * chunkSize + lastLength - ChunkCipher.TAG_LENGTH;
+
+		this.sealed = ByteBuffer.allocateDirect((int) sealedSize);
+		this.plain = ByteBuffer.allocateDirect((int) sealedSize);
+		this.chunk = -1;
+		load(lastIndex);
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		ensureOpen();
+		if(position >= size) {
+			return -1;
+		}
+
+		int length = 0;
+		while(dst.hasRemaining() && position < size) {
+			long index = position / chunkSize;
+			load(index);
+			plain.position((int) (position - index * chunkSize));
+
+			int transferred = Math.min(dst.remaining(), plain.remaining());
+			int limit = plain.limit();
+			plain.limit(plain.position() + transferred);
+			dst.put(plain);
+			plain.limit(limit);
+
+			position += transferred;
+			length += transferred;
+		}
+		return length;
+	}
+
+	/**
+	 * Read and decrypt the chunk at the given index, unless it is the last decrypted one.
+	 * @throws InvalidFormatException if the chunk fails authentication
+	 */
+	private void load(long index) throws IOException {
+		if(index == chunk) {
+			return;
+		}
+		chunk = -1;
+
+		boolean last = index == lastIndex;
+		long start = offset + index * (chunkSize + ChunkCipher.TAG_LENGTH);
+		sealed.clear();
+		sealed.limit(last ? lastLength : chunkSize + ChunkCipher.TAG_LENGTH);
+		while(sealed.hasRemaining()) {
+			if(channel.read(sealed, start + sealed.position()) == -1) {
+				throw new InvalidFormatException("Encrypted file is truncated.");
+			}
+		}
+		sealed.flip();
+
+		try {
+			cipher.open(index, last, sealed, plain);
+		} catch (GeneralSecurityException e) {
+			throw new InvalidFormatException("Chunk " + index + " failed authentication.", e);
+		}
+		chunk = index;
+	}
+
+	@Override
+	public long position() throws IOException {
+		ensureOpen();
+		return position;
+	}
+
+	@Override
+	public SeekableByteChannel position(long newPosition) throws IOException {
+		ensureOpen();
+		if(newPosition < 0) {
+			throw new IllegalArgumentException("Negative position: " + newPosition);
+		}
+		position = newPosition;
+		return this;
+	}
+
+	/**
+	 * Get the length of the plaintext.
+	 * @return size
+	 */
+	@Override
+	public long size() throws IOException {
+		ensureOpen();
+		return size;
+	}
+
+	@Override
+	public int write(ByteBuffer src) {
+		throw new NonWritableChannelException();
+	}
+
+	@Override
+	public SeekableByteChannel truncate(long size) {
+		throw new NonWritableChannelException();
+	}
+
+	private void ensureOpen() throws ClosedChannelException {
+		if(!channel.isOpen()) {
+			throw new ClosedChannelException();
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
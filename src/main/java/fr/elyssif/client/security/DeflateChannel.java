@@ -0,0 +1,97 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.zip.Deflater;
+
+/**
+ * Readable channel compressing the data read from another channel (zlib format).
+ * Direct buffers are handed straight to the deflater, so the data
+ * never goes through the Java heap.
+ * @author Jérémy LAMBERT
+ *
+ * @see InflateChannel
+ */
+final class DeflateChannel implements ReadableByteChannel {
+
+	private static final int BUFFER_LENGTH = 64 * 1024;
+
+	private final ReadableByteChannel channel;
+	private final Deflater deflater;
+	private final ByteBuffer input;
+	private boolean eof;
+	private boolean open;
+
+	/**
+	 * Create a new instance of DeflateChannel.
+	 * @param channel the channel to read the uncompressed data from
+	 */
+	DeflateChannel(ReadableByteChannel channel) {
+		this.channel = channel;
+		this.deflater = new Deflater(Deflater.BEST_SPEED);
+		this.input = ByteBuffer.allocateDirect(BUFFER_LENGTH);
+		this.open = true;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		int start = dst.position();
+		while(dst.hasRemaining() && !deflater.finished()) {
+			if(deflater.needsInput() && !eof) {
+				input.clear();
+				if(channel.read(input) == -1) {
+					input.limit(0); // The deflater still references the buffer
+					eof = true;
+					deflater.finish();
+				} else {
+					deflater.setInput(input.flip());
+				}
+			}
+			deflater.deflate(dst);
+		}
+
+		int length = dst.position() - start;
+		return length == 0 && deflater.finished() ? -1 : length;
+	}
+
+	/**
+	 * Get the amount of uncompressed bytes consumed so far.
+	 * @return the amount of bytes
+	 */
+	long getBytesRead() {
+		return deflater.getBytesRead();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(open) {
+			open = false;
+			deflater.end();
+			channel.close();
+		}
+	}
+
+}
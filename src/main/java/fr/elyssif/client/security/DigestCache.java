@@ -0,0 +1,197 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import fr.elyssif.client.Config;
+
+/**
+ * Persistent least-recently-used cache of SHA-256 file digests.<br>
+ * Entries are keyed by canonical path, size, modification time and file key
+ * (inode) so any change to the file invalidates its entry. The cache is stored
+ * in the program's directory and rewritten after each new entry.
+ * @author Jérémy LAMBERT
+ *
+ * @see Hash#sha256(File, fr.elyssif.client.callback.HashCallback, fr.elyssif.client.callback.ErrorCallback)
+ */
+public final class DigestCache {
+
+	private static final int VERSION = 1;
+	private static DigestCache instance;
+
+	private final File file;
+	private final int capacity;
+	private LinkedHashMap<String, byte[]> entries;
+
+	private DigestCache(File file, int capacity) {
+		this.file = file;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Enable the digest cache.
+	 * @param file the file the cache is stored in
+	 * @param capacity the maximum amount of entries, zero or less to disable the cache
+	 */
+	public static final synchronized void enable(File file, int capacity) {
+		instance = capacity > 0 ? new DigestCache(file, capacity) : null;
+	}
+
+	/**
+	 * Disable the digest cache. The stored entries are kept on disk.
+	 */
+	public static final synchronized void disable() {
+		instance = null;
+	}
+
+	/**
+	 * Get the current digest cache.
+	 * @return the cache, null if disabled
+	 */
+	static synchronized DigestCache getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Build the cache key of the given file from its current attributes.
+	 * @param source the file
+	 * @return the key
+	 * @throws IOException if the file attributes cannot be read
+	 */
+	static String key(File source) throws IOException {
+		var attributes = Files.readAttributes(source.toPath(), BasicFileAttributes.class);
+		return source.getCanonicalPath() + "|" + attributes.size() + "|" + attributes.lastModifiedTime().toMillis() + "|" + attributes.fileKey();
+	}
+
+	/**
+	 * Get the cached digest for the given key.
+	 * @param key the key built using {@link #key(File)}
+	 * @return a copy of the digest, null if not cached
+	 */
+	synchronized byte[] get(String key) {
+		var digest = getEntries().get(key);
+		return digest == null ? null : digest.clone();
+	}
+
+	/**
+	 * Cache a digest and save the cache to disk.
+	 * @param key the key built using {@link #key(File)} before the file was read
+	 * @param digest the digest
+	 */
+	synchronized void put(String key, byte[] digest) {
+		getEntries().put(key, digest.clone());
+		save();
+	}
+
+	/**
+	 * Cache the digest of the given file if it hasn't changed since the given key was built.
+	 * @param source the file
+	 * @param key the key built before the file was read
+	 * @param digest the digest
+	 */
+	void putIfUnchanged(File source, String key, byte[] digest) {
+		try {
+			if(key.equals(key(source))) {
+				put(key, digest);
+			}
+		} catch (IOException e) {
+			Logger.getGlobal().log(Level.WARNING, "Couldn't cache file digest.", e);
+		}
+	}
+
+	private LinkedHashMap<String, byte[]> getEntries() {
+		if(entries == null) {
+			entries = new LinkedHashMap<>(16, 0.75f, true) {
+
+				private static final long serialVersionUID = 4302148715834716829L;
+
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+					return size() > capacity;
+				}
+
+			};
+			load();
+		}
+		return entries;
+	}
+
+	private void load() {
+		if(!file.exists()) {
+			return;
+		}
+
+		try(var input = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			if(input.readInt() != VERSION) {
+				Logger.getGlobal().warning("Unsupported digest cache version, ignoring it.");
+				return;
+			}
+
+			int count = input.readInt();
+			for(int i = 0 ; i < count ; i++) {
+				String key = input.readUTF();
+				var digest = new byte[input.readUnsignedByte()];
+				input.readFully(digest);
+				entries.put(key, digest);
+			}
+
+			if(Config.getInstance().isVerbose())
+				Logger.getGlobal().info("Loaded " + entries.size() + " cached file digests.");
+		} catch (EOFException e) {
+			Logger.getGlobal().warning("Truncated digest cache, ignoring the remaining entries.");
+		} catch (IOException e) {
+			Logger.getGlobal().log(Level.WARNING, "Couldn't load digest cache.", e);
+		}
+	}
+
+	private void save() {
+		var temp = new File(file.getPath() + ".tmp");
+		try {
+			try(var output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+				output.writeInt(VERSION);
+				output.writeInt(entries.size());
+				// Iteration order is least-recently used first, reloading keeps the order
+				for(var entry : entries.entrySet()) {
+					output.writeUTF(entry.getKey());
+					output.writeByte(entry.getValue().length);
+					output.write(entry.getValue());
+				}
+			}
+			Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (IOException e) {
+			Logger.getGlobal().log(Level.WARNING, "Couldn't save digest cache.", e);
+		}
+	}
+
+}
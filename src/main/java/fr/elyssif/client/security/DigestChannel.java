@@ -0,0 +1,78 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+
+/**
+ * Writable channel updating a message digest with every byte
+ * written to the underlying channel, so the output of a process
+ * can be hashed without reading it again.
+ * @author Jérémy LAMBERT
+ *
+ */
+final class DigestChannel implements WritableByteChannel {
+
+	private final WritableByteChannel channel;
+	private final MessageDigest digest;
+
+	/**
+	 * Create a new instance of DigestChannel.
+	 * @param channel the destination channel
+	 * @param digest the digest to update, null to only forward the writes
+	 */
+	DigestChannel(WritableByteChannel channel, MessageDigest digest) {
+		this.channel = channel;
+		this.digest = digest;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		if(digest == null) {
+			return channel.write(src);
+		}
+
+		var written = src.duplicate();
+		int length = channel.write(src);
+		written.limit(written.position() + length);
+		digest.update(written);
+		return length;
+	}
+
+	/**
+	 * Complete the digest of the bytes written so far.
+	 * @return the digest, null if this channel doesn't compute any
+	 */
+	byte[] digest() {
+		return digest == null ? null : digest.digest();
+	}
+
+	@Override
+	public boolean isOpen() {
+		return channel.isOpen();
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+}
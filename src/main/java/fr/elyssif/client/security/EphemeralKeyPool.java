@@ -0,0 +1,104 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Pool of ephemeral key pairs generated in the background, so an encryption
+ * doesn't wait for its key pair to be generated before writing its first byte.<br>
+ * Each key pair is handed out once and removed from the pool. The pool is
+ * refilled every time a key pair is taken, so batches of small files keep
+ * finding generated key pairs. If the pool is empty, the key pair is
+ * generated on the calling thread.
+ * @author Jérémy LAMBERT
+ *
+ * @see KeyEncapsulation#encapsulate(java.security.PublicKey)
+ */
+final class EphemeralKeyPool {
+
+	private static final int CAPACITY = 8;
+	private static final long KEEP_ALIVE = 30; // Seconds
+	private static final EphemeralKeyPool instance = new EphemeralKeyPool();
+
+	private final BlockingQueue<KeyPair> pairs;
+	private final ThreadPoolExecutor generator;
+	private final AtomicBoolean filling;
+
+	private EphemeralKeyPool() {
+		pairs = new ArrayBlockingQueue<>(CAPACITY);
+		filling = new AtomicBoolean();
+		generator = new ThreadPoolExecutor(1, 1, KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), job -> {
+			var thread = new Thread(job, "ephemeral-keys");
+			thread.setDaemon(true);
+			thread.setPriority(Thread.MIN_PRIORITY);
+			return thread;
+		});
+		generator.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Get the pool of ephemeral key pairs.
+	 * @return the pool
+	 */
+	static EphemeralKeyPool getInstance() {
+		return instance;
+	}
+
+	/**
+	 * Start filling the pool in the background, unless it is already being filled.
+	 */
+	void fill() {
+		if(pairs.remainingCapacity() > 0 && filling.compareAndSet(false, true)) {
+			generator.execute(this::generate);
+		}
+	}
+
+	/**
+	 * Take a key pair from the pool, generating it if the pool is empty.
+	 * @return a key pair never handed out before
+	 * @throws GeneralSecurityException
+	 */
+	KeyPair take() throws GeneralSecurityException {
+		var pair = pairs.poll();
+		fill();
+		return pair != null ? pair : CryptoContext.getInstance().generateKeyPair();
+	}
+
+	private void generate() {
+		try {
+			while(pairs.remainingCapacity() > 0) {
+				pairs.offer(CryptoContext.getInstance().generateKeyPair());
+			}
+		} catch (GeneralSecurityException e) {
+			Logger.getGlobal().log(Level.WARNING, "Couldn't pre-generate ephemeral key pairs.", e);
+		} finally {
+			filling.set(false);
+		}
+	}
+
+}
@@ -0,0 +1,337 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Header of the chunked encrypted file format.<br>
+ * Layout (big-endian):
+ * <pre>
+ * magic         4 bytes  "ELYF"
+ * version       1 byte
+ * flags         1 byte   FLAG_ARCHIVE if the plaintext is a tar archive of a directory,
+ *                        FLAG_DEFLATE if the plaintext is compressed (zlib) before encryption,
+ *                        FLAG_LOOKUP if the header carries a lookup token,
+ *                        FLAG_RECIPIENTS if the file key is wrapped for several recipients
+ * chunk size    4 bytes  plaintext length of a full chunk
+ * key length    2 bytes  only without FLAG_RECIPIENTS
+ * ephemeral key n bytes  only without FLAG_RECIPIENTS, uncompressed secp256k1 point
+ * recipients    1 byte   only with FLAG_RECIPIENTS, followed by each recipient:
+ *   key length    2 bytes
+ *   ephemeral key n bytes  uncompressed secp256k1 point
+ *   wrapped key   40 bytes file key wrapped (AES key wrap) with the key shared with the recipient
+ * token length  1 byte   only with FLAG_LOOKUP
+ * lookup token  n bytes  only with FLAG_LOOKUP, UTF-8
+ * </pre>
+ * The lookup token identifies the file on the server, so a received file
+ * can be looked up without hashing it first.
+ * With several recipients, the file is encrypted once with a random file key
+ * and only the file key is encrypted again for each recipient.
+ * The header is followed by the sealed chunks. Every chunk but the last one
+ * holds exactly <code>chunk size</code> bytes of plaintext. The last chunk
+ * is always shorter (possibly empty) so truncation is detected.
+ * The serialized header is used as additional authenticated data for every chunk,
+ * so the flags cannot be tampered with.
+ * @author Jérémy LAMBERT
+ *
+ * @see ChunkCipher
+ */
+final class FileHeader {
+
+	static final byte[] MAGIC = { 'E', 'L', 'Y', 'F' };
+	static final int VERSION = 1;
+	static final int FLAG_ARCHIVE = 1;
+	static final int FLAG_DEFLATE = 2;
+	static final int FLAG_LOOKUP = 4;
+	static final int FLAG_RECIPIENTS = 8;
+	private static final int KNOWN_FLAGS = FLAG_ARCHIVE | FLAG_DEFLATE | FLAG_LOOKUP | FLAG_RECIPIENTS;
+	static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+	static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+	private static final int MAX_KEY_LENGTH = 1024;
+	private static final int MAX_TOKEN_LENGTH = 255;
+	static final int MAX_RECIPIENTS = 255;
+	static final int WRAPPED_KEY_LENGTH = 40;
+
+	private final int version;
+	private final int flags;
+	private final int chunkSize;
+	private final byte[] ephemeralKey;
+	private final List<Recipient> recipients;
+	private final String lookupToken;
+
+	/**
+	 * Create a new header for the current version of the format.
+	 * @param flags the format flags, <code>FLAG_LOOKUP</code> is set if a lookup token is given
+	 * @param chunkSize the plaintext length of a full chunk
+	 * @param ephemeralKey the encoded ephemeral public key
+	 * @param lookupToken the token identifying the file on the server, nullable.
+	 * At most 255 bytes once encoded
+	 */
+	FileHeader(int flags, int chunkSize, byte[] ephemeralKey, String lookupToken) {
+		this(VERSION, lookupFlag(flags, lookupToken) & ~FLAG_RECIPIENTS, chunkSize, ephemeralKey, null, lookupToken);
+	}
+
+	/**
+	 * Create a new header for a file key wrapped for several recipients.
+	 * @param flags the format flags, <code>FLAG_RECIPIENTS</code> is always set
+	 * and <code>FLAG_LOOKUP</code> is set if a lookup token is given
+	 * @param chunkSize the plaintext length of a full chunk
+	 * @param recipients the wrapped file keys, at most 255
+	 * @param lookupToken the token identifying the file on the server, nullable.
+	 * At most 255 bytes once encoded
+	 */
+	FileHeader(int flags, int chunkSize, List<Recipient> recipients, String lookupToken) {
+		this(VERSION, lookupFlag(flags, lookupToken) | FLAG_RECIPIENTS, chunkSize, null, List.copyOf(recipients), lookupToken);
+		if(recipients.isEmpty() || recipients.size() > MAX_RECIPIENTS) {
+			throw new IllegalArgumentException("Invalid amount of recipients: " + recipients.size());
+		}
+	}
+
+	private FileHeader(int version, int flags, int chunkSize, byte[] ephemeralKey, List<Recipient> recipients, String lookupToken) {
+		this.version = version;
+		this.flags = flags;
+		this.chunkSize = chunkSize;
+		this.ephemeralKey = ephemeralKey;
+		this.recipients = recipients;
+		this.lookupToken = lookupToken;
+	}
+
+	private static int lookupFlag(int flags, String lookupToken) {
+		if(lookupToken == null) {
+			return flags & ~FLAG_LOOKUP;
+		}
+		if(lookupToken.getBytes(StandardCharsets.UTF_8).length > MAX_TOKEN_LENGTH) {
+			throw new IllegalArgumentException("Lookup token is too long.");
+		}
+		return flags | FLAG_LOOKUP;
+	}
+
+	final int getVersion() {
+		return version;
+	}
+
+	final int getFlags() {
+		return flags;
+	}
+
+	/**
+	 * Get if the plaintext is a tar archive of a directory.
+	 * @return true if archive
+	 * @see Tar
+	 */
+	final boolean isArchive() {
+		return (flags & FLAG_ARCHIVE) != 0;
+	}
+
+	/**
+	 * Get if the plaintext is compressed before encryption.
+	 * @return true if compressed
+	 * @see DeflateChannel
+	 */
+	final boolean isCompressed() {
+		return (flags & FLAG_DEFLATE) != 0;
+	}
+
+	/**
+	 * Get the token identifying the file on the server.
+	 * @return the lookup token, null if the header doesn't carry any
+	 */
+	final String getLookupToken() {
+		return lookupToken;
+	}
+
+	final int getChunkSize() {
+		return chunkSize;
+	}
+
+	/**
+	 * Get the encoded ephemeral public key of a single recipient file.
+	 * @return the key, null if the file key is wrapped for several recipients
+	 */
+	final byte[] getEphemeralKey() {
+		return ephemeralKey;
+	}
+
+	/**
+	 * Get the file key wrapped for each recipient.
+	 * @return the recipients, null if the file has a single recipient
+	 */
+	final List<Recipient> getRecipients() {
+		return recipients;
+	}
+
+	/**
+	 * Serialize this header.
+	 * @return the header bytes, as written at the beginning of the file
+	 */
+	final byte[] toBytes() {
+		var bytes = new ByteArrayOutputStream();
+		try(var output = new DataOutputStream(bytes)) {
+			output.write(MAGIC);
+			output.writeByte(version);
+			output.writeByte(flags);
+			output.writeInt(chunkSize);
+			if(recipients != null) {
+				output.writeByte(recipients.size());
+				for(var recipient : recipients) {
+					output.writeShort(recipient.ephemeralKey.length);
+					output.write(recipient.ephemeralKey);
+					output.write(recipient.wrappedKey);
+				}
+			} else {
+				output.writeShort(ephemeralKey.length);
+				output.write(ephemeralKey);
+			}
+			if(lookupToken != null) {
+				var token = lookupToken.getBytes(StandardCharsets.UTF_8);
+				output.writeByte(token.length);
+				output.write(token);
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e); // Cannot happen with an in-memory stream
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Read and validate a header from the given stream. The stream is left
+	 * positioned on the first chunk.
+	 * @param input the stream to read from
+	 * @return the parsed header
+	 * @throws InvalidFormatException if the header is malformed or unsupported
+	 * @throws IOException
+	 */
+	static FileHeader read(InputStream input) throws IOException {
+		var data = new DataInputStream(input);
+		try {
+			var magic = new byte[MAGIC.length];
+			data.readFully(magic);
+			if(!Arrays.equals(MAGIC, magic)) {
+				throw new InvalidFormatException("Not an Elyssif encrypted file.");
+			}
+
+			int version = data.readUnsignedByte();
+			if(version != VERSION) {
+				throw new InvalidFormatException("Unsupported encrypted file version: " + version);
+			}
+
+			int flags = data.readUnsignedByte();
+			if((flags & ~KNOWN_FLAGS) != 0) {
+				throw new InvalidFormatException("Unsupported encrypted file flags: " + flags);
+			}
+
+			int chunkSize = data.readInt();
+			if(chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+				throw new InvalidFormatException("Invalid chunk size: " + chunkSize);
+			}
+
+			byte[] ephemeralKey = null;
+			List<Recipient> recipients = null;
+			if((flags & FLAG_RECIPIENTS) != 0) {
+				int count = data.readUnsignedByte();
+				if(count == 0) {
+					throw new InvalidFormatException("Encrypted file has no recipient.");
+				}
+				recipients = new ArrayList<>(count);
+				for(int i = 0 ; i < count ; i++) {
+					var key = readEphemeralKey(data);
+					var wrappedKey = new byte[WRAPPED_KEY_LENGTH];
+					data.readFully(wrappedKey);
+					recipients.add(new Recipient(key, wrappedKey));
+				}
+			} else {
+				ephemeralKey = readEphemeralKey(data);
+			}
+
+			String lookupToken = null;
+			if((flags & FLAG_LOOKUP) != 0) {
+				var token = new byte[data.readUnsignedByte()];
+				data.readFully(token);
+				lookupToken = new String(token, StandardCharsets.UTF_8);
+			}
+
+			return new FileHeader(version, flags, chunkSize, ephemeralKey, recipients, lookupToken);
+		} catch (EOFException e) {
+			throw new InvalidFormatException("Truncated file header.", e);
+		}
+	}
+
+	private static byte[] readEphemeralKey(DataInputStream data) throws IOException {
+		int keyLength = data.readUnsignedShort();
+		if(keyLength == 0 || keyLength > MAX_KEY_LENGTH) {
+			throw new InvalidFormatException("Invalid ephemeral key length: " + keyLength);
+		}
+		var ephemeralKey = new byte[keyLength];
+		data.readFully(ephemeralKey);
+		return ephemeralKey;
+	}
+
+	/**
+	 * Check if the given file starts with the chunked format magic number.
+	 * Files without it were encrypted with the legacy whole-file ECIES format.
+	 * @param file the file to check
+	 * @return true if the file uses the chunked format
+	 * @throws IOException
+	 */
+	static boolean matches(File file) throws IOException {
+		try(var input = new FileInputStream(file)) {
+			var magic = input.readNBytes(MAGIC.length);
+			return Arrays.equals(MAGIC, magic);
+		}
+	}
+
+	/**
+	 * The file key wrapped for one recipient.
+	 */
+	static final class Recipient {
+
+		private final byte[] ephemeralKey;
+		private final byte[] wrappedKey;
+
+		/**
+		 * @param ephemeralKey the encoded ephemeral public key
+		 * @param wrappedKey the wrapped file key, 40 bytes
+		 */
+		Recipient(byte[] ephemeralKey, byte[] wrappedKey) {
+			this.ephemeralKey = ephemeralKey;
+			this.wrappedKey = wrappedKey;
+		}
+
+		final byte[] getEphemeralKey() {
+			return ephemeralKey;
+		}
+
+		final byte[] getWrappedKey() {
+			return wrappedKey;
+		}
+
+	}
+
+}
@@ -18,69 +18,76 @@
  package fr.elyssif.client.security;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.security.MessageDigest;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.StandardOpenOption;
 import java.security.NoSuchAlgorithmException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.bouncycastle.util.Arrays;
-
 import fr.elyssif.client.callback.ErrorCallback;
 import fr.elyssif.client.callback.HashCallback;
 
 /**
  * Utility class able to hash large files.
+ * Files are read through a {@link BlockReader} so the data is never copied to the Java heap.
+ * Directories are hashed as the {@link Tar} archive they are encrypted as.
  * @author Jérémy LAMBERT
  *
  */
 public abstract class Hash {
 
-	private static final int BUFFER_LENGTH = 2048;
+	static final String SHA256 = "SHA-256";
 
 	/**
-	 * Asynchronous SHA-256 hash of the given source file.
-	 * @param source the source file to hash
+	 * Asynchronous SHA-256 hash of the given source file or directory.
+	 * If the {@link DigestCache} is enabled and holds the digest of the file,
+	 * the file isn't read. Directories are never cached.
+	 * @param source the source file or directory to hash
 	 * @param callback the callback executed on success
 	 * @param failCallback the callback executed on error
 	 */
 	public static final void sha256(File source, HashCallback callback, ErrorCallback failCallback) {
-		hash("SHA-256", source, callback, failCallback);
+		hash(SHA256, source, callback, failCallback);
 	}
 
 	private static final void hash(String method, File source, HashCallback callback, ErrorCallback failCallback) {
-		new Thread(() -> { 
+		IOScheduler.submit(source, () -> {
+
+			boolean directory = source.isDirectory();
+			try(ReadableByteChannel channel = directory ? new ArchiveChannel(source) : FileChannel.open(source.toPath(), StandardOpenOption.READ)) {
+				var cache = SHA256.equals(method) && !directory ? DigestCache.getInstance() : null;
+				String key = cache != null ? DigestCache.key(source) : null;
+				var cached = cache != null ? cache.get(key) : null;
+				if(cached != null) {
+					callback.run(cached);
+					return;
+				}
 
-			FileInputStream isr = null;
-			try {
-				int read;
-				var md = MessageDigest.getInstance(method);
-				var buffer = new byte[BUFFER_LENGTH];
-				isr = new FileInputStream(source);
+				var md = Providers.digest(method);
+				int blockSize = BlockReader.getBlockSize();
+				var reader = new BlockReader(channel, blockSize);
+				var buffer = reader.isMapped() ? null : ByteBuffer.allocateDirect(blockSize);
 
-				while((read = isr.read(buffer)) != -1) {
-					md.update(Arrays.copyOf(buffer, read));
+				ByteBuffer block;
+				while((block = reader.read(buffer)).hasRemaining()) {
+					md.update(block);
 				}
 
 				var digest = md.digest();
+				if(cache != null) {
+					cache.putIfUnchanged(source, key, digest);
+				}
 				callback.run(digest);
 
 			} catch (IOException | NoSuchAlgorithmException e) {
 				Logger.getGlobal().log(Level.SEVERE, "Error while hashing file.", e);
 				failCallback.run(e);
-			} finally {
-				if(isr != null) {
-					try {
-						isr.close();
-					} catch (IOException e) {
-						Logger.getGlobal().log(Level.SEVERE, "Couldn't close file input stream.", e);
-						failCallback.run(e);
-					}
-				}
 			}
 
-		}).start();
+		});
 	}
 
 	/**
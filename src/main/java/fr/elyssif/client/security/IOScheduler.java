@@ -0,0 +1,163 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import fr.elyssif.client.Config;
+
+/**
+ * Schedules file jobs (hashing, encryption, decryption) according to the
+ * device they read or write.<br>
+ * Each device ({@link FileStore}) has its own lane running a limited amount
+ * of jobs at once, so large sequential reads on the same disk don't thrash
+ * it while jobs on different devices still run in parallel. A job writing
+ * to another device than the one it reads from goes through the lane of its
+ * destination.<br>
+ * Small files don't wait behind large ones in the lane of their device: they
+ * share a small bounded pool instead, so a batch of small files doesn't hit the
+ * disk all at once either. Directories always go through the lane, as archiving
+ * them reads every file they contain.
+ * @author Jérémy LAMBERT
+ *
+ * @see #setDeviceConcurrency(int)
+ */
+public final class IOScheduler {
+
+	private static final long SMALL_FILE_SIZE = 16 * 1024 * 1024;
+	private static final long LANE_KEEP_ALIVE = 30;
+	private static final int SMALL_FILE_THREADS = 4;
+
+	private static int deviceConcurrency = 1;
+	private static final HashMap<FileStore, ThreadPoolExecutor> lanes = new HashMap<>();
+	private static ThreadPoolExecutor smallFiles;
+
+	private IOScheduler() {}
+
+	/**
+	 * Run the given job asynchronously, in the lane of the device holding the given file.
+	 * @param file the file or directory read by the job
+	 * @param job the job to run
+	 */
+	static void submit(File file, Runnable job) {
+		submit(file, null, job);
+	}
+
+	/**
+	 * Run the given job asynchronously, in the lane of the device holding the given destination
+	 * if it differs from the device holding the given file, in the lane of the latter otherwise.
+	 * @param file the file or directory read by the job
+	 * @param destination the file written by the job, nullable. It doesn't have to exist yet.
+	 * @param job the job to run
+	 */
+	static void submit(File file, File destination, Runnable job) {
+		FileStore store = null;
+		if(file.isDirectory() || file.length() >= SMALL_FILE_SIZE) {
+			store = getStore(file);
+			var destinationStore = destination != null ? getStore(destination) : null;
+			if(destinationStore != null) {
+				store = destinationStore;
+			}
+		}
+
+		if(store == null) {
+			getSmallFiles().execute(job); // Small file or unknown device, the job will report the error itself
+		} else {
+			getLane(store).execute(job);
+		}
+	}
+
+	/**
+	 * Get the device holding the given file, or its closest existing parent if it doesn't exist yet.
+	 * @return the device, null if unknown
+	 */
+	private static FileStore getStore(File file) {
+		var path = file.getAbsoluteFile().toPath();
+		while(path != null && !Files.exists(path)) {
+			path = path.getParent();
+		}
+		try {
+			return path != null ? Files.getFileStore(path) : null;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	private static synchronized ThreadPoolExecutor getSmallFiles() {
+		if(smallFiles == null) {
+			smallFiles = new ThreadPoolExecutor(SMALL_FILE_THREADS, SMALL_FILE_THREADS, LANE_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), job -> {
+				var thread = new Thread(job, "io-small");
+				thread.setDaemon(true);
+				return thread;
+			});
+			smallFiles.allowCoreThreadTimeOut(true);
+		}
+		return smallFiles;
+	}
+
+	private static synchronized ThreadPoolExecutor getLane(FileStore store) {
+		var lane = lanes.get(store);
+		if(lane == null) {
+			if(Config.getInstance().isVerbose())
+				Logger.getGlobal().info("Creating I/O lane for device \"" + store.name() + "\"");
+
+			lane = new ThreadPoolExecutor(deviceConcurrency, deviceConcurrency, LANE_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), job -> {
+				var thread = new Thread(job, "io-" + store.name());
+				thread.setDaemon(true);
+				return thread;
+			});
+			lane.allowCoreThreadTimeOut(true);
+			lanes.put(store, lane);
+		}
+		return lane;
+	}
+
+	/**
+	 * Set the amount of jobs reading the same device at once.
+	 * @param concurrency the amount of jobs, 1 for spinning disks. Zero or less to use the default (1)
+	 */
+	public static final synchronized void setDeviceConcurrency(int concurrency) {
+		deviceConcurrency = concurrency > 0 ? concurrency : 1;
+		for(var lane : lanes.values()) {
+			if(deviceConcurrency > lane.getMaximumPoolSize()) {
+				lane.setMaximumPoolSize(deviceConcurrency);
+				lane.setCorePoolSize(deviceConcurrency);
+			} else {
+				lane.setCorePoolSize(deviceConcurrency);
+				lane.setMaximumPoolSize(deviceConcurrency);
+			}
+		}
+	}
+
+	/**
+	 * Get the amount of jobs reading the same device at once.
+	 * @return deviceConcurrency
+	 */
+	public static final synchronized int getDeviceConcurrency() {
+		return deviceConcurrency;
+	}
+
+}
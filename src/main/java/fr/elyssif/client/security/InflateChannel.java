@@ -0,0 +1,112 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Writable channel decompressing the data written to it (zlib format)
+ * before writing it to another channel.
+ * @author Jérémy LAMBERT
+ *
+ * @see DeflateChannel
+ */
+final class InflateChannel implements WritableByteChannel {
+
+	private static final int BUFFER_LENGTH = 64 * 1024;
+
+	private final WritableByteChannel channel;
+	private final Inflater inflater;
+	private final ByteBuffer output;
+	private boolean open;
+
+	/**
+	 * Create a new instance of InflateChannel.
+	 * @param channel the channel to write the decompressed data to
+	 */
+	InflateChannel(WritableByteChannel channel) {
+		this.channel = channel;
+		this.inflater = new Inflater();
+		this.output = ByteBuffer.allocateDirect(BUFFER_LENGTH);
+		this.open = true;
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		if(!open) {
+			throw new ClosedChannelException();
+		}
+
+		int length = src.remaining();
+		inflater.setInput(src);
+		try {
+			while(!inflater.finished()) {
+				output.clear();
+				int inflated = inflater.inflate(output);
+				output.flip();
+				while(output.hasRemaining()) {
+					channel.write(output);
+				}
+
+				if(inflater.needsDictionary()) {
+					throw new InvalidFormatException("Invalid compressed data.");
+				}
+				if(inflated == 0 && inflater.needsInput()) {
+					break;
+				}
+			}
+		} catch (DataFormatException e) {
+			throw new InvalidFormatException("Invalid compressed data.", e);
+		}
+
+		if(src.hasRemaining()) {
+			throw new InvalidFormatException("Unexpected data after compressed content.");
+		}
+		return length;
+	}
+
+	/**
+	 * Check that the whole compressed content has been written.
+	 * @throws InvalidFormatException if the compressed content is truncated
+	 */
+	void finish() throws InvalidFormatException {
+		if(!inflater.finished()) {
+			throw new InvalidFormatException("Compressed content is truncated.");
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return open;
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(open) {
+			open = false;
+			inflater.end();
+			channel.close();
+		}
+	}
+
+}
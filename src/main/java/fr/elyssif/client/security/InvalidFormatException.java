@@ -0,0 +1,41 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.io.IOException;
+
+/**
+ * Exception thrown when an encrypted file is malformed, truncated
+ * or uses an unsupported version of the format.
+ * @author Jérémy LAMBERT
+ *
+ * @see FileHeader
+ */
+public class InvalidFormatException extends IOException {
+
+	private static final long serialVersionUID = -2318810958431529411L;
+
+	public InvalidFormatException(String message) {
+		super(message);
+	}
+
+	public InvalidFormatException(String message, Throwable throwable) {
+		super(message, throwable);
+	}
+
+}
@@ -0,0 +1,62 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Handle of an asynchronous encryption or decryption job.<br>
+ * Cancellation takes effect between two chunks: the job then fails
+ * with a {@link CancellationException}. Chunked jobs leave a checkpoint
+ * next to their destination so they can be resumed.
+ * @author Jérémy LAMBERT
+ *
+ * @see Crypter#hasCheckpoint(java.io.File)
+ */
+public final class Job {
+
+	private volatile boolean cancelled;
+
+	Job() {}
+
+	/**
+	 * Request the cancellation of the job.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Get if the cancellation of the job has been requested.
+	 * @return true if cancelled
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Throw if the cancellation of the job has been requested.
+	 * @throws CancellationException if cancelled
+	 */
+	void checkCancelled() {
+		if(cancelled) {
+			throw new CancellationException("Job cancelled.");
+		}
+	}
+
+}
@@ -0,0 +1,198 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyAgreement;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.bouncycastle.crypto.digests.SHA256Digest;
+import org.bouncycastle.crypto.generators.HKDFBytesGenerator;
+import org.bouncycastle.crypto.params.HKDFParameters;
+
+/**
+ * Elliptic curve key encapsulation (ECDH over secp256k1 with an ephemeral
+ * key pair) yielding the symmetric key of an encrypted file.<br>
+ * The shared secret is expanded with HKDF-SHA256, salted with the encoded
+ * ephemeral public key.<br>
+ * With several recipients, the file key is random and is wrapped (AES key wrap)
+ * for each recipient with a key encapsulated the same way, so the content is
+ * only encrypted once.
+ * @author Jérémy LAMBERT
+ *
+ */
+final class KeyEncapsulation {
+
+	static final String CURVE = "secp256k1";
+	private static final int KEY_LENGTH = 32;
+	private static final byte[] INFO = "elyssif-file-key-v1".getBytes(StandardCharsets.US_ASCII);
+	private static final byte[] WRAP_INFO = "elyssif-wrap-key-v1".getBytes(StandardCharsets.US_ASCII);
+	private static final String WRAP_TRANSFORMATION = "AESWrap";
+
+	private final SecretKey key;
+	private final byte[] ephemeralKey;
+	private final List<FileHeader.Recipient> recipients;
+
+	private KeyEncapsulation(SecretKey key, byte[] ephemeralKey, List<FileHeader.Recipient> recipients) {
+		this.key = key;
+		this.ephemeralKey = ephemeralKey;
+		this.recipients = recipients;
+	}
+
+	/**
+	 * Get the derived symmetric key.
+	 * @return key
+	 */
+	final SecretKey getKey() {
+		return key;
+	}
+
+	/**
+	 * Get the encoded ephemeral public key, to be stored in the file header.
+	 * @return ephemeralKey, null if the key is wrapped for several recipients
+	 */
+	final byte[] getEphemeralKey() {
+		return ephemeralKey;
+	}
+
+	/**
+	 * Get the file key wrapped for each recipient, to be stored in the file header.
+	 * @return recipients, null if there is a single recipient
+	 */
+	final List<FileHeader.Recipient> getRecipients() {
+		return recipients;
+	}
+
+	/**
+	 * Create the header of a file encrypted with this key.
+	 * @param flags the format flags
+	 * @param chunkSize the plaintext length of a full chunk
+	 * @param lookupToken the token identifying the file on the server, nullable
+	 * @return the header
+	 */
+	final FileHeader createHeader(int flags, int chunkSize, String lookupToken) {
+		if(recipients != null) {
+			return new FileHeader(flags, chunkSize, recipients, lookupToken);
+		}
+		return new FileHeader(flags, chunkSize, ephemeralKey, lookupToken);
+	}
+
+	/**
+	 * Take an ephemeral key pair from the pool and derive a new symmetric key for the given recipient.
+	 * @param recipient the recipient's public key
+	 * @return the encapsulation holding the symmetric key and the ephemeral public key
+	 * @throws GeneralSecurityException
+	 */
+	static KeyEncapsulation encapsulate(PublicKey recipient) throws GeneralSecurityException {
+		var ephemeral = EphemeralKeyPool.getInstance().take();
+
+		byte[] encoded = ((org.bouncycastle.jce.interfaces.ECPublicKey) ephemeral.getPublic()).getQ().getEncoded(false);
+		return new KeyEncapsulation(derive(ephemeral.getPrivate(), recipient, encoded, INFO), encoded, null);
+	}
+
+	/**
+	 * Generate a new symmetric key and wrap it for each of the given recipients.
+	 * A single recipient gets a directly derived key instead.
+	 * @param recipients the recipients' public keys, at most 255
+	 * @return the encapsulation holding the symmetric key and the key wrapped for each recipient
+	 * @throws GeneralSecurityException
+	 */
+	static KeyEncapsulation encapsulate(List<PublicKey> recipients) throws GeneralSecurityException {
+		if(recipients.size() == 1) {
+			return encapsulate(recipients.get(0));
+		}
+
+		var generator = KeyGenerator.getInstance("AES");
+		generator.init(KEY_LENGTH * 8);
+		var key = generator.generateKey();
+
+		var cipher = Cipher.getInstance(WRAP_TRANSFORMATION);
+		var wrapped = new ArrayList<FileHeader.Recipient>(recipients.size());
+		for(var recipient : recipients) {
+			var ephemeral = EphemeralKeyPool.getInstance().take();
+			byte[] encoded = ((org.bouncycastle.jce.interfaces.ECPublicKey) ephemeral.getPublic()).getQ().getEncoded(false);
+			cipher.init(Cipher.WRAP_MODE, derive(ephemeral.getPrivate(), recipient, encoded, WRAP_INFO));
+			wrapped.add(new FileHeader.Recipient(encoded, cipher.wrap(key)));
+		}
+		return new KeyEncapsulation(key, null, wrapped);
+	}
+
+	/**
+	 * Derive the symmetric key of a file from the recipient's private key
+	 * and the ephemeral public key stored in the file header.
+	 * @param privateKey the recipient's private key
+	 * @param ephemeralKey the encoded ephemeral public key
+	 * @return the symmetric key
+	 * @throws GeneralSecurityException
+	 */
+	static SecretKey decapsulate(PrivateKey privateKey, byte[] ephemeralKey) throws GeneralSecurityException {
+		return derive(privateKey, CryptoContext.getInstance().decodePublicKey(ephemeralKey), ephemeralKey, INFO);
+	}
+
+	/**
+	 * Derive or unwrap the symmetric key of a file from the recipient's private key
+	 * and the file header.
+	 * @param privateKey the recipient's private key
+	 * @param header the file header
+	 * @return the symmetric key
+	 * @throws InvalidKeyException if the file key isn't wrapped for the given private key
+	 * @throws GeneralSecurityException
+	 */
+	static SecretKey decapsulate(PrivateKey privateKey, FileHeader header) throws GeneralSecurityException {
+		if(header.getRecipients() == null) {
+			return decapsulate(privateKey, header.getEphemeralKey());
+		}
+
+		var cipher = Cipher.getInstance(WRAP_TRANSFORMATION);
+		for(var recipient : header.getRecipients()) {
+			byte[] ephemeralKey = recipient.getEphemeralKey();
+			cipher.init(Cipher.UNWRAP_MODE, derive(privateKey, CryptoContext.getInstance().decodePublicKey(ephemeralKey), ephemeralKey, WRAP_INFO));
+			try {
+				return (SecretKey) cipher.unwrap(recipient.getWrappedKey(), "AES", Cipher.SECRET_KEY);
+			} catch (InvalidKeyException e) {
+				// Wrapped for another recipient
+			}
+		}
+		throw new InvalidKeyException("The private key doesn't match any recipient of the file.");
+	}
+
+	private static SecretKey derive(Key privateKey, PublicKey publicKey, byte[] salt, byte[] info) throws GeneralSecurityException {
+		var agreement = KeyAgreement.getInstance("ECDH", CryptoContext.getInstance().getProvider());
+		agreement.init(privateKey);
+		agreement.doPhase(publicKey, true);
+		byte[] secret = agreement.generateSecret();
+
+		var hkdf = new HKDFBytesGenerator(new SHA256Digest());
+		hkdf.init(new HKDFParameters(secret, salt, info));
+		var keyBytes = new byte[KEY_LENGTH];
+		hkdf.generateBytes(keyBytes, 0, KEY_LENGTH);
+		return new SecretKeySpec(keyBytes, "AES");
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.util.function.LongConsumer;
+
+import fr.elyssif.client.callback.ProgressCallback;
+import fr.elyssif.client.callback.ProgressCallbackData;
+
+/**
+ * Accumulates the amount of bytes processed by a job and reports its
+ * progress at most once per sample interval, along with a smoothed
+ * throughput and the estimated remaining time. Completion is always reported.<br>
+ * Instances are not thread-safe and must be fed by a single thread.
+ * @author Jérémy LAMBERT
+ *
+ */
+final class ProgressReporter implements LongConsumer {
+
+	static final long SAMPLE_INTERVAL = 50_000_000; // 50ms
+	private static final double SMOOTHING = 0.3;
+
+	private final long total;
+	private final ProgressCallback callback;
+
+	private long processed;
+	private long sampleProcessed;
+	private long sampleTime;
+	private double bytesPerSecond;
+	private boolean completed;
+
+	/**
+	 * Create a new instance of ProgressReporter.
+	 * @param total the total amount of bytes to process
+	 * @param initial the amount of bytes already processed
+	 * @param callback the callback receiving the samples
+	 */
+	ProgressReporter(long total, long initial, ProgressCallback callback) {
+		this.total = total;
+		this.callback = callback;
+		this.processed = initial;
+		this.sampleProcessed = initial;
+		this.sampleTime = System.nanoTime();
+	}
+
+	/**
+	 * Add processed bytes, reporting the progress if the sample interval elapsed.
+	 * @param bytes the amount of bytes processed since the last call
+	 */
+	@Override
+	public void accept(long bytes) {
+		update(processed + bytes);
+	}
+
+	/**
+	 * Set the total amount of processed bytes, reporting the progress if the sample interval elapsed.
+	 * @param processed the amount of bytes processed since the beginning of the job
+	 */
+	public void update(long processed) {
+		this.processed = processed;
+
+		boolean done = processed >= total;
+		long now = System.nanoTime();
+		long elapsed = now - sampleTime;
+		if(completed || (!done && elapsed < SAMPLE_INTERVAL)) {
+			return;
+		}
+
+		if(elapsed > 0) {
+			double rate = (processed - sampleProcessed) * 1_000_000_000d / elapsed;
+			bytesPerSecond = bytesPerSecond == 0 ? rate : bytesPerSecond + SMOOTHING * (rate - bytesPerSecond);
+		}
+		sampleProcessed = processed;
+		sampleTime = now;
+		completed = done;
+
+		long remainingSeconds = done ? 0 : bytesPerSecond > 0 ? (long) Math.ceil((total - processed) / bytesPerSecond) : -1;
+		double progress = total == 0 ? 1 : Math.min(1, (double) processed / total);
+		callback.progress(new ProgressCallbackData(progress, processed, total, bytesPerSecond, remainingSeconds));
+	}
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.Provider;
+import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import fr.elyssif.client.Config;
+
+/**
+ * Selects the security providers used for SHA-256 and for the chunk cipher.<br>
+ * Registering BouncyCastle adds a second implementation of both, which may be
+ * picked instead of the JDK ones using the SHA and AES CPU instructions. On first
+ * start, whenever the Java runtime changes, or at every start if the
+ * <code>ReprobeProviders</code> setting is enabled, every provider is benchmarked
+ * on a background thread and the result is saved to the config.<br>
+ * Each provider is warmed up long enough for the JIT to compile its intrinsics, then
+ * the providers are measured in interleaved rounds so none is favored by the probe
+ * order, and the median round is kept. The default provider is only replaced by one
+ * that is clearly faster, so a noisy sample never picks a provider permanently.
+ * @author Jérémy LAMBERT
+ *
+ * @see #select()
+ */
+public final class Providers {
+
+	private static final int PROBE_LENGTH = 64 * 1024;
+	private static final int PROBE_ROUNDS = 7;
+	private static final long WARM_UP_DURATION = 1_000_000_000; // Nanoseconds
+	private static final long ROUND_DURATION = 200_000_000; // Nanoseconds
+	private static final double PROBE_MARGIN = 1.1; // Speedup required to replace the default provider
+
+	private static Provider digestProvider;
+	private static Provider cipherProvider;
+
+	private Providers() {}
+
+	/**
+	 * Select the providers saved in the config. If they are missing, no longer
+	 * available, were chosen for another Java runtime or the <code>ReprobeProviders</code>
+	 * setting is enabled, probe the providers again on a background thread and save the result.
+	 * The saved providers, or the default ones, are used until the probe completes.
+	 */
+	public static final synchronized void select() {
+		CryptoContext.getInstance(); // Registers BouncyCastle so it is probed too
+
+		var config = Config.getInstance();
+		String runtime = Runtime.version().toString();
+		digestProvider = find(config.get("DigestProvider"), Providers::supportsDigest);
+		cipherProvider = find(config.get("CipherProvider"), Providers::supportsCipher);
+		if(runtime.equals(config.get("ProvidersRuntime")) && digestProvider != null && cipherProvider != null
+				&& !"true".equals(config.get("ReprobeProviders"))) {
+			return;
+		}
+
+		var thread = new Thread(() -> probeAll(runtime), "provider-probe");
+		thread.setDaemon(true);
+		thread.setPriority(Thread.MIN_PRIORITY);
+		thread.start();
+	}
+
+	/**
+	 * Probe the providers, use the fastest ones and save them to the config.
+	 */
+	private static void probeAll(String runtime) {
+		Logger.getGlobal().info("Probing security providers...");
+		var digest = probe(Providers::supportsDigest, Providers::benchmarkDigest);
+		var cipher = probe(Providers::supportsCipher, Providers::benchmarkCipher);
+		synchronized(Providers.class) {
+			digestProvider = digest;
+			cipherProvider = cipher;
+		}
+		Logger.getGlobal().info("Digest provider: " + getDigestProvider());
+		Logger.getGlobal().info("Cipher provider: " + getCipherProvider());
+
+		var config = Config.getInstance();
+		synchronized(config) {
+			config.set("DigestProvider", digest != null ? digest.getName() : null);
+			config.set("CipherProvider", cipher != null ? cipher.getName() : null);
+			config.set("ProvidersRuntime", runtime);
+			config.save();
+		}
+	}
+
+	/**
+	 * Get the name of the provider used for SHA-256.
+	 * @return the name, null if the default provider is used
+	 */
+	public static final synchronized String getDigestProvider() {
+		return digestProvider != null ? digestProvider.getName() : null;
+	}
+
+	/**
+	 * Get the name of the provider used for the chunk cipher.
+	 * @return the name, null if the default provider is used
+	 */
+	public static final synchronized String getCipherProvider() {
+		return cipherProvider != null ? cipherProvider.getName() : null;
+	}
+
+	/**
+	 * Get a message digest from the selected provider if the algorithm is SHA-256,
+	 * from the default provider otherwise.
+	 * @param algorithm the name of the algorithm
+	 * @return the message digest
+	 * @throws NoSuchAlgorithmException
+	 */
+	static MessageDigest digest(String algorithm) throws NoSuchAlgorithmException {
+		Provider provider;
+		synchronized(Providers.class) {
+			provider = digestProvider;
+		}
+		return provider != null && Hash.SHA256.equals(algorithm) ? MessageDigest.getInstance(algorithm, provider) : MessageDigest.getInstance(algorithm);
+	}
+
+	/**
+	 * Get a chunk cipher from the selected provider.
+	 * @return the cipher
+	 * @throws NoSuchAlgorithmException
+	 * @throws NoSuchPaddingException
+	 */
+	static Cipher cipher() throws NoSuchAlgorithmException, NoSuchPaddingException {
+		Provider provider;
+		synchronized(Providers.class) {
+			provider = cipherProvider;
+		}
+		return provider != null ? Cipher.getInstance(ChunkCipher.TRANSFORMATION, provider) : Cipher.getInstance(ChunkCipher.TRANSFORMATION);
+	}
+
+	private static Provider find(String name, Candidate candidate) {
+		if(name == null || name.isEmpty()) {
+			return null;
+		}
+		var provider = Security.getProvider(name);
+		return provider != null && candidate.supports(provider) ? provider : null;
+	}
+
+	/**
+	 * Benchmark every provider supporting the algorithm.
+	 * @return the fastest provider if it is clearly faster than the default one,
+	 * the default one otherwise. Null if none could be benchmarked
+	 */
+	private static Provider probe(Candidate candidate, Benchmark benchmark) {
+		var input = ByteBuffer.allocateDirect(PROBE_LENGTH);
+		var output = ByteBuffer.allocateDirect(PROBE_LENGTH + ChunkCipher.TAG_LENGTH);
+		var providers = new ArrayList<Provider>();
+		for(var provider : Security.getProviders()) {
+			if(!candidate.supports(provider)) {
+				continue;
+			}
+
+			try {
+				benchmark.run(provider, input, output, WARM_UP_DURATION);
+				providers.add(provider);
+			} catch (GeneralSecurityException e) {
+				Logger.getGlobal().log(Level.WARNING, "Couldn't probe the " + provider.getName() + " provider.", e);
+			}
+		}
+		if(providers.isEmpty()) {
+			return null;
+		}
+
+		// Interleaved rounds, starting with a different provider each time
+		var throughputs = new double[providers.size()][PROBE_ROUNDS];
+		try {
+			for(int round = 0 ; round < PROBE_ROUNDS ; round++) {
+				for(int i = 0 ; i < providers.size() ; i++) {
+					int index = (round + i) % providers.size();
+					throughputs[index][round] = benchmark.run(providers.get(index), input, output, ROUND_DURATION);
+				}
+			}
+		} catch (GeneralSecurityException e) {
+			Logger.getGlobal().log(Level.WARNING, "Couldn't probe security providers, using the default one.", e);
+			return providers.get(0);
+		}
+
+		// Security.getProviders() is in preference order, the first one is the default
+		int fastest = 0;
+		var medians = new double[providers.size()];
+		for(int i = 0 ; i < providers.size() ; i++) {
+			Arrays.sort(throughputs[i]);
+			medians[i] = throughputs[i][PROBE_ROUNDS / 2];
+			if(Config.getInstance().isVerbose())
+				Logger.getGlobal().info(providers.get(i).getName() + ": " + String.format("%.0f", medians[i] / (1024 * 1024)) + " MB/s");
+			if(medians[i] > medians[fastest]) {
+				fastest = i;
+			}
+		}
+		return medians[fastest] >= medians[0] * PROBE_MARGIN ? providers.get(fastest) : providers.get(0);
+	}
+
+	private static boolean supportsDigest(Provider provider) {
+		return provider.getService("MessageDigest", Hash.SHA256) != null;
+	}
+
+	private static boolean supportsCipher(Provider provider) {
+		try {
+			Cipher.getInstance(ChunkCipher.TRANSFORMATION, provider);
+			return true;
+		} catch (NoSuchAlgorithmException | NoSuchPaddingException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @return the throughput in bytes per second
+	 */
+	private static double benchmarkDigest(Provider provider, ByteBuffer input, ByteBuffer output, long duration) throws GeneralSecurityException {
+		var md = MessageDigest.getInstance(Hash.SHA256, provider);
+		long start = System.nanoTime();
+		long processed = 0;
+		long elapsed;
+		do {
+			md.update(input.clear());
+			md.digest();
+			processed += PROBE_LENGTH;
+		} while((elapsed = System.nanoTime() - start) < duration);
+		return processed * 1e9 / elapsed;
+	}
+
+	/**
+	 * @return the throughput in bytes per second
+	 */
+	private static double benchmarkCipher(Provider provider, ByteBuffer input, ByteBuffer output, long duration) throws GeneralSecurityException {
+		var cipher = Cipher.getInstance(ChunkCipher.TRANSFORMATION, provider);
+		var key = new SecretKeySpec(new byte[32], "AES");
+		var nonce = ByteBuffer.allocate(12);
+		long counter = 0;
+		long start = System.nanoTime();
+		long processed = 0;
+		long elapsed;
+		do {
+			nonce.putLong(0, ++counter); // GCM refuses to reuse a nonce with the same key
+			cipher.init(Cipher.ENCRYPT_MODE, key, new GCMParameterSpec(ChunkCipher.TAG_LENGTH * 8, nonce.array()));
+			cipher.doFinal(input.clear(), output.clear());
+			processed += PROBE_LENGTH;
+		} while((elapsed = System.nanoTime() - start) < duration);
+		return processed * 1e9 / elapsed;
+	}
+
+	@FunctionalInterface
+	private interface Candidate {
+		boolean supports(Provider provider);
+	}
+
+	@FunctionalInterface
+	private interface Benchmark {
+		double run(Provider provider, ByteBuffer input, ByteBuffer output, long duration) throws GeneralSecurityException;
+	}
+
+}
@@ -0,0 +1,383 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client.security;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Logger;
+
+/**
+ * POSIX tar (ustar) format used to stream directories through the encryption pipeline.<br>
+ * Archives are deterministic: entries are sorted by name and only carry the path,
+ * size, permissions and modification time of the files, so archiving the same tree
+ * twice gives the same bytes. This lets a directory be hashed then encrypted in
+ * two passes without a temporary copy.<br>
+ * Paths that don't fit in the ustar fields, non-ASCII paths and sizes of 8 GiB
+ * or more are stored in a pax extended header. Symbolic links and special files
+ * are skipped.
+ * @author Jérémy LAMBERT
+ *
+ * @see ArchiveChannel
+ * @see ArchiveExtractor
+ */
+final class Tar {
+
+	static final int BLOCK_SIZE = 512;
+
+	static final byte TYPE_FILE = '0';
+	static final byte TYPE_FILE_OLD = 0;
+	static final byte TYPE_DIRECTORY = '5';
+	static final byte TYPE_PAX = 'x';
+	static final byte TYPE_PAX_GLOBAL = 'g';
+
+	private static final int NAME_LENGTH = 100;
+	private static final int PREFIX_LENGTH = 155;
+	private static final long MAX_OCTAL_SIZE = 077777777777L;
+	private static final byte[] MAGIC = { 'u', 's', 't', 'a', 'r', 0, '0', '0' };
+
+	private Tar() {}
+
+	/**
+	 * List the entries of the archive of the given directory. The directory
+	 * itself is the first entry, so the archive extracts to a single folder.
+	 * @param directory the directory to archive
+	 * @return the entries, in archive order
+	 * @throws IOException
+	 */
+	static List<Entry> scan(File directory) throws IOException {
+		var entries = new ArrayList<Entry>();
+		scan(directory, directory.getName() + "/", entries);
+		return entries;
+	}
+
+	private static void scan(File directory, String path, List<Entry> entries) throws IOException {
+		entries.add(new Entry(directory, path, true, 0, 0755, directory.lastModified()));
+
+		var children = directory.listFiles();
+		if(children == null) {
+			throw new IOException("Couldn't list directory \"" + directory + "\".");
+		}
+		Arrays.sort(children, (a, b) -> a.getName().compareTo(b.getName()));
+
+		for(File child : children) {
+			var attributes = Files.readAttributes(child.toPath(), BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+			if(attributes.isDirectory()) {
+				scan(child, path + child.getName() + "/", entries);
+			} else if(attributes.isRegularFile()) {
+				int mode = child.canExecute() ? 0755 : 0644;
+				entries.add(new Entry(child, path + child.getName(), false, attributes.size(), mode, attributes.lastModifiedTime().toMillis()));
+			} else {
+				Logger.getGlobal().warning("Skipping \"" + child + "\" while archiving, not a regular file.");
+			}
+		}
+	}
+
+	/**
+	 * Get the length of the archive made of the given entries.
+	 * @param entries
+	 * @return the length in bytes, including the end-of-archive blocks
+	 */
+	static long length(List<Entry> entries) {
+		long length = 2 * BLOCK_SIZE;
+		for(var entry : entries) {
+			length += headerLength(entry) + pad(entry.size);
+		}
+		return length;
+	}
+
+	/**
+	 * Get the length of the header blocks of the given entry, including its pax extended header.
+	 * @param entry
+	 * @return the length in bytes
+	 */
+	static int headerLength(Entry entry) {
+		var pax = paxRecords(entry);
+		return pax == null ? BLOCK_SIZE : 2 * BLOCK_SIZE + (int) pad(pax.length);
+	}
+
+	/**
+	 * Write the header blocks of the given entry.
+	 * @param entry
+	 * @param buffer the buffer to write to, with at least <code>headerLength(entry)</code> bytes remaining
+	 */
+	static void writeHeader(Entry entry, ByteBuffer buffer) {
+		var pax = paxRecords(entry);
+		if(pax != null) {
+			writeBlock(buffer, "PaxHeaders/" + ascii(entry.path), pax.length, 0644, entry.modified, TYPE_PAX);
+			buffer.put(pax);
+			buffer.put(new byte[(int) (pad(pax.length) - pax.length)]);
+		}
+		writeBlock(buffer, ascii(entry.path), entry.size > MAX_OCTAL_SIZE ? 0 : entry.size, entry.mode, entry.modified,
+				entry.directory ? TYPE_DIRECTORY : TYPE_FILE);
+	}
+
+	private static void writeBlock(ByteBuffer buffer, String path, long size, int mode, long modified, byte type) {
+		var block = new byte[BLOCK_SIZE];
+		var name = path.getBytes(StandardCharsets.US_ASCII);
+		if(name.length > NAME_LENGTH) {
+			// Split on a separator: the prefix and the name are joined with a '/' on extraction
+			int split = path.lastIndexOf('/', Math.min(PREFIX_LENGTH, path.length() - 2));
+			if(split > 0 && name.length - split - 1 <= NAME_LENGTH) {
+				System.arraycopy(name, 0, block, 345, split);
+				System.arraycopy(name, split + 1, block, 0, name.length - split - 1);
+			} else {
+				System.arraycopy(name, 0, block, 0, NAME_LENGTH); // Full path in the pax header
+			}
+		} else {
+			System.arraycopy(name, 0, block, 0, name.length);
+		}
+
+		octal(block, 100, 8, mode);
+		octal(block, 108, 8, 0); // uid
+		octal(block, 116, 8, 0); // gid
+		octal(block, 124, 12, size);
+		octal(block, 136, 12, Math.max(0, modified / 1000));
+		block[156] = type;
+		System.arraycopy(MAGIC, 0, block, 257, MAGIC.length);
+
+		Arrays.fill(block, 148, 156, (byte) ' ');
+		octal(block, 148, 7, checksum(block));
+		buffer.put(block);
+	}
+
+	/**
+	 * Build the pax extended header records of the given entry.
+	 * @param entry
+	 * @return the records, null if the entry fits in a ustar header
+	 */
+	private static byte[] paxRecords(Entry entry) {
+		var records = new StringBuilder();
+		var name = entry.path.getBytes(StandardCharsets.UTF_8);
+		if(!fitsUstar(entry.path, name)) {
+			records.append(paxRecord("path", entry.path));
+		}
+		if(entry.size > MAX_OCTAL_SIZE) {
+			records.append(paxRecord("size", String.valueOf(entry.size)));
+		}
+		return records.length() == 0 ? null : records.toString().getBytes(StandardCharsets.UTF_8);
+	}
+
+	private static boolean fitsUstar(String path, byte[] name) {
+		if(name.length != path.length()) {
+			return false; // Not ASCII
+		}
+		if(name.length <= NAME_LENGTH) {
+			return true;
+		}
+		int split = path.lastIndexOf('/', Math.min(PREFIX_LENGTH, path.length() - 2));
+		return split > 0 && name.length - split - 1 <= NAME_LENGTH;
+	}
+
+	/**
+	 * Format a pax record: "length key=value\n", the length counting itself.
+	 */
+	private static String paxRecord(String key, String value) {
+		int length = key.length() + value.getBytes(StandardCharsets.UTF_8).length + 3; // ' ', '=' and '\n'
+		int digits = String.valueOf(length).length();
+		if(String.valueOf(length + digits).length() != digits) {
+			digits++;
+		}
+		return (length + digits) + " " + key + "=" + value + "\n";
+	}
+
+	/**
+	 * Parse pax extended header records.
+	 * @param records the content of the extended header
+	 * @param entry the entry to update with the parsed path and size
+	 * @throws InvalidFormatException if the records are malformed
+	 */
+	static void parsePax(byte[] records, Entry entry) throws InvalidFormatException {
+		int position = 0;
+		while(position < records.length) {
+			int space = position;
+			while(space < records.length && records[space] != ' ') space++;
+			try {
+				int length = Integer.parseInt(new String(records, position, space - position, StandardCharsets.US_ASCII));
+				if(length <= space - position + 1 || position + length > records.length) {
+					throw new InvalidFormatException("Invalid archive extended header.");
+				}
+				var record = new String(records, space + 1, length - (space - position) - 2, StandardCharsets.UTF_8);
+				int equals = record.indexOf('=');
+				if(equals < 0) {
+					throw new InvalidFormatException("Invalid archive extended header.");
+				}
+
+				String key = record.substring(0, equals);
+				String value = record.substring(equals + 1);
+				if(key.equals("path")) {
+					entry.path = value;
+				} else if(key.equals("size")) {
+					entry.size = Long.parseLong(value);
+				}
+				position += length;
+			} catch (NumberFormatException e) {
+				throw new InvalidFormatException("Invalid archive extended header.", e);
+			}
+		}
+	}
+
+	/**
+	 * Parse a header block.
+	 * @param block the header block
+	 * @return the entry, null if the block is an end-of-archive block
+	 * @throws InvalidFormatException if the block is not a valid header
+	 */
+	static Entry readHeader(byte[] block) throws InvalidFormatException {
+		boolean empty = true;
+		for(byte b : block) {
+			if(b != 0) {
+				empty = false;
+				break;
+			}
+		}
+		if(empty) {
+			return null;
+		}
+
+		long expected = parseOctal(block, 148, 8);
+		Arrays.fill(block, 148, 156, (byte) ' ');
+		if(checksum(block) != expected) {
+			throw new InvalidFormatException("Invalid archive header checksum.");
+		}
+
+		String path = string(block, 0, NAME_LENGTH);
+		if(block[257] == 'u' && block[258] == 's' && block[259] == 't' && block[260] == 'a' && block[261] == 'r') {
+			String prefix = string(block, 345, PREFIX_LENGTH);
+			if(!prefix.isEmpty()) {
+				path = prefix + "/" + path;
+			}
+		}
+
+		byte type = block[156];
+		var entry = new Entry(null, path, type == TYPE_DIRECTORY, parseOctal(block, 124, 12), (int) parseOctal(block, 100, 8), parseOctal(block, 136, 12) * 1000);
+		entry.type = type;
+		return entry;
+	}
+
+	/**
+	 * Round the given length up to a multiple of the block size.
+	 * @param length
+	 * @return the padded length
+	 */
+	static long pad(long length) {
+		return (length + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+	}
+
+	private static long checksum(byte[] block) {
+		long sum = 0;
+		for(byte b : block) {
+			sum += b & 0xFF;
+		}
+		return sum;
+	}
+
+	private static void octal(byte[] block, int offset, int length, long value) {
+		var digits = Long.toOctalString(value);
+		int padding = length - 1 - digits.length();
+		for(int i = 0 ; i < padding ; i++) {
+			block[offset + i] = '0';
+		}
+		for(int i = 0 ; i < digits.length() ; i++) {
+			block[offset + padding + i] = (byte) digits.charAt(i);
+		}
+		block[offset + length - 1] = 0;
+	}
+
+	private static long parseOctal(byte[] block, int offset, int length) throws InvalidFormatException {
+		int end = offset + length;
+		long value = 0;
+		if((block[offset] & 0x80) != 0) {
+			// GNU base-256 encoding, used for sizes of 8 GiB or more
+			for(int i = offset + 1 ; i < end ; i++) {
+				value = (value << 8) | (block[i] & 0xFF);
+			}
+			return value;
+		}
+
+		int i = offset;
+		while(i < end && block[i] == ' ') i++;
+		for(; i < end && block[i] != 0 && block[i] != ' ' ; i++) {
+			byte b = block[i];
+			if(b < '0' || b > '7') {
+				throw new InvalidFormatException("Invalid archive header.");
+			}
+			value = (value << 3) + (b - '0');
+		}
+		return value;
+	}
+
+	private static String string(byte[] block, int offset, int length) {
+		int end = offset;
+		while(end < offset + length && block[end] != 0) end++;
+		return new String(block, offset, end - offset, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Replace the non-ASCII characters of a path. The actual path is
+	 * stored in the pax header.
+	 */
+	private static String ascii(String path) {
+		var builder = new StringBuilder(path.length());
+		for(char c : path.toCharArray()) {
+			builder.append(c < 0x80 ? c : '_');
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Entry of an archive.
+	 */
+	static final class Entry {
+
+		final File file;
+		final boolean directory;
+		final int mode;
+		final long modified;
+		String path;
+		long size;
+		byte type;
+
+		/**
+		 * @param file the archived file, null when extracting
+		 * @param path the path in the archive, using '/' separators, ending with '/' for directories
+		 * @param directory
+		 * @param size the length of the content
+		 * @param mode the permissions
+		 * @param modified the modification time in milliseconds
+		 */
+		Entry(File file, String path, boolean directory, long size, int mode, long modified) {
+			this.file = file;
+			this.path = path;
+			this.directory = directory;
+			this.size = size;
+			this.mode = mode;
+			this.modified = modified;
+			this.type = directory ? TYPE_DIRECTORY : TYPE_FILE;
+		}
+
+	}
+
+}
@@ -19,8 +19,14 @@
 
 
 import static fr.elyssif.client.TestUtils.asyncFail;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
@@ -28,15 +34,43 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicReference;
 
+import org.bouncycastle.jce.ECNamedCurveTable;
+import org.bouncycastle.util.encoders.Hex;
 import org.junit.jupiter.api.Test;
 
+import fr.elyssif.client.callback.ErrorCallback;
+import fr.elyssif.client.callback.ProgressCallback;
+import fr.elyssif.client.callback.ProgressCallbackData;
+import fr.elyssif.client.security.BlockReader;
 import fr.elyssif.client.security.Crypter;
+import fr.elyssif.client.security.Hash;
+import fr.elyssif.client.security.InvalidFormatException;
+import fr.elyssif.client.security.Job;
 
 class CrypterTest {
 
+	private static final String PUBLIC_KEY = "0484f064445a8161501803290970d5c8b65f639d606fe603ef1d67ba290606a13c0057be062ca25dfd7d919f57ae1e95848fa228e6976b6cb8daab79eba25751af";
+	private static final String PRIVATE_KEY = "61a224feb41188062da2e205498f4a97a3ddd71f591956518e808fe3657fb0ce";
+
 	@Test
 	public void testEncrypt() {
 
@@ -103,4 +137,734 @@ class CrypterTest {
 		}
 	}
 
+	@Test
+	public void testMultipleChunks() {
+		// Not a multiple of the chunk size
+		assertRoundTrip(200_000);
+		// Exact multiple of the chunk size, ends with an empty chunk
+		assertRoundTrip(128 * 1024);
+		assertRoundTrip(0);
+	}
+
+	@Test
+	public void testParallelism() {
+		int parallelism = Crypter.getParallelism();
+		try {
+			Crypter.setParallelism(1);
+			assertEquals(1, Crypter.getParallelism());
+			assertRoundTrip(300_000);
+
+			Crypter.setParallelism(4);
+			assertEquals(4, Crypter.getParallelism());
+			assertRoundTrip(1_000_000);
+		} finally {
+			Crypter.setParallelism(parallelism);
+		}
+	}
+
+	@Test
+	public void testMapped() {
+		long threshold = BlockReader.getMappedThreshold();
+		try {
+			BlockReader.setMappedThreshold(1);
+			assertRoundTrip(500_000);
+		} finally {
+			BlockReader.setMappedThreshold(threshold);
+		}
+	}
+
+	@Test
+	public void testEncryptDigest() {
+		var inputFile = new File("input.bin");
+		var destination = new File("encrypted.bin");
+
+		try {
+			Files.write(inputFile.toPath(), randomBytes(150_000));
+		} catch (IOException e) {
+			fail(e);
+		}
+
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicReference<AssertionError> failure = new AtomicReference<>();
+		new Crypter(inputFile).encrypt(PUBLIC_KEY, destination, progress -> {}, digest -> {
+			try {
+				var expected = MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(destination.toPath()));
+				assertArrayEquals(expected, digest);
+			} catch (AssertionError e) {
+				failure.set(e);
+			} catch (IOException | NoSuchAlgorithmException e) {
+				asyncFail(e, failure);
+			}
+			latch.countDown();
+		}, exception -> {
+			asyncFail("Encryption has failed!", failure);
+			latch.countDown();
+		});
+
+		try {
+			latch.await();
+
+			inputFile.delete();
+			destination.delete();
+
+			if (failure.get() != null)
+				throw failure.get();
+		} catch (InterruptedException e) {
+			fail(e);
+		}
+	}
+
+	@Test
+	public void testTampered() {
+		var inputFile = new File("input.bin");
+		var destination = new File("encrypted.bin");
+		var decryptDestination = new File("decrypted.bin");
+
+		try {
+			Files.write(inputFile.toPath(), randomBytes(100_000));
+		} catch (IOException e) {
+			fail(e);
+		}
+
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicReference<AssertionError> failure = new AtomicReference<>();
+		new Crypter(inputFile).encrypt(PUBLIC_KEY, destination, progress -> {}, () -> {
+
+			try(var file = new RandomAccessFile(destination, "rw")) {
+				file.seek(file.length() - 20);
+				int b = file.read();
+				file.seek(file.length() - 20);
+				file.write(b ^ 1);
+			} catch (IOException e) {
+				asyncFail(e, failure);
+				latch.countDown();
+				return;
+			}
+
+			new Crypter(destination).decrypt(PRIVATE_KEY, decryptDestination, progress -> {}, () -> {
+				asyncFail("Decryption of a tampered file succeeded!", failure);
+				latch.countDown();
+			}, exception -> {
+				latch.countDown();
+			});
+		}, exception -> {
+			asyncFail("Encryption has failed!", failure);
+			latch.countDown();
+		});
+
+		try {
+			latch.await();
+
+			inputFile.delete();
+			destination.delete();
+			decryptDestination.delete();
+
+			if (failure.get() != null)
+				throw failure.get();
+		} catch (InterruptedException e) {
+			fail(e);
+		}
+	}
+
+	@Test
+	public void testProgress() {
+		var inputFile = new File("input.bin");
+		var destination = new File("encrypted.bin");
+		int size = 4_000_000;
+
+		try {
+			Files.write(inputFile.toPath(), randomBytes(size));
+		} catch (IOException e) {
+			fail(e);
+		}
+
+		var samples = new ArrayList<ProgressCallbackData>();
+		var progressCallback = new ProgressCallback() {
+
+			@Override
+			public void progress(double progress) {
+				fail("Progress data expected.");
+			}
+
+			@Override
+			public void progress(ProgressCallbackData data) {
+				samples.add(data);
+			}
+
+		};
+
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicReference<AssertionError> failure = new AtomicReference<>();
+		new Crypter(inputFile).encrypt(PUBLIC_KEY, destination, progressCallback, () -> {
+			try {
+				// Sampled, not reported for each chunk
+				assertTrue(samples.size() < size / Crypter.getChunkSize());
+				var last = samples.get(samples.size() - 1);
+				assertEquals(1, last.getProgress());
+				assertEquals(size, last.getProcessed());
+				assertEquals(size, last.getTotal());
+				assertEquals(0, last.getRemainingSeconds());
+			} catch (AssertionError e) {
+				failure.set(e);
+			}
+			latch.countDown();
+		}, exception -> {
+			asyncFail("Encryption has failed!", failure);
+			latch.countDown();
+		});
+
+		try {
+			latch.await();
+
+			inputFile.delete();
+			destination.delete();
+
+			if (failure.get() != null)
+				throw failure.get();
+		} catch (InterruptedException e) {
+			fail(e);
+		}
+	}
+
+	@Test
+	public void testInvalidKey() {
+		var inputFile = new File("input.bin");
+		var destination = new File("encrypted.bin");
+
+		try {
+			Files.write(inputFile.toPath(), randomBytes(1000));
+		} catch (IOException e) {
+			fail(e);
+		}
+
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicReference<AssertionError> failure = new AtomicReference<>();
+		new Crypter(inputFile).encrypt("not a key", destination, progress -> {}, () -> {
+			asyncFail("Encryption with an invalid key succeeded!", failure);
+			latch.countDown();
+		}, exception -> {
+			latch.countDown();
+		});
+
+		try {
+			latch.await();
+
+			inputFile.delete();
+			destination.delete();
+
+			if (failure.get() != null)
+				throw failure.get();
+		} catch (InterruptedException e) {
+			fail(e);
+		}
+	}
+
+	@Test
+	public void testSmallFiles() {
+		// Keys are parsed once, then taken from the cache
+		for(int i = 0 ; i < 20 ; i++) {
+			assertRoundTrip(i * 100);
+		}
+	}
+
+	@Test
+	public void testCancel() {
+		var inputFile = new File("input.bin");
+		var destination = new File("encrypted.bin");
+
+		try {
+			Files.write(inputFile.toPath(), randomBytes(20_000_000));
+		} catch (IOException e) {
+			fail(e);
+		}
+
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicReference<AssertionError> failure = new AtomicReference<>();
+		var job = new Crypter(inputFile).encrypt(PUBLIC_KEY, destination, progress -> {}, () -> {
+			asyncFail("Encryption should have been cancelled!", failure);
+			latch.countDown();
+		}, exception -> {
+			try {
+				assertTrue(exception instanceof CancellationException);
+			} catch (AssertionError e) {
+				failure.set(e);
+			}
+			latch.countDown();
+		});
+		job.cancel();
+		assertTrue(job.isCancelled());
+
+		try {
+			latch.await();
+
+			inputFile.delete();
+			destination.delete();
+			Crypter.discardCheckpoint(destination);
+
+			if (failure.get() != null)
+				throw failure.get();
+		} catch (InterruptedException e) {
+			fail(e);
+		}
+	}
+
+	@Test
+	public void testResume() throws NoSuchAlgorithmException, IOException {
+		var inputFile = new File("input.bin");
+		var destination = new File("encrypted.bin");
+		var decryptDestination = new File("decrypted.bin");
+		byte[] content = randomBytes(32_000_000);
+		Files.write(inputFile.toPath(), content);
+
+		int chunkSize = Crypter.getChunkSize();
+		int parallelism = Crypter.getParallelism();
+		try {
+			Crypter.setChunkSize(16 * 1024);
+			Crypter.setParallelism(1);
+
+			var failure = runCancelled(destination, (success, fail) -> new Crypter(inputFile).encrypt(PUBLIC_KEY, destination, progress -> {}, success, fail));
+			assumeTrue(failure != null, "Encryption completed before it could be cancelled.");
+			assertTrue(failure instanceof CancellationException);
+			assertTrue(Crypter.hasCheckpoint(destination));
+			assertFalse(new File(destination.getPath() + ".checkpoint").exists()); // The file key is never stored beside the output
+
+			// Resumed, even though the chunk size setting changed
+			Crypter.setChunkSize(64 * 1024);
+			assertNull(run((success, fail) -> new Crypter(inputFile).encrypt(PUBLIC_KEY, destination, progress -> {}, success, fail)));
+			assertFalse(Crypter.hasCheckpoint(destination));
+
+			failure = runCancelled(decryptDestination, (success, fail) -> new Crypter(destination).decrypt(PRIVATE_KEY, decryptDestination, progress -> {}, success, fail));
+			assumeTrue(failure != null, "Decryption completed before it could be cancelled.");
+			assertTrue(Crypter.hasCheckpoint(decryptDestination));
+
+			// The source digest covers the part decrypted before the cancellation
+			var digest = new AtomicReference<byte[]>();
+			var sourceDigest = new AtomicReference<byte[]>();
+			assertNull(run((success, fail) -> new Crypter(destination).decrypt(PRIVATE_KEY, decryptDestination, progress -> {}, (hash, sourceHash) -> {
+				digest.set(hash);
+				sourceDigest.set(sourceHash);
+				success.run();
+			}, fail)));
+			assertFalse(Crypter.hasCheckpoint(decryptDestination));
+			assertArrayEquals(content, Files.readAllBytes(decryptDestination.toPath()));
+			assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), digest.get());
+			assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(destination.toPath())), sourceDigest.get());
+		} finally {
+			Crypter.setChunkSize(chunkSize);
+			Crypter.setParallelism(parallelism);
+			Crypter.discardCheckpoint(destination);
+			Crypter.discardCheckpoint(decryptDestination);
+			inputFile.delete();
+			destination.delete();
+			decryptDestination.delete();
+		}
+	}
+
+	@Test
+	public void testPurgeCheckpoints() throws IOException {
+		var inputFile = new File("input.bin");
+		var destination = new File("encrypted.bin");
+		Files.write(inputFile.toPath(), randomBytes(32_000_000));
+
+		int chunkSize = Crypter.getChunkSize();
+		int parallelism = Crypter.getParallelism();
+		try {
+			Crypter.setChunkSize(16 * 1024);
+			Crypter.setParallelism(1);
+
+			var failure = runCancelled(destination, (success, fail) -> new Crypter(inputFile).encrypt(PUBLIC_KEY, destination, progress -> {}, success, fail));
+			assumeTrue(failure != null, "Encryption completed before it could be cancelled.");
+			assertTrue(Crypter.hasCheckpoint(destination));
+
+			Crypter.purgeCheckpoints(60 * 60 * 1000); // Recent checkpoints are kept
+			assertTrue(Crypter.hasCheckpoint(destination));
+
+			Crypter.purgeCheckpoints(0);
+			assertFalse(Crypter.hasCheckpoint(destination));
+		} finally {
+			Crypter.setChunkSize(chunkSize);
+			Crypter.setParallelism(parallelism);
+			Crypter.discardCheckpoint(destination);
+			inputFile.delete();
+			destination.delete();
+		}
+	}
+
+	@Test
+	public void testLookupToken() throws NoSuchAlgorithmException, IOException {
+		var inputFile = new File("input.bin");
+		var destination = new File("encrypted.bin");
+		var decryptDestination = new File("decrypted.bin");
+		byte[] content = randomBytes(200_000);
+		Files.write(inputFile.toPath(), content);
+
+		try {
+			assertNull(run((success, fail) -> new Crypter(inputFile).encrypt(PUBLIC_KEY, destination, progress -> {}, success, fail)));
+			assertNull(Crypter.getLookupToken(destination));
+
+			var crypter = new Crypter(inputFile);
+			crypter.setLookupToken("42");
+			assertNull(run((success, fail) -> crypter.encrypt(PUBLIC_KEY, destination, progress -> {}, success, fail)));
+			assertEquals("42", Crypter.getLookupToken(destination));
+
+			var digest = new AtomicReference<byte[]>();
+			var sourceDigest = new AtomicReference<byte[]>();
+			assertNull(run((success, fail) -> new Crypter(destination).decrypt(PRIVATE_KEY, decryptDestination, progress -> {}, (hash, sourceHash) -> {
+				digest.set(hash);
+				sourceDigest.set(sourceHash);
+				success.run();
+			}, fail)));
+			assertArrayEquals(content, Files.readAllBytes(decryptDestination.toPath()));
+			assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), digest.get());
+			assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(Files.readAllBytes(destination.toPath())), sourceDigest.get());
+		} finally {
+			inputFile.delete();
+			destination.delete();
+			decryptDestination.delete();
+		}
+	}
+
+	@Test
+	public void testPreparedKeys() throws IOException {
+		var inputFile = new File("input.bin");
+		Files.write(inputFile.toPath(), randomBytes(1000));
+
+		var destinations = new ArrayList<File>();
+		try {
+			Crypter.prepareEncryption();
+			var headers = new HashSet<String>();
+			for(int i = 0 ; i < 12 ; i++) { // More than the pool holds
+				var destination = new File("encrypted-" + i + ".bin");
+				destinations.add(destination);
+				assertNull(run((success, fail) -> new Crypter(inputFile).encrypt(PUBLIC_KEY, destination, progress -> {}, success, fail)));
+
+				// Every encryption uses a new ephemeral key
+				var header = Arrays.copyOf(Files.readAllBytes(destination.toPath()), 77);
+				assertTrue(headers.add(Arrays.toString(header)));
+			}
+		} finally {
+			inputFile.delete();
+			for(var destination : destinations) {
+				destination.delete();
+			}
+		}
+	}
+
+	@Test
+	public void testMultipleRecipients() throws GeneralSecurityException, IOException {
+		var inputFile = new File("input.bin");
+		var destination = new File("encrypted.bin");
+		var decryptDestination = new File("decrypted.bin");
+		byte[] content = randomBytes(300_000);
+		Files.write(inputFile.toPath(), content);
+
+		String otherPrivateKey = "1f".repeat(32);
+		String strangerPrivateKey = "2e".repeat(32);
+		try {
+			var crypter = new Crypter(inputFile);
+			crypter.setLookupToken("42,43");
+			assertNull(run((success, fail) -> crypter.encrypt(List.of(PUBLIC_KEY, publicKey(otherPrivateKey)), destination, progress -> {}, hash -> success.run(), fail)));
+			assertEquals("42,43", Crypter.getLookupToken(destination));
+
+			for(var privateKey : List.of(PRIVATE_KEY, otherPrivateKey)) {
+				assertNull(run((success, fail) -> new Crypter(destination).decrypt(privateKey, decryptDestination, progress -> {}, success, fail)));
+				assertArrayEquals(content, Files.readAllBytes(decryptDestination.toPath()));
+				decryptDestination.delete();
+
+				try(var channel = new Crypter(destination).openDecrypted(privateKey)) {
+					assertEquals(content.length, channel.size());
+				}
+			}
+
+			assertTrue(run((success, fail) -> new Crypter(destination).decrypt(strangerPrivateKey, decryptDestination, progress -> {}, success, fail)) instanceof InvalidKeyException);
+		} finally {
+			inputFile.delete();
+			destination.delete();
+			decryptDestination.delete();
+		}
+	}
+
+	/**
+	 * Get the hex representation of the public key matching the given private key.
+	 */
+	private String publicKey(String privateKey) {
+		var curve = ECNamedCurveTable.getParameterSpec("secp256k1");
+		return Hex.toHexString(curve.getG().multiply(new BigInteger(privateKey, 16)).normalize().getEncoded(false));
+	}
+
+	@Test
+	public void testOpenDecrypted() throws GeneralSecurityException, IOException {
+		var inputFile = new File("input.bin");
+		var destination = new File("encrypted.bin");
+		byte[] content = randomBytes(100_000);
+		Files.write(inputFile.toPath(), content);
+
+		int chunkSize = Crypter.getChunkSize();
+		try {
+			Crypter.setChunkSize(16 * 1024);
+			assertNull(run((success, fail) -> new Crypter(inputFile).encrypt(PUBLIC_KEY, destination, progress -> {}, success, fail)));
+
+			try(var channel = new Crypter(destination).openDecrypted(PRIVATE_KEY)) {
+				assertEquals(content.length, channel.size());
+
+				// Across a chunk boundary
+				var buffer = ByteBuffer.allocate(1000);
+				channel.position(16 * 1024 - 500);
+				assertEquals(1000, channel.read(buffer));
+				assertArrayEquals(Arrays.copyOfRange(content, 16 * 1024 - 500, 16 * 1024 + 500), buffer.array());
+
+				buffer.clear();
+				channel.position(10);
+				assertEquals(1000, channel.read(buffer));
+				assertArrayEquals(Arrays.copyOfRange(content, 10, 1010), buffer.array());
+
+				buffer.clear();
+				channel.position(content.length - 100);
+				assertEquals(100, channel.read(buffer));
+				assertEquals(-1, channel.read(buffer));
+				assertArrayEquals(Arrays.copyOfRange(content, content.length - 100, content.length), Arrays.copyOf(buffer.array(), 100));
+			}
+
+			try(var file = new RandomAccessFile(destination, "rw")) {
+				file.seek(file.length() - 40_000);
+				int b = file.read();
+				file.seek(file.length() - 40_000);
+				file.write(b ^ 1);
+			}
+
+			try(var channel = new Crypter(destination).openDecrypted(PRIVATE_KEY)) {
+				var buffer = ByteBuffer.allocate(1000);
+				assertEquals(1000, channel.read(buffer));
+				assertArrayEquals(Arrays.copyOf(content, 1000), buffer.array());
+
+				buffer.clear();
+				channel.position(content.length - 40_000);
+				assertThrows(InvalidFormatException.class, () -> channel.read(buffer));
+			}
+		} finally {
+			Crypter.setChunkSize(chunkSize);
+			inputFile.delete();
+			destination.delete();
+		}
+	}
+
+	@Test
+	public void testCompression() throws NoSuchAlgorithmException, IOException {
+		var inputFile = new File("input.csv");
+		var destination = new File("encrypted.bin");
+		var decryptDestination = new File("decrypted.csv");
+
+		var builder = new StringBuilder();
+		var random = new Random(0);
+		for(int i = 0 ; i < 50_000 ; i++) {
+			builder.append(i).append(",user-").append(random.nextInt(1000)).append(",").append(random.nextInt(100_000)).append(",EUR\n");
+		}
+		byte[] content = builder.toString().getBytes();
+		Files.write(inputFile.toPath(), content);
+
+		try {
+			Crypter.setCompressionEnabled(true);
+			assertNull(run((success, fail) -> new Crypter(inputFile).encrypt(PUBLIC_KEY, destination, progress -> {}, success, fail)));
+			assertTrue(destination.length() < content.length / 2);
+			assertFalse(Crypter.hasCheckpoint(destination));
+
+			var digest = new AtomicReference<byte[]>();
+			assertNull(run((success, fail) -> new Crypter(destination).decrypt(PRIVATE_KEY, decryptDestination, progress -> {}, hash -> {
+				digest.set(hash);
+				success.run();
+			}, fail)));
+			assertArrayEquals(content, Files.readAllBytes(decryptDestination.toPath()));
+			assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), digest.get());
+
+			Crypter.setCompressionEnabled(false);
+			assertNull(run((success, fail) -> new Crypter(inputFile).encrypt(PUBLIC_KEY, destination, progress -> {}, success, fail)));
+			assertTrue(destination.length() > content.length);
+		} finally {
+			Crypter.setCompressionEnabled(false);
+			inputFile.delete();
+			destination.delete();
+			decryptDestination.delete();
+		}
+	}
+
+	@Test
+	public void testDirectory() throws IOException {
+		var inputDirectory = Files.createTempDirectory("elyssif-input").toFile();
+		var destination = new File("encrypted.bin");
+		var decryptDestination = Files.createTempDirectory("elyssif-output").toFile();
+
+		try {
+			var root = inputDirectory.toPath();
+			Files.createDirectories(root.resolve("empty"));
+			Files.createDirectories(root.resolve("nested/deeper"));
+			Files.write(root.resolve("nested/deeper/data.bin"), randomBytes(1_000_000));
+			Files.write(root.resolve("nested/empty.txt"), new byte[0]);
+			Files.write(root.resolve("r\u00e9sum\u00e9.txt"), "Hello world!".getBytes());
+			Files.write(root.resolve("nested/" + "long-name-".repeat(12) + ".txt"), randomBytes(513));
+
+			assertNull(run((success, fail) -> new Crypter(inputDirectory).encrypt(PUBLIC_KEY, destination, progress -> {}, success, fail)));
+			assertTrue(Crypter.isArchive(destination));
+
+			var digest = new AtomicReference<byte[]>();
+			assertNull(run((success, fail) -> new Crypter(destination).decrypt(PRIVATE_KEY, decryptDestination, progress -> {}, hash -> {
+				digest.set(hash);
+				success.run();
+			}, fail)));
+
+			var extracted = decryptDestination.toPath().resolve(inputDirectory.getName());
+			assertTreeEquals(root, extracted);
+
+			var expected = hashDirectory(inputDirectory);
+			assertArrayEquals(expected, digest.get());
+			assertArrayEquals(expected, hashDirectory(extracted.toFile()));
+
+			// Extracting again would overwrite the extracted files
+			var failure = run((success, fail) -> new Crypter(destination).decrypt(PRIVATE_KEY, decryptDestination, progress -> {}, hash -> success.run(), fail));
+			assertTrue(failure instanceof FileAlreadyExistsException, String.valueOf(failure));
+			assertTreeEquals(root, extracted);
+		} finally {
+			destination.delete();
+			deleteTree(inputDirectory.toPath());
+			deleteTree(decryptDestination.toPath());
+		}
+	}
+
+	private void assertTreeEquals(Path expected, Path actual) throws IOException {
+		try(var walk = Files.walk(expected)) {
+			for(var path : (Iterable<Path>) walk::iterator) {
+				var other = actual.resolve(expected.relativize(path).toString());
+				assertEquals(Files.isDirectory(path), Files.isDirectory(other), other.toString());
+				if(Files.isRegularFile(path)) {
+					assertArrayEquals(Files.readAllBytes(path), Files.readAllBytes(other));
+				}
+			}
+		}
+		try(var expectedWalk = Files.walk(expected); var actualWalk = Files.walk(actual)) {
+			assertEquals(expectedWalk.count(), actualWalk.count());
+		}
+	}
+
+	private byte[] hashDirectory(File directory) {
+		var digest = new AtomicReference<byte[]>();
+		assertNull(run((success, fail) -> {
+			Hash.sha256(directory, hash -> {
+				digest.set(hash);
+				success.run();
+			}, fail);
+			return null;
+		}));
+		return digest.get();
+	}
+
+	private void deleteTree(Path root) throws IOException {
+		try(var walk = Files.walk(root)) {
+			walk.sorted((a, b) -> b.compareTo(a)).forEach(path -> path.toFile().delete());
+		}
+	}
+
+	/**
+	 * Run a job and cancel it once its destination holds a part of the output.
+	 * @return the exception the job failed with, null if it completed
+	 */
+	private Exception runCancelled(File destination, JobStarter starter) {
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicReference<Exception> exception = new AtomicReference<>();
+		var job = starter.start(latch::countDown, e -> {
+			exception.set(e);
+			latch.countDown();
+		});
+
+		while(latch.getCount() > 0 && destination.length() < 1_000_000) {
+			Thread.onSpinWait();
+		}
+		job.cancel();
+
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			fail(e);
+		}
+		return exception.get();
+	}
+
+	/**
+	 * Run a job and wait for its completion.
+	 * @return the exception the job failed with, null if it completed
+	 */
+	private Exception run(JobStarter starter) {
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicReference<Exception> exception = new AtomicReference<>();
+		starter.start(latch::countDown, e -> {
+			exception.set(e);
+			latch.countDown();
+		});
+
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			fail(e);
+		}
+		return exception.get();
+	}
+
+	@FunctionalInterface
+	private interface JobStarter {
+		Job start(Runnable success, ErrorCallback fail);
+	}
+
+	private void assertRoundTrip(int size) {
+		var inputFile = new File("input.bin");
+		var destination = new File("encrypted.bin");
+		var decryptDestination = new File("decrypted.bin");
+		byte[] content = randomBytes(size);
+
+		try {
+			Files.write(inputFile.toPath(), content);
+		} catch (IOException e) {
+			fail(e);
+		}
+
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicReference<AssertionError> failure = new AtomicReference<>();
+		new Crypter(inputFile).encrypt(PUBLIC_KEY, destination, progress -> {}, () -> {
+			new Crypter(destination).decrypt(PRIVATE_KEY, decryptDestination, progress -> {}, digest -> {
+				try {
+					assertArrayEquals(content, Files.readAllBytes(decryptDestination.toPath()));
+					assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), digest);
+				} catch (AssertionError e) {
+					failure.set(e);
+				} catch (IOException | NoSuchAlgorithmException e) {
+					asyncFail(e, failure);
+				}
+				latch.countDown();
+			}, exception -> {
+				asyncFail("Decryption has failed!", failure);
+				latch.countDown();
+			});
+		}, exception -> {
+			asyncFail("Encryption has failed!", failure);
+			latch.countDown();
+		});
+
+		try {
+			latch.await();
+
+			assertTrue(destination.length() > size);
+			inputFile.delete();
+			destination.delete();
+			decryptDestination.delete();
+
+			if (failure.get() != null)
+				throw failure.get();
+		} catch (InterruptedException e) {
+			fail(e);
+		}
+	}
+
+	private byte[] randomBytes(int size) {
+		var bytes = new byte[size];
+		new Random(size).nextBytes(bytes);
+		return bytes;
+	}
+
 }
@@ -18,7 +18,9 @@
  package fr.elyssif.client;
 
 import static fr.elyssif.client.TestUtils.asyncFail;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -26,11 +28,17 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.jupiter.api.Test;
 
+import fr.elyssif.client.security.BlockReader;
+import fr.elyssif.client.security.DigestCache;
 import fr.elyssif.client.security.Hash;
 
 class HashTest {
@@ -83,6 +91,133 @@ class HashTest {
 		}
 	}
 
+	@Test
+	void testMapped() {
+		long threshold = BlockReader.getMappedThreshold();
+		int blockSize = BlockReader.getBlockSize();
+		BlockReader.setMappedThreshold(1);
+		BlockReader.setBlockSize(5);
+
+		File inputFile = createInputFile();
+
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicReference<AssertionError> failure = new AtomicReference<>();
+
+		Hash.sha256(inputFile, digest -> {
+			try {
+				assertEquals("c0535e4be2b79ffd93291305436bf889314e4a3faec05ecffcbb7df31ad9e51a", Hash.toHex(digest));
+			} catch (AssertionError e) {
+				failure.set(e);
+			}
+			latch.countDown();
+		}, exception -> {
+			asyncFail("SHA-256 failure.", failure);
+			latch.countDown();
+		});
+
+		try {
+			latch.await();
+
+			inputFile.delete();
+			BlockReader.setMappedThreshold(threshold);
+			BlockReader.setBlockSize(blockSize);
+
+			if (failure.get() != null)
+				throw failure.get();
+		} catch (InterruptedException e) {
+			fail(e);
+		}
+	}
+
+	@Test
+	void testLargeFile() {
+		// Large enough to go through the device lane of the I/O scheduler
+		var content = new byte[16 * 1024 * 1024];
+		var inputFile = new File("input.bin");
+		try {
+			Files.write(inputFile.toPath(), content);
+		} catch (IOException e) {
+			fail(e);
+		}
+
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicReference<AssertionError> failure = new AtomicReference<>();
+
+		Hash.sha256(inputFile, digest -> {
+			try {
+				assertArrayEquals(MessageDigest.getInstance("SHA-256").digest(content), digest);
+			} catch (AssertionError e) {
+				failure.set(e);
+			} catch (NoSuchAlgorithmException e) {
+				asyncFail(e, failure);
+			}
+			latch.countDown();
+		}, exception -> {
+			asyncFail("SHA-256 failure.", failure);
+			latch.countDown();
+		});
+
+		try {
+			latch.await();
+
+			inputFile.delete();
+
+			if (failure.get() != null)
+				throw failure.get();
+		} catch (InterruptedException e) {
+			fail(e);
+		}
+	}
+
+	@Test
+	void testDigestCache() {
+		var cacheFile = new File("digests.test.bin");
+		DigestCache.enable(cacheFile, 10);
+
+		File inputFile = createInputFile();
+		try {
+			var expected = sha256Sync(inputFile);
+			assertTrue(cacheFile.exists());
+
+			// Same size and modification time: the cached digest is returned without reading the file
+			var lastModified = Files.getLastModifiedTime(inputFile.toPath());
+			Files.write(inputFile.toPath(), "Hello there!".getBytes());
+			Files.setLastModifiedTime(inputFile.toPath(), lastModified);
+			assertEquals(expected, sha256Sync(inputFile));
+
+			// Reloaded from disk
+			DigestCache.enable(cacheFile, 10);
+			assertEquals(expected, sha256Sync(inputFile));
+
+			// Any change to the attributes invalidates the entry
+			Files.setLastModifiedTime(inputFile.toPath(), FileTime.fromMillis(lastModified.toMillis() + 2000));
+			assertNotEquals(expected, sha256Sync(inputFile));
+		} catch (IOException e) {
+			fail(e);
+		} finally {
+			DigestCache.disable();
+			inputFile.delete();
+			cacheFile.delete();
+		}
+	}
+
+	private String sha256Sync(File file) {
+		CountDownLatch latch = new CountDownLatch(1);
+		AtomicReference<String> result = new AtomicReference<>();
+
+		Hash.sha256(file, digest -> {
+			result.set(Hash.toHex(digest));
+			latch.countDown();
+		}, exception -> latch.countDown());
+
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			fail(e);
+		}
+		return result.get();
+	}
+
 	@Test
 	void testFileError() {
 		File inputFile = new File("doesntexist.bin");
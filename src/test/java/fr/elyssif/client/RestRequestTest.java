@@ -0,0 +1,318 @@
+/*
+ * Elyssif-Client
+ * Copyright (C) 2019 Jérémy LAMBERT (System-Glitch)
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+ package fr.elyssif.client;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.sun.net.httpserver.HttpServer;
+
+import fr.elyssif.client.http.HttpMethod;
+import fr.elyssif.client.http.HttpTransport;
+import fr.elyssif.client.http.ResponseCache;
+import fr.elyssif.client.http.RestRequest;
+import fr.elyssif.client.http.RestResponse;
+import fr.elyssif.client.http.TransportRequest;
+import fr.elyssif.client.http.TransportResponse;
+import fr.elyssif.client.http.Transports;
+
+class RestRequestTest {
+
+	private HttpServer server;
+	private String url;
+	private AtomicInteger downloads;
+
+	@BeforeEach
+	void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/echo", exchange -> {
+			byte[] body = exchange.getRequestBody().readAllBytes();
+			if(body.length == 0) {
+				body = ("{\"query\":\"" + exchange.getRequestURI().getRawQuery() + "\"}").getBytes();
+			}
+			exchange.getResponseHeaders().add("Content-Type", "application/json");
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		server.createContext("/gzip", exchange -> {
+			var input = exchange.getRequestBody();
+			if("gzip".equals(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+				input = new GZIPInputStream(input);
+			}
+			byte[] body = input.readAllBytes();
+			if(exchange.getRequestHeaders().getFirst("Accept-Encoding").contains("gzip")) {
+				var output = new ByteArrayOutputStream();
+				try(var gzip = new GZIPOutputStream(output)) {
+					gzip.write(body);
+				}
+				body = output.toByteArray();
+				exchange.getResponseHeaders().add("Content-Encoding", "gzip");
+			}
+			exchange.getResponseHeaders().add("Content-Type", "application/json"); // Decoded from the connection
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		downloads = new AtomicInteger();
+		server.createContext("/etag", exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			if("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+			} else {
+				byte[] body = "{\"version\":1}".getBytes();
+				downloads.incrementAndGet();
+				exchange.getResponseHeaders().add("ETag", "\"v1\"");
+				exchange.getResponseHeaders().add("Set-Cookie", "session=secret");
+				exchange.sendResponseHeaders(200, body.length);
+				exchange.getResponseBody().write(body);
+			}
+			exchange.close();
+		});
+		server.createContext("/private", exchange -> {
+			exchange.getRequestBody().readAllBytes();
+			if("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				exchange.sendResponseHeaders(304, -1);
+			} else {
+				byte[] body = "{\"secret\":1}".getBytes();
+				downloads.incrementAndGet();
+				exchange.getResponseHeaders().add("ETag", "\"v1\"");
+				exchange.getResponseHeaders().add("Cache-Control", "private");
+				exchange.sendResponseHeaders(200, body.length);
+				exchange.getResponseBody().write(body);
+			}
+			exchange.close();
+		});
+		server.createContext("/text", exchange -> {
+			byte[] body = "<html>Not JSON</html>".getBytes();
+			exchange.sendResponseHeaders(200, body.length);
+			exchange.getResponseBody().write(body);
+			exchange.close();
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		url = "http://127.0.0.1:" + server.getAddress().getPort() + "/echo";
+	}
+
+	@AfterEach
+	void stopServer() {
+		server.stop(0);
+	}
+
+	private void testTransport(String type) throws Exception {
+		Transports.setType(type);
+		try(HttpTransport transport = Transports.create()) {
+			var futures = new ArrayList<CompletableFuture<RestResponse>>();
+			for(int i = 0 ; i < 10 ; i++) {
+				futures.add(new RestRequest(transport, url).param("id", i).asyncExecute(HttpMethod.POST));
+			}
+			for(int i = 0 ; i < futures.size() ; i++) {
+				RestResponse response = futures.get(i).get(10, TimeUnit.SECONDS);
+				assertTrue(response.isSuccessful());
+				assertEquals(i, response.getJsonElement().getAsJsonObject().get("id").getAsInt());
+			}
+
+			int status = new RestRequest(transport, url).urlParam("page", 2)
+					.asyncExecute(HttpMethod.GET)
+					.thenApply(RestResponse::getStatus)
+					.get(10, TimeUnit.SECONDS);
+			assertEquals(200, status);
+		} finally {
+			Transports.setType(Transports.POOLED);
+		}
+	}
+
+	@Test
+	void testPooledTransport() throws Exception {
+		testTransport(Transports.POOLED);
+	}
+
+	@Test
+	void testHttp2Transport() throws Exception {
+		testTransport(Transports.HTTP2);
+	}
+
+	@Test
+	void testResponseBody() throws Exception {
+		try(HttpTransport transport = Transports.create()) {
+			RestResponse response = new RestRequest(transport, url).param("name", "été").asyncExecute(HttpMethod.POST).get(10, TimeUnit.SECONDS);
+			assertEquals("été", response.getJsonElement().getAsJsonObject().get("name").getAsString());
+			assertEquals("{\"name\":\"été\"}", response.getRawBody());
+
+			response = new RestRequest(transport, url.replace("/echo", "/text")).asyncExecute(HttpMethod.GET).get(10, TimeUnit.SECONDS);
+			assertTrue(response.isSuccessful());
+			assertNull(response.getJsonElement());
+			assertEquals("<html>Not JSON</html>", response.getRawBody());
+		}
+	}
+
+	@Test
+	void testCompression() throws Exception {
+		RestRequest.setCompressionThreshold(64);
+		try {
+			for(String type : new String[] { Transports.POOLED, Transports.HTTP2 }) {
+				Transports.setType(type);
+				try(HttpTransport transport = Transports.create()) {
+					var request = new RestRequest(transport, url.replace("/echo", "/gzip")).param("data", "a".repeat(10000));
+					RestResponse response = request.asyncExecute(HttpMethod.POST).get(10, TimeUnit.SECONDS);
+					assertTrue(response.isSuccessful());
+					assertEquals(10000, response.getJsonElement().getAsJsonObject().get("data").getAsString().length());
+
+					assertEquals(10011, request.getBodyBytes());
+					assertTrue(request.getSentBytes() < 200);
+					assertEquals(10011, response.getDecodedBytes());
+					assertTrue(response.getReceivedBytes() < 200);
+				}
+			}
+		} finally {
+			RestRequest.setCompressionThreshold(0);
+			Transports.setType(Transports.POOLED);
+		}
+	}
+
+	@Test
+	void testResponseCache() throws Exception {
+		var directory = Files.createTempDirectory("http-cache").toFile();
+		String etagUrl = url.replace("/echo", "/etag");
+		try(HttpTransport transport = Transports.create()) {
+			ResponseCache.enable(1024 * 1024, directory, 1024 * 1024);
+			for(int i = 0 ; i < 3 ; i++) {
+				RestResponse response = new RestRequest(transport, etagUrl).setAuthorizationToken("token").asyncExecute(HttpMethod.GET).get(10, TimeUnit.SECONDS);
+				assertEquals(200, response.getStatus());
+				assertEquals(1, response.getJsonElement().getAsJsonObject().get("version").getAsInt());
+			}
+			assertEquals(1, downloads.get());
+
+			// Different identity
+			new RestRequest(transport, etagUrl).setAuthorizationToken("other").asyncExecute(HttpMethod.GET).get(10, TimeUnit.SECONDS);
+			assertEquals(2, downloads.get());
+
+			// Empty memory tier, loaded from disk
+			ResponseCache.enable(1024 * 1024, directory, 1024 * 1024);
+			RestResponse response = new RestRequest(transport, etagUrl).setAuthorizationToken("token").asyncExecute(HttpMethod.GET).get(10, TimeUnit.SECONDS);
+			assertEquals(1, response.getJsonElement().getAsJsonObject().get("version").getAsInt());
+			assertEquals(2, downloads.get());
+
+			// Cookies aren't stored
+			for(var file : directory.listFiles()) {
+				assertFalse(new String(Files.readAllBytes(file.toPath()), StandardCharsets.ISO_8859_1).contains("secret"));
+			}
+
+			// Logout
+			ResponseCache.clear();
+			assertEquals(0, directory.listFiles().length);
+			new RestRequest(transport, etagUrl).setAuthorizationToken("token").asyncExecute(HttpMethod.GET).get(10, TimeUnit.SECONDS);
+			assertEquals(3, downloads.get());
+		} finally {
+			ResponseCache.disable();
+			for(var file : directory.listFiles()) {
+				file.delete();
+			}
+			directory.delete();
+		}
+	}
+
+	@Test
+	void testResponseCachePrivacy() throws Exception {
+		var directory = new File(Files.createTempDirectory("http-cache").toFile(), "cache");
+		try(HttpTransport transport = Transports.create()) {
+			ResponseCache.enable(1024 * 1024, directory, 1024 * 1024);
+			if(Files.getFileStore(directory.toPath()).supportsFileAttributeView(PosixFileAttributeView.class)) {
+				assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(directory.toPath())));
+			}
+
+			// Private responses are only kept in memory
+			String privateUrl = url.replace("/echo", "/private");
+			for(int i = 0 ; i < 2 ; i++) {
+				new RestRequest(transport, privateUrl).setAuthorizationToken("token").asyncExecute(HttpMethod.GET).get(10, TimeUnit.SECONDS);
+			}
+			assertEquals(1, downloads.get());
+			assertEquals(0, directory.listFiles().length);
+
+			// Stored responses are only readable by their owner
+			String etagUrl = url.replace("/echo", "/etag");
+			new RestRequest(transport, etagUrl).setAuthorizationToken("token").asyncExecute(HttpMethod.GET).get(10, TimeUnit.SECONDS);
+			assertEquals(2, downloads.get());
+			var files = directory.listFiles();
+			assertEquals(1, files.length);
+			if(Files.getFileStore(directory.toPath()).supportsFileAttributeView(PosixFileAttributeView.class)) {
+				assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(files[0].toPath())));
+			}
+
+			// Requests opting out are never cached
+			for(int i = 0 ; i < 2 ; i++) {
+				new RestRequest(transport, etagUrl).setAuthorizationToken("other").cacheable(false).asyncExecute(HttpMethod.GET).get(10, TimeUnit.SECONDS);
+			}
+			assertEquals(4, downloads.get());
+			assertEquals(1, directory.listFiles().length);
+		} finally {
+			ResponseCache.clear();
+			ResponseCache.disable();
+			directory.delete();
+			directory.getParentFile().delete();
+		}
+	}
+
+	@Test
+	void testConnectionFailure() throws Exception {
+		server.stop(0);
+		try(HttpTransport transport = Transports.create()) {
+			RestResponse response = new RestRequest(transport, url).asyncExecute(HttpMethod.GET).get(10, TimeUnit.SECONDS);
+			assertEquals(-1, response.getStatus());
+		}
+	}
+
+	@Test
+	void testTransportException() throws Exception {
+		HttpTransport transport = new HttpTransport() {
+			@Override
+			public TransportResponse execute(TransportRequest request) {
+				throw new IllegalStateException("Transport closed");
+			}
+
+			@Override
+			public void close() {}
+		};
+		RestResponse response = new RestRequest(transport, url).asyncExecute(HttpMethod.GET).get(10, TimeUnit.SECONDS);
+		assertEquals(-1, response.getStatus());
+		assertEquals("Transport closed", response.getRawBody());
+	}
+
+}
@@ -37,4 +37,19 @@ class StringUtilsTest {
 		assertEquals("snakeCase", camel);
 	}
 
+	@Test
+	void testFormatBytes() {
+		assertEquals("512 B", StringUtils.formatBytes(512));
+		assertEquals("1.5 KB", StringUtils.formatBytes(1536));
+		assertEquals("3.0 MB", StringUtils.formatBytes(3 * 1024 * 1024));
+		assertEquals("1.0 TB", StringUtils.formatBytes(1024d * 1024 * 1024 * 1024));
+	}
+
+	@Test
+	void testFormatDuration() {
+		assertEquals("0:05", StringUtils.formatDuration(5));
+		assertEquals("1:05", StringUtils.formatDuration(65));
+		assertEquals("1:01:40", StringUtils.formatDuration(3700));
+	}
+
 }